@@ -1,12 +1,15 @@
 package org.primftpd.filesystem;
 
+import org.apache.sshd.common.file.FileAttributes;
 import org.apache.sshd.common.file.SshFile;
 import org.primftpd.events.ClientActionEvent;
 import org.primftpd.services.PftpdService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -120,6 +123,12 @@ public abstract class AbstractFile {
         logger.trace("[{}] handleClose()", name);
     }
 
+    public FileChannel createChannel(boolean write) throws IOException {
+        // not random accessible by default, streams are used instead
+        logger.trace("[{}] createChannel({})", name, write);
+        return null;
+    }
+
     public void truncate() throws IOException {
         // TODO ssh truncate
         logger.trace("[{}] truncate()", name);
@@ -172,6 +181,35 @@ public abstract class AbstractFile {
         return attributes;
     }
 
+    public FileAttributes getFileAttributes(boolean followLinks)
+            throws IOException
+    {
+        logger.trace("[{}] getFileAttributes()", name);
+        SshFile sshFile = (SshFile)this;
+        // only ask again if the file did not exist when this object was created,
+        // checking may be expensive
+        if (!exists && !sshFile.doesExist()) {
+            throw new FileNotFoundException(absPath);
+        }
+        return SshUtils.getFileAttributes(sshFile, size, lastModified, isDirectory);
+    }
+
+    public long getTotalSpace() {
+        // not known by default
+        logger.trace("[{}] getTotalSpace()", name);
+        return 0;
+    }
+
+    public long getFreeSpace() {
+        logger.trace("[{}] getFreeSpace()", name);
+        return 0;
+    }
+
+    public long getUsableSpace() {
+        logger.trace("[{}] getUsableSpace()", name);
+        return 0;
+    }
+
     public boolean isExecutable() {
         logger.trace("[{}] isExecutable()", name);
         return false;
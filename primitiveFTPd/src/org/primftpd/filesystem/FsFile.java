@@ -1,10 +1,10 @@
 package org.primftpd.filesystem;
 
 import org.primftpd.events.ClientActionEvent;
+import org.primftpd.io.FileChannelInputStream;
+import org.primftpd.io.FileChannelOutputStream;
 import org.primftpd.services.PftpdService;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -12,7 +12,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 public abstract class FsFile<T> extends AbstractFile {
@@ -135,6 +141,24 @@ public abstract class FsFile<T> extends AbstractFile {
 		return file.renameTo(new File(destination.getAbsolutePath()));
 	}
 
+	@Override
+	public long getTotalSpace() {
+		logger.trace("[{}] getTotalSpace()", name);
+		return file.getTotalSpace();
+	}
+
+	@Override
+	public long getFreeSpace() {
+		logger.trace("[{}] getFreeSpace()", name);
+		return file.getFreeSpace();
+	}
+
+	@Override
+	public long getUsableSpace() {
+		logger.trace("[{}] getUsableSpace()", name);
+		return file.getUsableSpace();
+	}
+
 	public List<T> listFiles() {
 		logger.trace("[{}] listFiles()", name);
 		postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
@@ -150,6 +174,24 @@ public abstract class FsFile<T> extends AbstractFile {
 		return new ArrayList<>(0);
 	}
 
+	public Iterator<T> iterateFiles() {
+		logger.trace("[{}] iterateFiles()", name);
+		postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
+		final DirectoryStream<Path> stream;
+		try {
+			stream = Files.newDirectoryStream(file.toPath());
+		} catch (IOException e) {
+			logger.debug("could not open directory stream. Path: {}", file.getAbsolutePath());
+			return Collections.<T>emptyList().iterator();
+		}
+		return new LazyListing<Path, T>(stream.iterator(), stream) {
+			@Override
+			protected T createFile(Path path) {
+				return FsFile.this.createFile(path.toFile(), pftpdService);
+			}
+		};
+	}
+
 	public OutputStream createOutputStream(long offset) throws IOException {
 		logger.trace("[{}] createOutputStream({})", name, offset);
 		postClientAction(ClientActionEvent.ClientAction.UPLOAD);
@@ -162,27 +204,37 @@ public abstract class FsFile<T> extends AbstractFile {
 		}
 
 		// now create out stream
-		OutputStream os = null;
+		// the channel allows data connections to transfer from the socket directly
+		FileChannel channel;
 		if (offset == 0) {
-			os = new FileOutputStream(file);
-		} else if (offset == this.file.length()) {
-			os = new FileOutputStream(file, true);
+			channel = new FileOutputStream(file).getChannel();
 		} else {
-			final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
-			raf.seek(offset);
-			os = new OutputStream() {
-				@Override
-				public void write(int oneByte) throws IOException {
-					raf.write(oneByte);
-				}
-				@Override
-				public void close() throws IOException {
-					raf.close();
-				}
-			};
+			// closing the channel closes the random access file as well
+			channel = new RandomAccessFile(this.file, "rw").getChannel();
+			channel.position(offset);
+		}
+
+		return new FileChannelOutputStream(channel);
+	}
+
+	@Override
+	public FileChannel createChannel(boolean write) throws IOException {
+		logger.trace("[{}] createChannel({})", name, write);
+		if (!write) {
+			postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
+			return new FileInputStream(file).getChannel();
+		}
+		postClientAction(ClientActionEvent.ClientAction.UPLOAD);
+
+		// may be necessary to create dirs
+		// see isWritable()
+		File parent = file.getParentFile();
+		if (!parent.exists()) {
+			parent.mkdirs();
 		}
 
-		return new BufferedOutputStream(os);
+		// closing the channel closes the random access file as well
+		return new RandomAccessFile(file, "rw").getChannel();
 	}
 
 	public InputStream createInputStream(long offset) throws IOException {
@@ -194,8 +246,8 @@ public abstract class FsFile<T> extends AbstractFile {
 		});
 		postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
 
-		BufferedInputStream bis = new BufferedInputStream(new FileInputStream(file), TracingBufferedOutputStream.BUFFER_SIZE);
-		bis.skip(offset);
-		return bis;
+		FileInputStream fis = new FileInputStream(file);
+		fis.getChannel().position(offset);
+		return new FileChannelInputStream(fis, TracingBufferedOutputStream.BUFFER_SIZE);
 	}
 }
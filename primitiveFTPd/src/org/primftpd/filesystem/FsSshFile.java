@@ -6,6 +6,7 @@ import org.primftpd.services.PftpdService;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 
 public class FsSshFile extends FsFile<SshFile> implements SshFile {
@@ -59,4 +60,9 @@ public class FsSshFile extends FsFile<SshFile> implements SshFile {
 	public List<SshFile> listSshFiles() {
 		return listFiles();
 	}
+
+	@Override
+	public Iterator<SshFile> iterateSshFiles() {
+		return iterateFiles();
+	}
 }
@@ -0,0 +1,48 @@
+package org.primftpd.filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Directory listing which creates file objects only when they are requested,
+ * so that huge directories are not held in memory as a whole.
+ * Closing it releases the underlying resource, e.g. a cursor or directory stream.
+ *
+ * @param <S> what the directory is read as, e.g. a path
+ * @param <T> file type
+ */
+abstract class LazyListing<S, T> implements Iterator<T>, Closeable {
+
+    private final Iterator<S> sources;
+    private final Closeable resource;
+
+    LazyListing(Iterator<S> sources, Closeable resource) {
+        this.sources = sources;
+        this.resource = resource;
+    }
+
+    protected abstract T createFile(S source);
+
+    @Override
+    public boolean hasNext() {
+        return sources.hasNext();
+    }
+
+    @Override
+    public T next() {
+        return createFile(sources.next());
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+}
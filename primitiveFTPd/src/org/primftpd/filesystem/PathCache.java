@@ -0,0 +1,107 @@
+package org.primftpd.filesystem;
+
+import android.net.Uri;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of normalized absolute paths to what a document based
+ * file system resolved them to, e.g. a document id.
+ * SAF resolves a path by listing every directory on the way, so remembering
+ * the result saves several content resolver queries per command.
+ * Entries expire after a short time as documents may be changed by other apps.
+ *
+ * @param <V> what a path resolves to
+ */
+public class PathCache<V> {
+
+    static final int MAX_ENTRIES = 1024;
+    static final long TTL_MILLIS = 10 * 1000;
+
+    private static class Entry<V> {
+        final V value;
+        final long created;
+
+        Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    // caches are shared by all sessions accessing the same tree with the same kind of view,
+    // the views of a tree resolve paths to different types
+    private static final Map<String, PathCache<?>> CACHES = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    static synchronized <V> PathCache<V> forTree(Uri treeUri, Class<V> valueType) {
+        // the value type is part of the key, so the cast holds
+        String key = valueType.getName() + " " + treeUri;
+        PathCache<V> cache = (PathCache<V>) CACHES.get(key);
+        if (cache == null) {
+            cache = new PathCache<>();
+            CACHES.put(key, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Drops all caches, to be called when a server stops. Sessions of another server
+     * which still hold a cache find it empty and resolve their paths again.
+     */
+    public static synchronized void clearAll() {
+        for (PathCache<?> cache : CACHES.values()) {
+            cache.clear();
+        }
+        CACHES.clear();
+    }
+
+    private final LinkedHashMap<String, Entry<V>> entries =
+            new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    synchronized V get(String path) {
+        Entry<V> entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > TTL_MILLIS) {
+            entries.remove(path);
+            return null;
+        }
+        return entry.value;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized void put(String path, V value) {
+        entries.put(path, new Entry<>(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * To be called when a document has been created, changed, moved or deleted.
+     * Removes the path, everything below it and its parent directory.
+     */
+    synchronized void invalidate(String path) {
+        String prefix = path.endsWith("/") ? path : path + "/";
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.equals(path) || key.startsWith(prefix)) {
+                it.remove();
+            }
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash >= 0) {
+            entries.remove(slash == 0 ? "/" : path.substring(0, slash));
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.List;
 
@@ -103,6 +104,16 @@ public abstract class QuickShareFile<T> extends AbstractFile {
         return new ByteArrayOutputStream();
     }
 
+    @Override
+    public FileChannel createChannel(boolean write) throws IOException {
+        logger.trace("[{}] createChannel({})", name, write);
+        if (write || quickShareFile == null) {
+            return null;
+        }
+        postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
+        return new FileInputStream(quickShareFile).getChannel();
+    }
+
     public InputStream createInputStream(long offset) throws IOException {
         logger.trace("[{}] createInputStream(offset: {})", name, offset);
         postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
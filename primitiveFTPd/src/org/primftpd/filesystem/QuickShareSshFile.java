@@ -5,6 +5,7 @@ import org.apache.sshd.common.file.SshFile;
 import org.primftpd.services.PftpdService;
 
 import java.io.File;
+import java.util.Iterator;
 import java.util.List;
 
 public class QuickShareSshFile extends QuickShareFile<SshFile> implements SshFile {
@@ -68,4 +69,9 @@ public class QuickShareSshFile extends QuickShareFile<SshFile> implements SshFil
     public List<SshFile> listSshFiles() {
         return listFiles();
     }
+
+    @Override
+    public Iterator<SshFile> iterateSshFiles() {
+        return listFiles().iterator();
+    }
 }
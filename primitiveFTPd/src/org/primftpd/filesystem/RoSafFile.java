@@ -4,6 +4,7 @@ import android.content.ContentResolver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.provider.DocumentsContract;
 
 import org.primftpd.events.ClientActionEvent;
@@ -14,7 +15,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 public abstract class RoSafFile<T> extends AbstractFile {
@@ -261,30 +265,11 @@ public abstract class RoSafFile<T> extends AbstractFile {
         postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
 
         List<T> result = new ArrayList<>();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            String parentId;
-            if (documentId != null) {
-                parentId = documentId;
-            } else {
-                parentId = DocumentsContract.getTreeDocumentId(startUrl);
-            }
-
-            logger.trace("  building children uri for doc: {}, parent: {}", documentId, parentId);
-            Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
-                    startUrl,
-                    documentId);
-            Cursor childCursor = contentResolver.query(
-                    childrenUri,
-                    SAF_QUERY_COLUMNS,
-                    null,
-                    null,
-                    null);
+        Cursor childCursor = queryChildren();
+        if (childCursor != null) {
             try {
                 while (childCursor.moveToNext()) {
-                    String absPath = this.absPath.endsWith("/")
-                            ? this.absPath + childCursor.getString(CURSOR_INDEX_NAME)
-                            : this.absPath + "/" + childCursor.getString(CURSOR_INDEX_NAME);
-                    result.add(createFile(contentResolver, startUrl, childCursor, absPath, pftpdService));
+                    result.add(createChild(childCursor));
                 }
             } finally {
                 closeQuietly(childCursor);
@@ -305,6 +290,53 @@ public abstract class RoSafFile<T> extends AbstractFile {
         return result;
     }
 
+    public Iterator<T> iterateFiles() {
+        logger.trace("[{}] iterateFiles()", name);
+        postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
+
+        // rows are read from the cursor as the client asks for more files
+        Cursor childCursor = queryChildren();
+        if (childCursor == null) {
+            return Collections.<T>emptyList().iterator();
+        }
+        return new LazyListing<Cursor, T>(Utils.rows(childCursor), childCursor) {
+            @Override
+            protected T createFile(Cursor cursor) {
+                return createChild(cursor);
+            }
+        };
+    }
+
+    private Cursor queryChildren() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        String parentId;
+        if (documentId != null) {
+            parentId = documentId;
+        } else {
+            parentId = DocumentsContract.getTreeDocumentId(startUrl);
+        }
+
+        logger.trace("  building children uri for doc: {}, parent: {}", documentId, parentId);
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                startUrl,
+                documentId);
+        return contentResolver.query(
+                childrenUri,
+                SAF_QUERY_COLUMNS,
+                null,
+                null,
+                null);
+    }
+
+    private T createChild(Cursor childCursor) {
+        String absPath = this.absPath.endsWith("/")
+                ? this.absPath + childCursor.getString(CURSOR_INDEX_NAME)
+                : this.absPath + "/" + childCursor.getString(CURSOR_INDEX_NAME);
+        return createFile(contentResolver, startUrl, childCursor, absPath, pftpdService);
+    }
+
     public OutputStream createOutputStream(long offset) throws IOException {
         logger.trace("[{}] createOutputStream(offset: {})", name, offset);
         postClientAction(ClientActionEvent.ClientAction.UPLOAD);
@@ -333,6 +365,25 @@ public abstract class RoSafFile<T> extends AbstractFile {
         return null;
     }
 
+    @Override
+    public FileChannel createChannel(boolean write) throws IOException {
+        logger.trace("[{}] createChannel({})", name, write);
+        // TODO writing with SAF cursor/uri api
+        if (write || documentId == null) {
+            return null;
+        }
+        postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            Uri uri = DocumentsContract.buildDocumentUriUsingTree(
+                    startUrl,
+                    documentId);
+            ParcelFileDescriptor pfd = contentResolver.openFileDescriptor(uri, "r");
+            return Utils.toFileChannel(pfd, false, logger);
+        }
+        return null;
+    }
+
     private void closeQuietly(Cursor cursor) {
         cursor.close();
     }
@@ -20,11 +20,14 @@ public abstract class RoSafFileSystemView<T extends RoSafFile<X>, X> {
     protected final Uri startUrl;
     protected final ContentResolver contentResolver;
     protected final PftpdService pftpdService;
+    // path -> document id, read only so entries just expire
+    protected final PathCache<String> cache;
 
     public RoSafFileSystemView(Uri startUrl, ContentResolver contentResolver, PftpdService pftpdService) {
         this.startUrl = startUrl;
         this.contentResolver = contentResolver;
         this.pftpdService = pftpdService;
+        this.cache = PathCache.forTree(startUrl, String.class);
     }
 
     protected abstract String absolute(String file);
@@ -63,7 +66,22 @@ public abstract class RoSafFileSystemView<T extends RoSafFile<X>, X> {
             List<String> parts = Utils.normalizePath(file);
             logger.trace("    getFile(normalized: {})", parts);
 
-            for (int i=0; i<parts.size(); i++) {
+            // continue from the deepest path found in cache
+            int start = 0;
+            for (int i=parts.size(); i>0; i--) {
+                String cachedId = cache.get(Utils.toPath(parts.subList(0, i)));
+                if (cachedId != null) {
+                    if (i == parts.size()) {
+                        logger.trace("    calling createFile() for cached doc: {}", cachedId);
+                        return createFile(contentResolver, startUrl, cachedId, Utils.toPath(parts), pftpdService);
+                    }
+                    parentId = cachedId;
+                    start = i;
+                    break;
+                }
+            }
+
+            for (int i=start; i<parts.size(); i++) {
                 String currentPart = parts.get(i);
 
                 logger.trace("    building children uri for parent: {}", parentId);
@@ -85,6 +103,7 @@ public abstract class RoSafFileSystemView<T extends RoSafFile<X>, X> {
                         String docName = childCursor.getString(1);
                         logger.trace("    checking current part: {} for doc name: {}", currentPart, docName);
                         if (currentPart.equals(docName)) {
+                            cache.put(Utils.toPath(parts.subList(0, i + 1)), docId);
                             if (i == parts.size() - 1) {
                                 logger.trace("    calling createFile() for doc: {}, parent: {}", docName, parentId);
                                 return createFile(contentResolver, startUrl, docId, Utils.toPath(parts), pftpdService);
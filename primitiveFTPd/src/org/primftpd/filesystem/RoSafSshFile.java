@@ -8,6 +8,7 @@ import org.apache.sshd.common.Session;
 import org.apache.sshd.common.file.SshFile;
 import org.primftpd.services.PftpdService;
 
+import java.util.Iterator;
 import java.util.List;
 
 public class RoSafSshFile extends RoSafFile<SshFile> implements SshFile {
@@ -84,4 +85,9 @@ public class RoSafSshFile extends RoSafFile<SshFile> implements SshFile {
     public List<SshFile> listSshFiles() {
         return listFiles();
     }
+
+    @Override
+    public Iterator<SshFile> iterateSshFiles() {
+        return iterateFiles();
+    }
 }
@@ -1,34 +1,26 @@
 package org.primftpd.filesystem;
 
-import android.os.Build;
-
-import org.apache.ftpserver.util.IoUtils;
 import org.primftpd.events.ClientActionEvent;
 import org.primftpd.pojo.LsOutputBean;
 import org.primftpd.pojo.LsOutputParser;
 import org.primftpd.services.PftpdService;
-import org.primftpd.util.StringUtils;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import eu.chainfire.libsuperuser.Shell;
 
 public abstract class RootFile<T> extends AbstractFile {
 
-    private static final int BUF_SIZE_DD_ERR_STREAM = 4096;
-
     private final Shell.Interactive shell;
 
     protected final LsOutputBean bean;
 
-    private Process ddProcess;
-
     public RootFile(Shell.Interactive shell, LsOutputBean bean, String absPath, PftpdService pftpdService) {
         super(
                 absPath,
@@ -90,11 +82,53 @@ public abstract class RootFile<T> extends AbstractFile {
         return runCommand("mv \"" + absPath + "\" \"" + destination.getAbsolutePath() + "\"");
     }
 
+    @Override
+    public long getTotalSpace() {
+        // statfs only needs the path, 0 if it is not accessible without root
+        logger.trace("[{}] getTotalSpace()", name);
+        return new File(absPath).getTotalSpace();
+    }
+
+    @Override
+    public long getFreeSpace() {
+        logger.trace("[{}] getFreeSpace()", name);
+        return new File(absPath).getFreeSpace();
+    }
+
+    @Override
+    public long getUsableSpace() {
+        logger.trace("[{}] getUsableSpace()", name);
+        return new File(absPath).getUsableSpace();
+    }
+
     public List<T> listFiles() {
         logger.trace("[{}] listFiles()", name);
         postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
 
         List<T> result = new ArrayList<>();
+        for (LsOutputBean bean : listBeans()) {
+            String path = absPath + "/" + bean.getName();
+            result.add(createFile(shell, bean, path, pftpdService));
+        }
+
+        return result;
+    }
+
+    public Iterator<T> iterateFiles() {
+        logger.trace("[{}] iterateFiles()", name);
+        postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
+
+        // ls output is read at once, the file objects are created on demand
+        return new LazyListing<LsOutputBean, T>(listBeans().iterator(), null) {
+            @Override
+            protected T createFile(LsOutputBean bean) {
+                String path = absPath + "/" + bean.getName();
+                return RootFile.this.createFile(shell, bean, path, pftpdService);
+            }
+        };
+    }
+
+    private List<LsOutputBean> listBeans() {
         final LsOutputParser parser = new LsOutputParser();
         final List<LsOutputBean> beans = new ArrayList<>();
         shell.addCommand("ls -la " + absPath, 0, new Shell.OnCommandLineListener() {
@@ -110,96 +144,22 @@ public abstract class RootFile<T> extends AbstractFile {
             }
         });
         shell.waitForIdle();
-
-        for (LsOutputBean bean : beans) {
-            String path = absPath + "/" + bean.getName();
-            result.add(createFile(shell, bean, path, pftpdService));
-        }
-
-        return result;
-    }
-
-    private String escapePathForDD(String path) {
-        return path.replaceAll(" ", "\\ ");
+        return beans;
     }
 
     public OutputStream createOutputStream(long offset) throws IOException {
         logger.trace("[{}] createOutputStream(offset: {})", name, offset);
         postClientAction(ClientActionEvent.ClientAction.UPLOAD);
 
-        if (!bean.isExists()) {
-            // if file does not exist, explicitly create it as root, see GH issue #117
-            runCommand("touch" + " \"" + absPath + "\"");
-        }
-
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        processBuilder.command("su", "-c", "dd", "of=" + escapePathForDD(absPath));
-        String ddCommand;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            ddCommand = String.join(" ", processBuilder.command());
-        } else {
-            ddCommand = StringUtils.join(processBuilder.command(), ' ');
-        }
-        logger.trace("dd command: {}", ddCommand);
-        ddProcess = processBuilder.start();
-
-        return new TracingBufferedOutputStream(ddProcess.getOutputStream(), logger);
+        // creates the file as root if it does not exist, see GH issue #117
+        return RootHelper.openOutputStream(absPath, offset);
     }
 
     public InputStream createInputStream(long offset) throws IOException {
         logger.trace("[{}] createInputStream(offset: {})", name, offset);
         postClientAction(ClientActionEvent.ClientAction.DOWNLOAD);
 
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        processBuilder.command("su", "-c", "dd", "if=" + escapePathForDD(absPath));
-        String ddCommand;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            ddCommand = String.join(" ", processBuilder.command());
-        } else {
-            ddCommand = StringUtils.join(processBuilder.command(), ' ');
-        }
-        logger.trace("dd command: {}", ddCommand);
-        ddProcess = processBuilder.start();
-
-        try {
-            // workaround for weird errors
-            Thread.sleep(250);
-        } catch (InterruptedException e) {
-            throw new IOException(e);
-        }
-
-        BufferedInputStream bis = new BufferedInputStream(ddProcess.getInputStream());
-        bis.skip(offset);
-        return bis;
-    }
-
-    @Override
-    public void handleClose() throws IOException {
-        super.handleClose();
-        if (ddProcess != null) {
-            logDdErrorStream(ddProcess);
-            ddProcess = null;
-        } else {
-            logger.trace("no dd process");
-        }
-    }
-
-    private void logDdErrorStream(Process proc) throws IOException {
-        try {
-            proc.waitFor();
-            int exitCode = proc.exitValue();
-            if (exitCode != 0) {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                IoUtils.copy(proc.getErrorStream(), baos, BUF_SIZE_DD_ERR_STREAM);
-                String ddErr = baos.toString();
-                logger.error("dd exit code: '{}', error stream: '{}'", exitCode, ddErr);
-                logger.error("{}", ddErr);
-            } else {
-                logger.trace("dd exited with 0");
-            }
-        } catch (InterruptedException e) {
-            logger.error("interrupted while waiting for dd process to exit", e);
-        }
+        return RootHelper.openInputStream(absPath, offset);
     }
 
     protected boolean runCommand(String cmd) {
@@ -0,0 +1,411 @@
+package org.primftpd.filesystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Long-lived root shell transferring file content for the root file system.
+ * <p>
+ * Spawning a <code>su</code> process per transfer takes a noticeable amount of time,
+ * so helpers are kept in a pool and reused. Each request is one command line, replies
+ * are framed by lengths known to both sides, so binary content can be exchanged over
+ * the same stdio as the commands. A file is read by a single dd, started at the block
+ * of {@link #BLOCK_SIZE} bytes holding the offset, so starting at an offset neither
+ * reads nor rewrites what is before it.
+ * <p>
+ * Writing is framed the same way for the first block only. The length of a longer
+ * stream is not known in advance, so its rest is written by a single dd replacing the
+ * shell, which ends with the input.
+ * <p>
+ * A helper serves one stream at a time. It is taken from the pool when a stream is
+ * opened and given back when the stream is closed, unless dd took its place.
+ */
+public class RootHelper {
+
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private static final int MAX_IDLE = 4;
+    private static final String HELLO = "pftpd-root-helper";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RootHelper.class);
+
+    private static final Deque<RootHelper> IDLE = new ArrayDeque<>();
+
+    private final Process process;
+    private final InputStream in;
+    private final OutputStream out;
+    private boolean broken;
+
+    private RootHelper() throws IOException {
+        LOGGER.debug("starting root helper");
+        // errors are reported through exit codes, stderr would only fill up
+        process = new ProcessBuilder("su")
+                .redirectError(ProcessBuilder.Redirect.to(new File("/dev/null")))
+                .start();
+        in = new BufferedInputStream(process.getInputStream(), BLOCK_SIZE);
+        out = new BufferedOutputStream(process.getOutputStream(), BLOCK_SIZE);
+        String hello = null;
+        try {
+            send("echo " + HELLO + " $(id -u)");
+            hello = readLine();
+        } catch (IOException e) {
+            LOGGER.error("root helper did not start", e);
+        }
+        if (!(HELLO + " 0").equals(hello)) {
+            process.destroy();
+            throw new IOException("could not start root helper, got: '" + hello + "'");
+        }
+    }
+
+    /**
+     * Takes an idle helper from the pool or starts a new one.
+     */
+    static RootHelper acquire() throws IOException {
+        synchronized (IDLE) {
+            RootHelper helper = IDLE.pollFirst();
+            if (helper != null) {
+                return helper;
+            }
+        }
+        return new RootHelper();
+    }
+
+    /**
+     * Gives a helper back to the pool, helpers in an unknown state are stopped.
+     */
+    static void release(RootHelper helper) {
+        if (!helper.broken) {
+            synchronized (IDLE) {
+                if (IDLE.size() < MAX_IDLE) {
+                    IDLE.addFirst(helper);
+                    return;
+                }
+            }
+        }
+        helper.destroy();
+    }
+
+    /**
+     * Stops all idle helpers, to be called when the root shell is closed.
+     */
+    public static void closeAll() {
+        synchronized (IDLE) {
+            RootHelper helper;
+            while ((helper = IDLE.pollFirst()) != null) {
+                helper.destroy();
+            }
+        }
+    }
+
+    static InputStream openInputStream(String path, long offset) throws IOException {
+        RootHelper helper = acquire();
+        try {
+            return helper.startRead(path, offset);
+        } catch (IOException e) {
+            release(helper);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a stream writing at an offset. At offset 0 the file is replaced, at other
+     * offsets existing content is overwritten in place.
+     */
+    static OutputStream openOutputStream(String path, long offset) throws IOException {
+        return new RootOutputStream(acquire(), path, offset);
+    }
+
+    private void destroy() {
+        LOGGER.debug("stopping root helper");
+        try {
+            out.close();
+        } catch (IOException e) {
+            // process is destroyed anyway
+        }
+        process.destroy();
+    }
+
+    /**
+     * Starts sending a file from an offset, its content is read from the returned stream.
+     */
+    private RootInputStream startRead(String path, long offset) throws IOException {
+        String quoted = quote(path);
+        boolean ok = false;
+        try {
+            send("stat -L -c %s " + quoted + " || echo -1");
+            long size = Long.parseLong(readLine());
+            if (size < 0) {
+                ok = true;
+                throw new FileNotFoundException(path);
+            }
+            long block = offset / BLOCK_SIZE;
+            long length = Math.max(0, size - block * BLOCK_SIZE);
+            if (length > 0) {
+                // padding with zeros makes the reply exactly as long as announced,
+                // even if the file is shorter by now
+                send("{ dd if=" + quoted + " bs=" + BLOCK_SIZE + " skip=" + block + "; cat /dev/zero; }"
+                        + " | head -c " + length);
+            }
+            ok = true;
+            return new RootInputStream(this, length, offset - block * BLOCK_SIZE);
+        } catch (NumberFormatException e) {
+            throw new IOException("unexpected reply of root helper", e);
+        } finally {
+            broken |= !ok;
+        }
+    }
+
+    /**
+     * Writes data to a file at a position, with a command of its own.
+     *
+     * @param truncate whether to cut the file after the data, otherwise content behind it is kept
+     */
+    private void writeBlock(String path, long position, byte[] data, int off, int len, boolean truncate)
+            throws IOException {
+        // dd seeks in units of its block size, so that must divide the position;
+        // it is small only for the first block of a stream starting within a block
+        long blockSize = position == 0 ? BLOCK_SIZE : Math.min(BLOCK_SIZE, Long.lowestOneBit(position));
+        boolean ok = false;
+        try {
+            // the empty line tells that the shell waits for the data
+            send("echo; head -c " + len + " | dd of=" + quote(path)
+                    + " bs=" + blockSize + " seek=" + (position / blockSize)
+                    + (truncate ? "" : " conv=notrunc") + "; echo $?");
+            readLine();
+            out.write(data, off, len);
+            out.flush();
+            String exitCode = readLine();
+            ok = true;
+            if (!"0".equals(exitCode)) {
+                throw new IOException("could not write " + path + ", dd exit code: " + exitCode);
+            }
+        } finally {
+            broken |= !ok;
+        }
+    }
+
+    /**
+     * Lets dd take the place of the shell, writing everything sent to the helper from
+     * now on to a file at a position.
+     *
+     * @param position multiple of {@link #BLOCK_SIZE}
+     */
+    private void startWrite(String path, long position) throws IOException {
+        // whatever happens, the shell does not read commands anymore
+        broken = true;
+        // the empty line tells that the shell waits for the data
+        send("echo; exec dd of=" + quote(path) + " bs=" + BLOCK_SIZE + " seek=" + (position / BLOCK_SIZE)
+                + " conv=notrunc");
+        readLine();
+    }
+
+    /**
+     * Ends the input of dd started by {@link #startWrite(String, long)} and waits for it.
+     */
+    private void finishWrite(String path) throws IOException {
+        out.close();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            throw (IOException) new InterruptedIOException("interrupted writing " + path).initCause(e);
+        }
+        if (exitCode != 0) {
+            throw new IOException("could not write " + path + ", dd exit code: " + exitCode);
+        }
+    }
+
+    private void send(String command) throws IOException {
+        LOGGER.trace("root helper command: {}", command);
+        out.write(command.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        out.flush();
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("root helper exited");
+            }
+            sb.append((char) b);
+        }
+        return sb.toString();
+    }
+
+    private static String quote(String path) {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+
+    private static class RootInputStream extends InputStream {
+        /**
+         * Rest of a file which is rather read than starting a new helper when the stream
+         * is closed early.
+         */
+        private static final long MAX_DRAIN = 4 * BLOCK_SIZE;
+
+        private final RootHelper helper;
+        private long remaining;
+        private long skip;
+        private boolean closed;
+
+        /**
+         * @param length number of bytes sent by the helper
+         * @param skip bytes to leave out at the start
+         */
+        RootInputStream(RootHelper helper, long length, long skip) {
+            this.helper = helper;
+            this.remaining = length;
+            this.skip = skip;
+        }
+
+        private boolean fill() throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            if (skip > 0) {
+                long n = skip;
+                skip = 0;
+                discard(n);
+            }
+            return remaining > 0;
+        }
+
+        private void discard(long n) throws IOException {
+            // skipping is not supported by pipes
+            byte[] scratch = new byte[(int) Math.min(n, 8192)];
+            while (n > 0 && remaining > 0) {
+                n -= receive(scratch, 0, (int) Math.min(n, scratch.length));
+            }
+        }
+
+        private int receive(byte[] b, int off, int len) throws IOException {
+            int n = helper.in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                helper.broken = true;
+                throw new EOFException("root helper exited");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            return receive(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return skip > 0 ? 0 : (int) Math.min(remaining, helper.in.available());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                // the helper takes the next command once the whole file has been sent
+                if (remaining > MAX_DRAIN) {
+                    helper.broken = true;
+                } else if (remaining > 0) {
+                    discard(remaining);
+                }
+            } finally {
+                release(helper);
+            }
+        }
+    }
+
+    private static class RootOutputStream extends OutputStream {
+        private final RootHelper helper;
+        private final String path;
+        private final byte[] block;
+        private final boolean truncate;
+        private final long position;
+        private int count;
+        private boolean streaming;
+        private boolean closed;
+
+        RootOutputStream(RootHelper helper, String path, long position) {
+            this.helper = helper;
+            this.path = path;
+            this.position = position;
+            this.truncate = position == 0;
+            // up to the next block, so dd writes the rest in whole blocks
+            this.block = new byte[BLOCK_SIZE - (int) (position % BLOCK_SIZE)];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("stream closed");
+            }
+            if (!streaming) {
+                int n = Math.min(len, block.length - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (len == 0) {
+                    return;
+                }
+                // the first block is complete and more follows, a single dd takes the rest
+                helper.writeBlock(path, position, block, 0, count, truncate);
+                streaming = true;
+                helper.startWrite(path, position + count);
+            }
+            helper.out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (streaming) {
+                    helper.finishWrite(path);
+                } else if (count > 0 || truncate) {
+                    // also creates or truncates the file if nothing has been written
+                    helper.writeBlock(path, position, block, 0, count, truncate);
+                }
+            } finally {
+                release(helper);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.primftpd.filesystem;
 
 import org.apache.sshd.common.Session;
+import org.apache.sshd.common.file.FileAttributes;
 import org.apache.sshd.common.file.SshFile;
 import org.primftpd.pojo.LsOutputBean;
 import org.primftpd.services.PftpdService;
@@ -9,6 +10,7 @@ import java.io.IOException;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -128,6 +130,28 @@ public class RootSshFile extends RootFile<SshFile> implements SshFile {
         return attributes;
     }
 
+    @Override
+    public FileAttributes getFileAttributes(boolean followLinks)
+            throws IOException
+    {
+        FileAttributes attributes = super.getFileAttributes(followLinks);
+        int permissions = 0;
+        permissions |= bean.isUserReadable() ? 0400 : 0;
+        permissions |= bean.isUserWritable() ? 0200 : 0;
+        permissions |= bean.isUserExecutable() ? 0100 : 0;
+        permissions |= bean.isGroupReadable() ? 0040 : 0;
+        permissions |= bean.isGroupWritable() ? 0020 : 0;
+        permissions |= bean.isGroupExecutable() ? 0010 : 0;
+        permissions |= bean.isOtherReadable() ? 0004 : 0;
+        permissions |= bean.isOtherWritable() ? 0002 : 0;
+        permissions |= bean.isOtherExecutable() ? 0001 : 0;
+        return attributes
+                .setOwner(bean.getUser())
+                .setGroup(bean.getGroup())
+                .setSymbolicLink(bean.isLink())
+                .setPermissions(permissions);
+    }
+
     @Override
     public SshFile getParentFile() {
         logger.trace("[{}] getParentFile()", name);
@@ -140,4 +164,9 @@ public class RootSshFile extends RootFile<SshFile> implements SshFile {
     public List<SshFile> listSshFiles() {
         return listFiles();
     }
+
+    @Override
+    public Iterator<SshFile> iterateSshFiles() {
+        return iterateFiles();
+    }
 }
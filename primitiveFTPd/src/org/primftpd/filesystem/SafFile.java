@@ -2,8 +2,10 @@ package org.primftpd.filesystem;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.provider.DocumentsContract;
 
 import androidx.documentfile.provider.DocumentFile;
@@ -15,12 +17,50 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 public abstract class SafFile<T> extends AbstractFile {
 
+    /**
+     * Attributes of an existing document, as kept in the {@link PathCache}.
+     * Reading them from a {@link DocumentFile} costs a query each.
+     */
+    static class CachedDocument {
+        final Uri uri;
+        final String name;
+        final long lastModified;
+        final long size;
+        final boolean readable;
+        final boolean writable;
+        final boolean directory;
+
+        CachedDocument(Uri uri, String name, long lastModified, long size,
+                       boolean readable, boolean writable, boolean directory) {
+            this.uri = uri;
+            this.name = name;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.readable = readable;
+            this.writable = writable;
+            this.directory = directory;
+        }
+    }
+
+    private static final String[] CHILD_QUERY_COLUMNS = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_FLAGS,
+    };
+
     private final ContentResolver contentResolver;
+    protected final PathCache<CachedDocument> cache;
 
     private DocumentFile documentFile;
     private final DocumentFile parentDocumentFile;
@@ -32,7 +72,8 @@ public abstract class SafFile<T> extends AbstractFile {
             DocumentFile parentDocumentFile,
             DocumentFile documentFile,
             String absPath,
-            PftpdService pftpdService) {
+            PftpdService pftpdService,
+            PathCache<CachedDocument> cache) {
         // this c-tor is to be used to access existing files
         super(
                 absPath,
@@ -43,9 +84,9 @@ public abstract class SafFile<T> extends AbstractFile {
                 documentFile.exists(),
                 documentFile.isDirectory(),
                 pftpdService);
-        String parentName = parentDocumentFile.getName();
-        logger.trace("new SafFile() with documentFile, parent '{}' and absPath '{}'", parentName, absPath);
+        logger.trace("new SafFile() with documentFile and absPath '{}'", absPath);
         this.contentResolver = contentResolver;
+        this.cache = cache;
 
         this.parentDocumentFile = parentDocumentFile;
         this.documentFile = documentFile;
@@ -55,6 +96,38 @@ public abstract class SafFile<T> extends AbstractFile {
             name = SafFileSystemView.ROOT_PATH;
         }
         writable = documentFile.canWrite();
+
+        if (exists) {
+            cache.put(absPath, new CachedDocument(
+                    documentFile.getUri(), name, lastModified, size, readable, writable, isDirectory));
+        }
+    }
+
+    public SafFile(
+            ContentResolver contentResolver,
+            DocumentFile parentDocumentFile,
+            DocumentFile documentFile,
+            CachedDocument cached,
+            String absPath,
+            PftpdService pftpdService,
+            PathCache<CachedDocument> cache) {
+        // this c-tor is to be used to access existing files found in cache
+        super(
+                absPath,
+                cached.name,
+                cached.lastModified,
+                cached.size,
+                cached.readable,
+                true,
+                cached.directory,
+                pftpdService);
+        logger.trace("new SafFile() with cached document and absPath '{}'", absPath);
+        this.contentResolver = contentResolver;
+        this.cache = cache;
+
+        this.parentDocumentFile = parentDocumentFile;
+        this.documentFile = documentFile;
+        this.writable = cached.writable;
     }
 
     public SafFile(
@@ -62,13 +135,13 @@ public abstract class SafFile<T> extends AbstractFile {
             DocumentFile parentDocumentFile,
             String name,
             String absPath,
-            PftpdService pftpdService) {
+            PftpdService pftpdService,
+            PathCache<CachedDocument> cache) {
         // this c-tor is to be used to upload new files, create directories or renaming
         super(absPath, name, 0, 0, false, false, false, pftpdService);
-        String parentName = parentDocumentFile.getName();
-        logger.trace("new SafFile() with name '{}', parent '{}' and absPath '{}'",
-                new Object[]{name, parentName, absPath});
+        logger.trace("new SafFile() with name '{}' and absPath '{}'", name, absPath);
         this.contentResolver = contentResolver;
+        this.cache = cache;
         this.name = name;
         this.writable = true;
 
@@ -79,6 +152,7 @@ public abstract class SafFile<T> extends AbstractFile {
             ContentResolver contentResolver,
             DocumentFile parentDocumentFile,
             DocumentFile documentFile,
+            CachedDocument cached,
             String absPath,
             PftpdService pftpdService);
 
@@ -113,6 +187,7 @@ public abstract class SafFile<T> extends AbstractFile {
                 //time = Utils.sshTimeToFileTime(time);
                 updateValues.put(DocumentsContract.Document.COLUMN_LAST_MODIFIED, time);
                 Uri docUri = documentFile.getUri();
+                cache.invalidate(absPath);
                 int updated = contentResolver.update(docUri, updateValues, null, null);
                 return updated == 1;
             } catch (Exception e) {
@@ -125,6 +200,7 @@ public abstract class SafFile<T> extends AbstractFile {
     public boolean mkdir() {
         logger.trace("[{}] mkdir()", name);
         postClientAction(ClientActionEvent.ClientAction.CREATE_DIR);
+        cache.invalidate(absPath);
         return parentDocumentFile.createDirectory(name) != null;
     }
 
@@ -132,15 +208,27 @@ public abstract class SafFile<T> extends AbstractFile {
         logger.trace("[{}] delete()", name);
         if (writable && documentFile != null) {
             postClientAction(ClientActionEvent.ClientAction.DELETE);
-            return documentFile.delete();
+            cache.invalidate(absPath);
+            if (documentFile.delete()) {
+                // the path may be used again, e.g. as destination of a move
+                documentFile = null;
+                exists = false;
+                return true;
+            }
         }
         return false;
     }
 
     public boolean move(SafFile<T> destination) {
         logger.trace("[{}] move({})", name, destination.getAbsolutePath());
+        if (destination.documentFile != null) {
+            // documents providers pick another name instead of replacing
+            return false;
+        }
         if (writable && documentFile != null) {
             postClientAction(ClientActionEvent.ClientAction.RENAME);
+            cache.invalidate(absPath);
+            cache.invalidate(destination.getAbsolutePath());
             return documentFile.renameTo(destination.getName());
         }
         return false;
@@ -150,34 +238,128 @@ public abstract class SafFile<T> extends AbstractFile {
         logger.trace("[{}] listFiles()", name);
         postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
 
-        DocumentFile[] children = documentFile.listFiles();
-        List<T> result = new ArrayList<>(children.length);
-        for (DocumentFile child : children) {
-            String absPath = this.absPath.endsWith("/")
-                    ? this.absPath + child.getName()
-                    : this.absPath + "/" + child.getName();
-            result.add(createFile(contentResolver, documentFile, child, absPath, pftpdService));
+        List<T> result = new ArrayList<>();
+        Cursor childCursor = queryChildren();
+        if (childCursor != null) {
+            try {
+                while (childCursor.moveToNext()) {
+                    result.add(createChild(childCursor));
+                }
+            } finally {
+                childCursor.close();
+            }
         }
         logger.trace("  [{}] listFiles(): num children: {}", name, Integer.valueOf(result.size()));
         return result;
     }
 
+    public Iterator<T> iterateFiles() {
+        logger.trace("[{}] iterateFiles()", name);
+        postClientAction(ClientActionEvent.ClientAction.LIST_DIR);
+
+        // rows are read from the cursor as the client asks for more files
+        Cursor childCursor = queryChildren();
+        if (childCursor == null) {
+            return Collections.<T>emptyList().iterator();
+        }
+        return new LazyListing<Cursor, T>(Utils.rows(childCursor), childCursor) {
+            @Override
+            protected T createFile(Cursor cursor) {
+                return createChild(cursor);
+            }
+        };
+    }
+
+    /**
+     * Queries all children with all attributes needed at once. Reading them from
+     * child DocumentFiles would cost a query per attribute and child.
+     */
+    private Cursor queryChildren() {
+        if (documentFile == null) {
+            return null;
+        }
+        Uri uri = documentFile.getUri();
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                uri,
+                DocumentsContract.getDocumentId(uri));
+        return contentResolver.query(
+                childrenUri,
+                CHILD_QUERY_COLUMNS,
+                null,
+                null,
+                null);
+    }
+
+    private T createChild(Cursor cursor) {
+        String docId = cursor.getString(0);
+        String childName = cursor.getString(1);
+        String mime = cursor.getString(4);
+        int flags = cursor.getInt(5);
+        boolean directory = DocumentsContract.Document.MIME_TYPE_DIR.equals(mime);
+        // same as TreeDocumentFile.canRead() and canWrite(), permissions are granted for the whole tree
+        boolean readable = mime != null && !mime.isEmpty();
+        boolean writable = readable && (flagPresent(flags, DocumentsContract.Document.FLAG_SUPPORTS_DELETE)
+                || (directory && flagPresent(flags, DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE))
+                || (!directory && flagPresent(flags, DocumentsContract.Document.FLAG_SUPPORTS_WRITE)));
+
+        Uri childUri = DocumentsContract.buildDocumentUriUsingTree(documentFile.getUri(), docId);
+        CachedDocument cached = new CachedDocument(
+                childUri,
+                childName,
+                cursor.getLong(2),
+                cursor.getLong(3),
+                readable,
+                writable,
+                directory);
+
+        String absPath = this.absPath.endsWith("/")
+                ? this.absPath + childName
+                : this.absPath + "/" + childName;
+        cache.put(absPath, cached);
+        // document uris of a tree are accepted, no query is made
+        DocumentFile child = DocumentFile.fromTreeUri(pftpdService.getContext(), childUri);
+        return createFile(contentResolver, documentFile, child, cached, absPath, pftpdService);
+    }
+
+    private static boolean flagPresent(int flags, int flag) {
+        return (flags & flag) == flag;
+    }
+
     public OutputStream createOutputStream(long offset) throws IOException {
         logger.trace("[{}] createOutputStream(offset: {})", name, offset);
         postClientAction(ClientActionEvent.ClientAction.UPLOAD);
 
-        Uri uri;
+        Uri uri = getOrCreateUri();
+        logger.trace("   createOutputStream() uri: {}", uri);
+        return new TracingBufferedOutputStream(contentResolver.openOutputStream(uri), logger);
+    }
+
+    @Override
+    public FileChannel createChannel(boolean write) throws IOException {
+        logger.trace("[{}] createChannel({})", name, write);
+        if (!write && documentFile == null) {
+            return null;
+        }
+        postClientAction(write
+                ? ClientActionEvent.ClientAction.UPLOAD
+                : ClientActionEvent.ClientAction.DOWNLOAD);
+
+        Uri uri = write ? getOrCreateUri() : documentFile.getUri();
+        logger.trace("   createChannel() uri: {}", uri);
+        ParcelFileDescriptor pfd = contentResolver.openFileDescriptor(uri, write ? "rw" : "r");
+        return Utils.toFileChannel(pfd, write, logger);
+    }
+
+    private Uri getOrCreateUri() {
+        // content, size and time are about to change
+        cache.invalidate(absPath);
         if (documentFile != null) {
             // existing files
-            uri = documentFile.getUri();
-        } else {
-            // new files
-            DocumentFile docFile = parentDocumentFile.createFile(null, name);
-            uri = docFile.getUri();
+            return documentFile.getUri();
         }
-
-        logger.trace("   createOutputStream() uri: {}", uri);
-        return new TracingBufferedOutputStream(contentResolver.openOutputStream(uri), logger);
+        // new files
+        DocumentFile docFile = parentDocumentFile.createFile(null, name);
+        return docFile.getUri();
     }
 
     public InputStream createInputStream(long offset) throws IOException {
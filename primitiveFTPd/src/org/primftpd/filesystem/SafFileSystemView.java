@@ -23,12 +23,14 @@ public abstract class SafFileSystemView<T extends SafFile<X>, X> {
     protected final Uri startUrl;
     protected final ContentResolver contentResolver;
     protected final PftpdService pftpdService;
+    protected final PathCache<SafFile.CachedDocument> cache;
 
     public SafFileSystemView(Context context, Uri startUrl, ContentResolver contentResolver, PftpdService pftpdService) {
         this.context = context;
         this.startUrl = startUrl;
         this.contentResolver = contentResolver;
         this.pftpdService = pftpdService;
+        this.cache = PathCache.forTree(startUrl, SafFile.CachedDocument.class);
     }
 
     protected abstract T createFile(
@@ -37,6 +39,13 @@ public abstract class SafFileSystemView<T extends SafFile<X>, X> {
             DocumentFile documentFile,
             String absPath,
             PftpdService pftpdService);
+    protected abstract T createFile(
+            ContentResolver contentResolver,
+            DocumentFile parentDocumentFile,
+            DocumentFile documentFile,
+            SafFile.CachedDocument cached,
+            String absPath,
+            PftpdService pftpdService);
     protected abstract T createFile(
             ContentResolver contentResolver,
             DocumentFile parentDocumentFile,
@@ -57,22 +66,45 @@ public abstract class SafFileSystemView<T extends SafFile<X>, X> {
             logger.trace("  getFile(): normalized path parts: '{}'", parts);
             DocumentFile rootDocFile = DocumentFile.fromTreeUri(context, startUrl);
             DocumentFile docFile = rootDocFile;
-            for (int i=0; i<parts.size(); i++) {
+
+            // continue from the deepest directory found in cache
+            int start = 0;
+            for (int i=parts.size(); i>0; i--) {
+                String absPath = Utils.toPath(parts.subList(0, i));
+                SafFile.CachedDocument cached = cache.get(absPath);
+                if (cached == null) {
+                    continue;
+                }
+                // document uris of a tree are accepted, no query is made
+                DocumentFile cachedDocFile = DocumentFile.fromTreeUri(context, cached.uri);
+                if (i == parts.size()) {
+                    DocumentFile parentDocFile = parentFromCache(parts.subList(0, i - 1), rootDocFile);
+                    if (parentDocFile != null) {
+                        logger.trace("  getFile(): found in cache: '{}'", absPath);
+                        return createFile(contentResolver, parentDocFile, cachedDocFile, cached, absPath, pftpdService);
+                    }
+                } else if (cached.directory) {
+                    docFile = cachedDocFile;
+                    start = i;
+                    break;
+                }
+            }
+
+            for (int i=start; i<parts.size(); i++) {
                 String currentPart = parts.get(i);
-                logger.trace("  getFile(): current docFile '{}', current part: '{}'", docFile.getName(), currentPart);
+                logger.trace("  getFile(): current docFile '{}', current part: '{}'", docFile.getUri(), currentPart);
                 DocumentFile parentDocFile = docFile;
                 docFile = docFile.findFile(currentPart);
 
+                String absPath = Utils.toPath(parts.subList(0, i + 1));
                 if (docFile != null) {
-                    boolean found = i == parts.size() - 1;
-                    String absPath = Utils.toPath(parts);
+                    // puts the document into cache
                     T child = createFile(contentResolver, parentDocFile, docFile, absPath, pftpdService);
-                    if (found) {
+                    if (i == parts.size() - 1) {
                         return child;
                     }
                 } else {
                     // probably upload -> create object just with name
-                    String absPath = Utils.toPath(parts);
                     return createFile(contentResolver, parentDocFile, currentPart, absPath, pftpdService);
                 }
             }
@@ -91,4 +123,12 @@ public abstract class SafFileSystemView<T extends SafFile<X>, X> {
             throw e;
         }
     }
+
+    private DocumentFile parentFromCache(List<String> parentParts, DocumentFile rootDocFile) {
+        if (parentParts.isEmpty()) {
+            return rootDocFile;
+        }
+        SafFile.CachedDocument cachedParent = cache.get(Utils.toPath(parentParts));
+        return cachedParent != null ? DocumentFile.fromTreeUri(context, cachedParent.uri) : null;
+    }
 }
@@ -18,8 +18,22 @@ public class SafFtpFile extends SafFile<FtpFile> implements FtpFile {
             DocumentFile documentFile,
             String absPath,
             PftpdService pftpdService,
+            PathCache<CachedDocument> cache,
             User user) {
-        super(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService);
+        super(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, cache);
+        this.user = user;
+    }
+
+    public SafFtpFile(
+            ContentResolver contentResolver,
+            DocumentFile parentDocumentFile,
+            DocumentFile documentFile,
+            CachedDocument cached,
+            String absPath,
+            PftpdService pftpdService,
+            PathCache<CachedDocument> cache,
+            User user) {
+        super(contentResolver, parentDocumentFile, documentFile, cached, absPath, pftpdService, cache);
         this.user = user;
     }
 
@@ -29,8 +43,9 @@ public class SafFtpFile extends SafFile<FtpFile> implements FtpFile {
             String name,
             String absPath,
             PftpdService pftpdService,
+            PathCache<CachedDocument> cache,
             User user) {
-        super(contentResolver, parentDocumentFile, name, absPath, pftpdService);
+        super(contentResolver, parentDocumentFile, name, absPath, pftpdService, cache);
         this.user = user;
     }
 
@@ -39,9 +54,10 @@ public class SafFtpFile extends SafFile<FtpFile> implements FtpFile {
             ContentResolver contentResolver,
             DocumentFile parentDocumentFile,
             DocumentFile documentFile,
+            CachedDocument cached,
             String absPath,
             PftpdService pftpdService) {
-        return new SafFtpFile(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, user);
+        return new SafFtpFile(contentResolver, parentDocumentFile, documentFile, cached, absPath, pftpdService, cache, user);
     }
 
     @Override
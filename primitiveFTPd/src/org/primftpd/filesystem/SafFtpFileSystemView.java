@@ -31,7 +31,18 @@ public class SafFtpFileSystemView extends SafFileSystemView<SafFtpFile, FtpFile>
             String absPath,
             PftpdService pftpdService) {
         logger.trace("createFile(DocumentFile)");
-        return new SafFtpFile(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, user);
+        return new SafFtpFile(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, cache, user);
+    }
+
+    @Override
+    protected SafFtpFile createFile(
+            ContentResolver contentResolver,
+            DocumentFile parentDocumentFile,
+            DocumentFile documentFile,
+            SafFile.CachedDocument cached,
+            String absPath,
+            PftpdService pftpdService) {
+        return new SafFtpFile(contentResolver, parentDocumentFile, documentFile, cached, absPath, pftpdService, cache, user);
     }
 
     @Override
@@ -42,7 +53,7 @@ public class SafFtpFileSystemView extends SafFileSystemView<SafFtpFile, FtpFile>
             String absPath,
             PftpdService pftpdService) {
         logger.trace("createFile(String)");
-        return new SafFtpFile(contentResolver, parentDocumentFile, name, absPath, pftpdService, user);
+        return new SafFtpFile(contentResolver, parentDocumentFile, name, absPath, pftpdService, cache, user);
     }
 
     @Override
@@ -8,6 +8,7 @@ import org.apache.sshd.common.Session;
 import org.apache.sshd.common.file.SshFile;
 import org.primftpd.services.PftpdService;
 
+import java.util.Iterator;
 import java.util.List;
 
 public class SafSshFile extends SafFile<SshFile> implements SshFile {
@@ -21,9 +22,25 @@ public class SafSshFile extends SafFile<SshFile> implements SshFile {
             DocumentFile documentFile,
             String absPath,
             PftpdService pftpdService,
+            PathCache<CachedDocument> cache,
             Session session,
             SafSshFileSystemView fileSystemView) {
-        super(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService);
+        super(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, cache);
+        this.session = session;
+        this.fileSystemView = fileSystemView;
+    }
+
+    public SafSshFile(
+            ContentResolver contentResolver,
+            DocumentFile parentDocumentFile,
+            DocumentFile documentFile,
+            CachedDocument cached,
+            String absPath,
+            PftpdService pftpdService,
+            PathCache<CachedDocument> cache,
+            Session session,
+            SafSshFileSystemView fileSystemView) {
+        super(contentResolver, parentDocumentFile, documentFile, cached, absPath, pftpdService, cache);
         this.session = session;
         this.fileSystemView = fileSystemView;
     }
@@ -34,9 +51,10 @@ public class SafSshFile extends SafFile<SshFile> implements SshFile {
             String name,
             String absPath,
             PftpdService pftpdService,
+            PathCache<CachedDocument> cache,
             Session session,
             SafSshFileSystemView fileSystemView) {
-        super(contentResolver, parentDocumentFile, name, absPath, pftpdService);
+        super(contentResolver, parentDocumentFile, name, absPath, pftpdService, cache);
         this.session = session;
         this.fileSystemView = fileSystemView;
     }
@@ -46,9 +64,10 @@ public class SafSshFile extends SafFile<SshFile> implements SshFile {
             ContentResolver contentResolver,
             DocumentFile parentDocumentFile,
             DocumentFile documentFile,
+            CachedDocument cached,
             String absPath,
             PftpdService pftpdService) {
-        return new SafSshFile(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, session, fileSystemView);
+        return new SafSshFile(contentResolver, parentDocumentFile, documentFile, cached, absPath, pftpdService, cache, session, fileSystemView);
     }
 
     @Override
@@ -84,4 +103,9 @@ public class SafSshFile extends SafFile<SshFile> implements SshFile {
     public List<SshFile> listSshFiles() {
         return listFiles();
     }
+
+    @Override
+    public Iterator<SshFile> iterateSshFiles() {
+        return iterateFiles();
+    }
 }
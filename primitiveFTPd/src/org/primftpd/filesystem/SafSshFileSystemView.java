@@ -27,7 +27,18 @@ public class SafSshFileSystemView extends SafFileSystemView<SafSshFile, SshFile>
             DocumentFile documentFile,
             String absPath,
             PftpdService pftpdService) {
-        return new SafSshFile(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, session, this);
+        return new SafSshFile(contentResolver, parentDocumentFile, documentFile, absPath, pftpdService, cache, session, this);
+    }
+
+    @Override
+    protected SafSshFile createFile(
+            ContentResolver contentResolver,
+            DocumentFile parentDocumentFile,
+            DocumentFile documentFile,
+            SafFile.CachedDocument cached,
+            String absPath,
+            PftpdService pftpdService) {
+        return new SafSshFile(contentResolver, parentDocumentFile, documentFile, cached, absPath, pftpdService, cache, session, this);
     }
 
     @Override
@@ -37,7 +48,7 @@ public class SafSshFileSystemView extends SafFileSystemView<SafSshFile, SshFile>
             String name,
             String absPath,
             PftpdService pftpdService) {
-        return new SafSshFile(contentResolver, parentDocumentFile, name, absPath, pftpdService, session, this);
+        return new SafSshFile(contentResolver, parentDocumentFile, name, absPath, pftpdService, cache, session, this);
     }
 
     @Override
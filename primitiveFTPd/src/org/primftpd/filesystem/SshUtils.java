@@ -1,6 +1,7 @@
 package org.primftpd.filesystem;
 
 import org.apache.sshd.common.Session;
+import org.apache.sshd.common.file.FileAttributes;
 import org.apache.sshd.common.file.SshFile;
 import org.primftpd.util.IpAddressProvider;
 
@@ -71,6 +72,38 @@ class SshUtils {
         }
     }
 
+    /**
+     * Same values as {@link #getAttribute(SshFile, SshFile.Attribute, boolean)},
+     * without creating a map and boxed values.
+     */
+    static FileAttributes getFileAttributes(SshFile sshFile, long size, long lastModified, boolean isDirectory) {
+        int permissions = 0;
+        if (sshFile.isReadable()) {
+            permissions |= 0444;
+        }
+        if (sshFile.isWritable()) {
+            permissions |= 0222;
+        }
+        if (sshFile.isExecutable()) {
+            permissions |= 0111;
+        }
+        String owner = sshFile.getOwner();
+        return new FileAttributes()
+                .setSize(size)
+                .setUid(1)
+                .setOwner(owner)
+                .setGid(1)
+                .setGroup(owner)
+                .setDirectory(isDirectory)
+                .setRegularFile(sshFile.isFile())
+                .setSymbolicLink(false)
+                .setPermissions(permissions)
+                .setCreationTime(lastModified)
+                .setLastModifiedTime(lastModified)
+                .setLastAccessTime(lastModified)
+                .setNLink(0);
+    }
+
     static void setAttribute(SshFile sshFile, SshFile.Attribute attribute, Object value) {
         // TODO ssh set attribute
         switch (attribute) {
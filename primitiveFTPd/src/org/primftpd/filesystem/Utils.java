@@ -1,9 +1,18 @@
 package org.primftpd.filesystem;
 
+import android.database.Cursor;
+import android.os.ParcelFileDescriptor;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.TimeZone;
 
 class Utils {
@@ -61,6 +70,37 @@ class Utils {
         return sb.toString();
     }
 
+    /**
+     * @return iterator moving the cursor to its next row on each call of next()
+     */
+    static Iterator<Cursor> rows(final Cursor cursor) {
+        return new Iterator<Cursor>() {
+            private Boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (hasNext == null) {
+                    hasNext = cursor.moveToNext();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Cursor next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasNext = null;
+                return cursor;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     static String parent(String path) {
         return path.substring(0, path.lastIndexOf('/'));
     }
@@ -76,4 +116,22 @@ class Utils {
     static long sshTimeToFileTime(long time) {
         return time * 1000;
     }
+
+    /**
+     * Wraps a file descriptor into a channel, closing the channel closes the descriptor.
+     * Returns null for descriptors that cannot be positioned, e.g. pipes of cloud providers.
+     */
+    static FileChannel toFileChannel(ParcelFileDescriptor pfd, boolean write, Logger logger) throws IOException {
+        if (pfd == null) {
+            return null;
+        }
+        if (pfd.getStatSize() < 0) {
+            logger.trace("   not a regular file descriptor, cannot create channel");
+            pfd.close();
+            return null;
+        }
+        return write
+                ? new ParcelFileDescriptor.AutoCloseOutputStream(pfd).getChannel()
+                : new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+    }
 }
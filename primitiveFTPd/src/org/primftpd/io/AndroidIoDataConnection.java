@@ -5,7 +5,6 @@ import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.impl.DefaultFtpSession;
 import org.apache.ftpserver.impl.FtpIoSession;
-import org.apache.ftpserver.impl.ServerDataConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +12,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
@@ -23,11 +24,11 @@ public class AndroidIoDataConnection implements DataConnection {
     private final Logger LOG = LoggerFactory.getLogger(getClass());
 
     private final FtpIoSession session;
-    private final ServerDataConnectionFactory factory;
+    private final AndroidIoDataConnectionFactory factory;
     private final SocketChannel dataSocketChannel;
 
     public AndroidIoDataConnection(final SocketChannel dataSocketChannel, final FtpIoSession session,
-                            final ServerDataConnectionFactory factory) {
+                            final AndroidIoDataConnectionFactory factory) {
         LOG.trace("AndroidIoDataConnection()");
         this.session = session;
         this.dataSocketChannel = dataSocketChannel;
@@ -45,32 +46,15 @@ public class AndroidIoDataConnection implements DataConnection {
             throws IOException {
         LOG.trace("transferFromClient()");
 
-        WritableByteChannel outStreamBacked = new WritableByteChannel() {
-            @Override
-            public int write(ByteBuffer src) throws IOException {
-                //LOG.trace("buffer stats, position: {}, limit: {}, capacity: {}, remaining: {}",
-                //        new Object[]{src.position(), src.limit(), src.capacity(), src.remaining()});
-                byte[] buf = src.array();
-                int length = src.position();
-                if (length < buf.length) {
-                    LOG.trace("writing less than buffer length, len: {}, diff: {}", length, (buf.length - length));
-                }
-                out.write(buf, 0, length);
-                return length;
-            }
-
-            @Override
-            public boolean isOpen() {
-                return true;
-            }
-
-            @Override
-            public void close() throws IOException {
-                out.close();
+        if (out instanceof FileChannelStream) {
+            FileChannel file = ((FileChannelStream) out).getFileChannel();
+            // transferFrom() does not write beyond the end of the file
+            if (file.position() <= file.size()) {
+                return transferFromClient(session, file);
             }
-        };
-
-        return transfer(session, true, dataSocketChannel, outStreamBacked);
+            return transfer(session, false, dataSocketChannel, file, true);
+        }
+        return transfer(session, false, dataSocketChannel, Channels.newChannel(out), false);
     }
 
     /*
@@ -84,37 +68,10 @@ public class AndroidIoDataConnection implements DataConnection {
             throws IOException {
         LOG.trace("transferToClient()");
 
-        ReadableByteChannel inStreamBacked = new ReadableByteChannel() {
-
-            private int lastRead = 0;
-
-            @Override
-            public int read(ByteBuffer dst) throws IOException {
-                byte[] buf = dst.array();
-                lastRead = in.read(buf);
-                if (lastRead < 0) {
-                    dst.position(0);
-                    dst.limit(0);
-                } else if (lastRead < buf.length) {
-                    LOG.trace("setting buffer position: 0 & limit: {}", lastRead);
-                    dst.position(0);
-                    dst.limit(lastRead);
-                }
-                return lastRead;
-            }
-
-            @Override
-            public boolean isOpen() {
-                return lastRead >= 0;
-            }
-
-            @Override
-            public void close() throws IOException {
-                in.close();
-            }
-        };
-
-        return transfer(session, true, inStreamBacked, dataSocketChannel);
+        if (in instanceof FileChannelStream) {
+            return transferToClient(session, ((FileChannelStream) in).getFileChannel());
+        }
+        return transfer(session, true, Channels.newChannel(in), dataSocketChannel, false);
     }
 
     /*
@@ -132,22 +89,88 @@ public class AndroidIoDataConnection implements DataConnection {
         //writer.write(str);
         byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
         ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        dataSocketChannel.write(buffer);
+        while (buffer.hasRemaining()) {
+            dataSocketChannel.write(buffer);
+        }
 
         // update session
         if (session instanceof DefaultFtpSession) {
-            ((DefaultFtpSession) session).increaseWrittenDataBytes(str
-                    .getBytes(StandardCharsets.UTF_8).length);
+            ((DefaultFtpSession) session).increaseWrittenDataBytes(bytes.length);
         }
 
     }
 
-    private final long transfer(FtpSession session, boolean isWrite, final ReadableByteChannel in, final WritableByteChannel out)
-            throws IOException {
+    /**
+     * Sends the file from the channel's position on, letting the kernel copy the data.
+     */
+    private long transferToClient(FtpSession session, FileChannel file) throws IOException {
         long transferredSize = 0L;
+        try {
+            long position = file.position();
+            long size = file.size();
+            LOG.trace("transferToClient() from file channel, position: {}, size: {}", position, size);
+            while (position < size) {
+                long count = file.transferTo(position, Math.min(size - position, AndroidIoDataConnectionFactory.TRANSFER_BUFFER_SIZE), dataSocketChannel);
+                if (count <= 0) {
+                    // file has been truncated meanwhile
+                    break;
+                }
+                position += count;
+                transferredSize += count;
+                transferred(session, true, (int) count);
+            }
+            file.position(position);
+            LOG.trace("bytes transferred: {}", transferredSize);
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        }
+        return transferredSize;
+    }
+
+    /**
+     * Writes everything the client sends to the file, starting at the channel's position.
+     */
+    private long transferFromClient(FtpSession session, FileChannel file) throws IOException {
+        long transferredSize = 0L;
+        try {
+            long position = file.position();
+            LOG.trace("transferFromClient() to file channel, position: {}", position);
+            while (true) {
+                // the data socket is blocking, 0 means end of stream
+                long count = file.transferFrom(dataSocketChannel, position, AndroidIoDataConnectionFactory.TRANSFER_BUFFER_SIZE);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+                transferredSize += count;
+                transferred(session, false, (int) count);
+            }
+            file.position(position);
+            LOG.trace("bytes transferred: {}", transferredSize);
+        } catch(IOException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } catch(RuntimeException e) {
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        }
+        return transferredSize;
+    }
+
+    private final long transfer(FtpSession session, boolean isWrite, final ReadableByteChannel in, final WritableByteChannel out,
+            boolean directBuffer) throws IOException {
+        long transferredSize = 0L;
+        ByteBuffer buffer = factory.getTransferBuffer(directBuffer);
 
         boolean isAscii = session.getDataType() == DataType.ASCII;
-        byte[] buff = new byte[4096];
 
         LOG.trace("transfer(), ascii: {}", isAscii);
         if (isAscii) {
@@ -155,16 +178,11 @@ public class AndroidIoDataConnection implements DataConnection {
         }
         try {
 
-            DefaultFtpSession defaultFtpSession = null;
-            if (session instanceof DefaultFtpSession) {
-                defaultFtpSession = (DefaultFtpSession) session;
-            }
-
             CountingReadableByteChannel inCounting = new CountingReadableByteChannel(in);
             CountingWritableByteChannel outCounting = new CountingWritableByteChannel(out);
 
             long loopcnt = 0;
-            ByteBuffer buffer = ByteBuffer.wrap(buff);
+            buffer.clear();
             while (true) {
 
                 // read data
@@ -172,30 +190,17 @@ public class AndroidIoDataConnection implements DataConnection {
                 if (count == -1) {
                     break;
                 }
-                if (count < buff.length) {
-                    LOG.trace("read less than buffer size in loop '{}', read: {}, diff: {}",
-                            new Object[]{loopcnt, count, (buff.length - count)});
-                    LOG.trace("    buffer stats, position: {}, limit: {}, capacity: {}, remaining: {}",
-                            new Object[]{buffer.position(), buffer.limit(), buffer.capacity(), buffer.remaining()});
-                }
-
-                // update MINA session
-                if (defaultFtpSession != null) {
-                    if (isWrite) {
-                        defaultFtpSession.increaseWrittenDataBytes(count);
-                    } else {
-                        defaultFtpSession.increaseReadDataBytes(count);
-                    }
-                }
 
                 // write data
-                outCounting.write(buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    outCounting.write(buffer);
+                }
+                buffer.clear();
 
                 transferredSize += count;
 
-                notifyObserver();
-
-                buffer.clear();
+                transferred(session, isWrite, count);
 
                 long read = inCounting.getCount();
                 long written = outCounting.getCount();
@@ -224,6 +229,19 @@ public class AndroidIoDataConnection implements DataConnection {
         return transferredSize;
     }
 
+    private void transferred(FtpSession session, boolean isWrite, int count) {
+        // update MINA session
+        if (session instanceof DefaultFtpSession) {
+            if (isWrite) {
+                ((DefaultFtpSession) session).increaseWrittenDataBytes(count);
+            } else {
+                ((DefaultFtpSession) session).increaseReadDataBytes(count);
+            }
+        }
+
+        notifyObserver();
+    }
+
     /**
      * Notify connection manager observer.
      */
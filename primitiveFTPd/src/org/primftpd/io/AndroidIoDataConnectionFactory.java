@@ -16,12 +16,19 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 
 
 public class AndroidIoDataConnectionFactory extends IODataConnectionFactory implements ServerDataConnectionFactory {
 
+    /**
+     * Size of the buffers data is moved through and of the chunks passed to
+     * {@link java.nio.channels.FileChannel#transferTo}.
+     */
+    public static final int TRANSFER_BUFFER_SIZE = 256 * 1024;
+
     private final Logger LOG = LoggerFactory
             .getLogger(IODataConnectionFactory.class);
 
@@ -48,6 +55,9 @@ public class AndroidIoDataConnectionFactory extends IODataConnectionFactory impl
     private ServerSocket serverSocket;
     private Socket dataSoc;
 
+    private ByteBuffer heapTransferBuffer;
+    private ByteBuffer directTransferBuffer;
+
     public AndroidIoDataConnectionFactory(
             final FtpServerContext serverContext,
             final FtpIoSession session) {
@@ -177,6 +187,24 @@ public class AndroidIoDataConnectionFactory extends IODataConnectionFactory impl
         return new AndroidIoDataConnection(createDataSocket(), session, this);
     }
 
+    /**
+     * Buffers are allocated once and reused by all transfers of the session,
+     * transfers of one session do not run concurrently. A direct buffer only pays off
+     * between two real channels, channels wrapping streams copy it to an array anyway.
+     */
+    ByteBuffer getTransferBuffer(boolean direct) {
+        if (direct) {
+            if (directTransferBuffer == null) {
+                directTransferBuffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+            }
+            return directTransferBuffer;
+        }
+        if (heapTransferBuffer == null) {
+            heapTransferBuffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        }
+        return heapTransferBuffer;
+    }
+
     private synchronized SocketChannel createDataSocket() throws Exception {
 
         // get socket depending on the selection
@@ -7,7 +7,7 @@ import java.nio.channels.WritableByteChannel;
 public class CountingWritableByteChannel implements WritableByteChannel {
 
     private final WritableByteChannel delegate;
-    private int count;
+    private long count;
 
     public CountingWritableByteChannel(WritableByteChannel delegate) {
         this.delegate = delegate;
@@ -31,7 +31,7 @@ public class CountingWritableByteChannel implements WritableByteChannel {
         delegate.close();
     }
 
-    public int getCount() {
+    public long getCount() {
         return count;
     }
 }
@@ -0,0 +1,20 @@
+package org.primftpd.io;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
+
+public class FileChannelInputStream extends BufferedInputStream implements FileChannelStream {
+
+    private final FileChannel channel;
+
+    public FileChannelInputStream(FileInputStream in, int size) {
+        super(in, size);
+        this.channel = in.getChannel();
+    }
+
+    @Override
+    public FileChannel getFileChannel() {
+        return channel;
+    }
+}
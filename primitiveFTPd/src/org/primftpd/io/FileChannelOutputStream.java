@@ -0,0 +1,20 @@
+package org.primftpd.io;
+
+import java.io.BufferedOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+public class FileChannelOutputStream extends BufferedOutputStream implements FileChannelStream {
+
+    private final FileChannel channel;
+
+    public FileChannelOutputStream(FileChannel channel) {
+        super(Channels.newOutputStream(channel));
+        this.channel = channel;
+    }
+
+    @Override
+    public FileChannel getFileChannel() {
+        return channel;
+    }
+}
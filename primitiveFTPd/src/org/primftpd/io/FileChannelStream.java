@@ -0,0 +1,13 @@
+package org.primftpd.io;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by streams of real files. Data connections use the channel to move data
+ * between file and socket with {@link FileChannel#transferTo} and
+ * {@link FileChannel#transferFrom} instead of copying it through the stream.
+ * The channel's position is the position of the stream.
+ */
+public interface FileChannelStream {
+    FileChannel getFileChannel();
+}
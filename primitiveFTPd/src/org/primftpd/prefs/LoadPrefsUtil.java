@@ -33,6 +33,11 @@ public class LoadPrefsUtil
 	public static final String PREF_KEY_LOGGING = "loggingPref";
 	public static final String PREF_KEY_FTP_PASSIVE_PORTS = "ftpPassivePortsPref";
 	public static final String PREF_KEY_IDLE_TIMEOUT = "idleTimeoutPref";
+	public static final String PREF_KEY_SSH_NIO2 = "sshNio2Pref";
+	public static final String PREF_KEY_SSH_WINDOW_SIZE = "sshWindowSizePref";
+	public static final String PREF_KEY_SSH_PACKET_SIZE = "sshPacketSizePref";
+	public static final String PREF_KEY_SSH_ADAPTIVE_WINDOW = "sshAdaptiveWindowPref";
+	public static final String PREF_KEY_SSH_COMPRESSION = "sshCompressionPref";
 	public static final String PREF_KEY_STORAGE_TYPE = "storageTypePref";
 	public static final String PREF_KEY_SAF_URL = "safUrlPref";
 	public static final String PREF_KEY_ALLOWED_IPS_PATTERN = "allowedIpsPatternPref";
@@ -47,6 +52,14 @@ public class LoadPrefsUtil
 	static final String PORT_PASSIVE_DEFAULT_VAL_STR = String.valueOf(PORT_PASSIVE_DEFAULT_VAL);
 	public static final int IDLE_TIMEOUT_DEFAULT_VAL = 0;
 	static final String IDLE_TIMEOUT_DEFAULT_VAL_STR = String.valueOf(IDLE_TIMEOUT_DEFAULT_VAL);
+	// ssh window and packet sizes are set in KiB
+	public static final int SSH_WINDOW_SIZE_DEFAULT_VAL = 2048;
+	static final String SSH_WINDOW_SIZE_DEFAULT_VAL_STR = String.valueOf(SSH_WINDOW_SIZE_DEFAULT_VAL);
+	// the inbound buffer of each channel grows up to the window size
+	public static final int SSH_WINDOW_SIZE_MAX_VAL = 16 * 1024;
+	public static final int SSH_PACKET_SIZE_DEFAULT_VAL = 32;
+	static final String SSH_PACKET_SIZE_DEFAULT_VAL_STR = String.valueOf(SSH_PACKET_SIZE_DEFAULT_VAL);
+	static final int SSH_PACKET_SIZE_MAX_VAL = 256;
 
 	/**
 	 * @return Android {@link SharedPreferences} object.
@@ -183,6 +196,60 @@ public class LoadPrefsUtil
 		return val;
 	}
 
+	public static Boolean sshNio2(SharedPreferences prefs) {
+		return prefs.getBoolean(
+			LoadPrefsUtil.PREF_KEY_SSH_NIO2,
+			Boolean.FALSE);
+	}
+
+	/**
+	 * @return SSH channel window size in bytes.
+	 */
+	public static int sshWindowSize(SharedPreferences prefs) {
+		int kib = loadKib(prefs, PREF_KEY_SSH_WINDOW_SIZE, SSH_WINDOW_SIZE_DEFAULT_VAL, SSH_WINDOW_SIZE_DEFAULT_VAL_STR);
+		// a window must at least hold one packet
+		return Math.max(Math.min(kib, SSH_WINDOW_SIZE_MAX_VAL), sshPacketSize(prefs) / 1024) * 1024;
+	}
+
+	/**
+	 * @return Maximum SSH channel packet size in bytes.
+	 */
+	public static int sshPacketSize(SharedPreferences prefs) {
+		int kib = loadKib(prefs, PREF_KEY_SSH_PACKET_SIZE, SSH_PACKET_SIZE_DEFAULT_VAL, SSH_PACKET_SIZE_DEFAULT_VAL_STR);
+		return Math.min(kib, SSH_PACKET_SIZE_MAX_VAL) * 1024;
+	}
+
+	public static Boolean sshAdaptiveWindow(SharedPreferences prefs) {
+		return prefs.getBoolean(
+			LoadPrefsUtil.PREF_KEY_SSH_ADAPTIVE_WINDOW,
+			Boolean.TRUE);
+	}
+
+	public static Boolean sshCompression(SharedPreferences prefs) {
+		return prefs.getBoolean(
+			LoadPrefsUtil.PREF_KEY_SSH_COMPRESSION,
+			Boolean.FALSE);
+	}
+
+	static int loadKib(
+		SharedPreferences prefs,
+		String prefsKey,
+		int defaultVal,
+		String defaultValStr)
+	{
+		String str = prefs.getString(prefsKey, defaultValStr);
+		int val = defaultVal;
+		if (str != null && str.length() > 0) {
+			try {
+				val = Integer.parseInt(str);
+			} catch (NumberFormatException e) {
+				// never mind
+			}
+		}
+		// keep sizes in bytes within int range
+		return val > 0 && val <= 1024 * 1024 ? val : defaultVal;
+	}
+
 	public static StorageType storageType(SharedPreferences prefs) {
 		String storageTypeStr = prefs.getString(
 				PREF_KEY_STORAGE_TYPE,
@@ -312,6 +379,21 @@ public class LoadPrefsUtil
 		Integer idleTimeout = idleTimeout(prefs);
 		logger.debug("got idleTimeout: {}", idleTimeout);
 
+		boolean sshNio2 = sshNio2(prefs);
+		logger.debug("got sshNio2: {}", Boolean.valueOf(sshNio2));
+
+		int sshWindowSize = sshWindowSize(prefs);
+		logger.debug("got sshWindowSize: {}", Integer.valueOf(sshWindowSize));
+
+		int sshPacketSize = sshPacketSize(prefs);
+		logger.debug("got sshPacketSize: {}", Integer.valueOf(sshPacketSize));
+
+		boolean sshAdaptiveWindow = sshAdaptiveWindow(prefs);
+		logger.debug("got sshAdaptiveWindow: {}", Boolean.valueOf(sshAdaptiveWindow));
+
+		boolean sshCompression = sshCompression(prefs);
+		logger.debug("got sshCompression: {}", Boolean.valueOf(sshCompression));
+
 		int port = loadPortInsecure(logger, prefs);
 		logger.debug("got 'port': {}", Integer.valueOf(port));
 
@@ -345,6 +427,11 @@ public class LoadPrefsUtil
 				serverToStart,
 				ftpPassivePorts,
 				idleTimeout,
+				sshNio2,
+				sshWindowSize,
+				sshPacketSize,
+				sshAdaptiveWindow,
+				sshCompression,
 				showConnectionInfo,
 				storageType,
 				safUrl,
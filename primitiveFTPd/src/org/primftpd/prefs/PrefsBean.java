@@ -22,6 +22,11 @@ public class PrefsBean implements Serializable
 	private final ServerToStart serverToStart;
 	private final String ftpPassivePorts;
 	private final Integer idleTimeout;
+	private final boolean sshNio2;
+	private final int sshWindowSize;
+	private final int sshPacketSize;
+	private final boolean sshAdaptiveWindow;
+	private final boolean sshCompression;
 	private final boolean showConnectionInfoInNotification;
 	private final StorageType storageType;
 	private final String safUrl;
@@ -41,6 +46,11 @@ public class PrefsBean implements Serializable
 		ServerToStart serverToStart,
 		String ftpPassivePorts,
 		Integer idleTimeout,
+		boolean sshNio2,
+		int sshWindowSize,
+		int sshPacketSize,
+		boolean sshAdaptiveWindow,
+		boolean sshCompression,
 		boolean showConnectionInfoInNotification,
 		StorageType storageType,
 		String safUrl,
@@ -62,6 +72,11 @@ public class PrefsBean implements Serializable
 		this.serverToStart = serverToStart;
 		this.ftpPassivePorts = ftpPassivePorts;
 		this.idleTimeout = idleTimeout;
+		this.sshNio2 = sshNio2;
+		this.sshWindowSize = sshWindowSize;
+		this.sshPacketSize = sshPacketSize;
+		this.sshAdaptiveWindow = sshAdaptiveWindow;
+		this.sshCompression = sshCompression;
 		this.showConnectionInfoInNotification = showConnectionInfoInNotification;
 		this.storageType = storageType;
 		this.safUrl = safUrl;
@@ -129,6 +144,26 @@ public class PrefsBean implements Serializable
 		return idleTimeout;
 	}
 
+	public boolean isSshNio2() {
+		return sshNio2;
+	}
+
+	public int getSshWindowSize() {
+		return sshWindowSize;
+	}
+
+	public int getSshPacketSize() {
+		return sshPacketSize;
+	}
+
+	public boolean isSshAdaptiveWindow() {
+		return sshAdaptiveWindow;
+	}
+
+	public boolean isSshCompression() {
+		return sshCompression;
+	}
+
 	public boolean showConnectionInfoInNotification() {
 		return showConnectionInfoInNotification;
 	}
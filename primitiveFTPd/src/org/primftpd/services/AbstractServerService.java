@@ -174,6 +174,11 @@ public abstract class AbstractServerService
 		return prefsBean;
 	}
 
+	@Override
+	public Context getContext() {
+		return getApplicationContext();
+	}
+
 	/**
 	 * Register a DNS-SD service (to be discoverable through Bonjour/Avahi).
 	 */
@@ -1,5 +1,7 @@
 package org.primftpd.services;
 
+import android.content.Context;
+
 import org.primftpd.events.ClientActionEvent;
 import org.primftpd.prefs.PrefsBean;
 
@@ -12,4 +14,6 @@ public interface PftpdService {
             String path);
 
     PrefsBean getPrefsBean();
+
+    Context getContext();
 }
@@ -7,6 +7,8 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 
+import org.primftpd.filesystem.PathCache;
+import org.primftpd.filesystem.RootHelper;
 import org.primftpd.prefs.StorageType;
 import org.primftpd.util.NotificationUtil;
 import org.primftpd.util.ServicesStartStopUtil;
@@ -113,6 +115,7 @@ public class ServerServiceHandler extends Handler
 			}
 
 			service.cleanQuickShareTmpDir();
+			PathCache.clearAll();
 		}
 		releaseWakeLock();
 		shellClose();
@@ -180,6 +183,7 @@ public class ServerServiceHandler extends Handler
 			logger.debug("closing root shell ({})", logName);
 			shell.close();
 			shell = null;
+			RootHelper.closeAll();
 		}
 	}
 }
@@ -10,15 +10,21 @@ import org.apache.ftpserver.usermanager.AnonymousAuthentication;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 import org.apache.ftpserver.util.IoUtils;
 import org.apache.sshd.SshServer;
+import org.apache.sshd.common.Compression;
 import org.apache.sshd.common.NamedFactory;
 import org.apache.sshd.common.Session;
+import org.apache.sshd.common.SessionListener;
 import org.apache.sshd.common.Signature;
+import org.apache.sshd.common.compression.CompressionDelayedZlib;
+import org.apache.sshd.common.compression.CompressionNone;
 import org.apache.sshd.common.file.FileSystemFactory;
 import org.apache.sshd.common.file.FileSystemView;
 import org.apache.sshd.common.io.IoSession;
 import org.apache.sshd.common.io.mina.MinaServiceFactoryFactory;
+import org.apache.sshd.common.io.nio2.Nio2ServiceFactoryFactory;
 import org.apache.sshd.common.keyprovider.AbstractKeyPairProvider;
 import org.apache.sshd.common.session.AbstractSession;
+import org.apache.sshd.common.session.TransportMetrics;
 import org.apache.sshd.server.Command;
 import org.apache.sshd.server.PasswordAuthenticator;
 import org.apache.sshd.server.command.ScpCommandFactory;
@@ -33,6 +39,7 @@ import org.primftpd.filesystem.QuickShareSshFileSystemView;
 import org.primftpd.filesystem.RoSafSshFileSystemView;
 import org.primftpd.filesystem.RootSshFileSystemView;
 import org.primftpd.filesystem.SafSshFileSystemView;
+import org.primftpd.prefs.LoadPrefsUtil;
 import org.primftpd.util.Defaults;
 import org.primftpd.util.KeyInfoProvider;
 import org.primftpd.util.RemoteIpChecker;
@@ -55,6 +62,9 @@ import eu.chainfire.libsuperuser.Shell;
  */
 public class SshServerService extends AbstractServerService
 {
+	// limit of adaptive channel windows, each SFTP session may buffer that much
+	private static final int SSH_MAX_ADAPTIVE_WINDOW_SIZE = LoadPrefsUtil.SSH_WINDOW_SIZE_MAX_VAL * 1024;
+
 	private SshServer sshServer;
 
 	@Override
@@ -88,9 +98,28 @@ public class SshServerService extends AbstractServerService
 		return ClientActionEvent.Protocol.SFTP;
 	}
 
+	/**
+	 * @return transport metrics of all sessions since the server has been started,
+	 * null if it is not running
+	 */
+	public TransportMetrics getTransportMetrics()
+	{
+		SshServer server = sshServer;
+		return server != null ? server.getMetrics() : null;
+	}
+
+	public void logTransportMetrics()
+	{
+		TransportMetrics metrics = getTransportMetrics();
+		if (metrics != null) {
+			logger.info("ssh transport metrics:\n{}", metrics);
+		}
+	}
+
 	@Override
 	protected void stopServer()
 	{
+		logTransportMetrics();
 		try {
 			List<AbstractSession> activeSessions = sshServer.getActiveSessions();
 			for (AbstractSession session : activeSessions) {
@@ -115,16 +144,38 @@ public class SshServerService extends AbstractServerService
 		sshServer.setPort(prefsBean.getSecurePort());
 
 		// causes exception when not set
-		sshServer.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
+		if (prefsBean.isSshNio2()) {
+			sshServer.setIoServiceFactoryFactory(new Nio2ServiceFactoryFactory());
+		} else {
+			sshServer.setIoServiceFactoryFactory(new MinaServiceFactoryFactory());
+		}
 
-		sshServer.setSessionFactory(new SessionFactory() {
+		SessionFactory sessionFactory = new SessionFactory() {
 			@Override
 			protected AbstractSession createSession(IoSession ioSession) throws Exception {
 				SocketAddress remoteAddress = ioSession.getRemoteAddress();
 				boolean ipAllowed = RemoteIpChecker.ipAllowed(remoteAddress, prefsBean, logger);
 				return ipAllowed ? super.createSession(ioSession) : null;
 			}
+		};
+		// tells whether a slow transfer waited for crypto, the client's window or the network
+		sessionFactory.addListener(new SessionListener() {
+			@Override
+			public void sessionCreated(Session session) {
+			}
+
+			@Override
+			public void sessionEvent(Session session, Event event) {
+			}
+
+			@Override
+			public void sessionClosed(Session session) {
+				logger.debug("ssh transport metrics of session from {}:\n{}",
+					session.getIoSession().getRemoteAddress(),
+					session.getMetrics());
+			}
 		});
+		sshServer.setSessionFactory(sessionFactory);
 
 		// enable scp and sftp
 		sshServer.setCommandFactory(new ScpCommandFactory());
@@ -226,6 +277,24 @@ public class SshServerService extends AbstractServerService
 		// idle timeout
 		sshServer.getProperties().put(SshServer.IDLE_TIMEOUT, String.valueOf(prefsBean.getIdleTimeout()));
 
+		// channel window and packet sizes
+		int windowSize = prefsBean.getSshWindowSize();
+		sshServer.getProperties().put(SshServer.WINDOW_SIZE, String.valueOf(windowSize));
+		sshServer.getProperties().put(SshServer.MAX_PACKET_SIZE, String.valueOf(prefsBean.getSshPacketSize()));
+		if (prefsBean.isSshAdaptiveWindow()) {
+			sshServer.getProperties().put(
+				SshServer.MAX_WINDOW_SIZE,
+				String.valueOf(SSH_MAX_ADAPTIVE_WINDOW_SIZE));
+		}
+
+		// compression, only after authentication, incompressible data is not compressed
+		if (prefsBean.isSshCompression()) {
+			List<NamedFactory<Compression>> compressionFactories = new ArrayList<>(2);
+			compressionFactories.add(new CompressionNone.Factory());
+			compressionFactories.add(new CompressionDelayedZlib.Factory(true));
+			sshServer.setCompressionFactories(compressionFactories);
+		}
+
 		try {
 			// XXX preference to enable shell? seems to need root to access /dev/tty
 //			sshServer.setShellFactory(new ProcessShellFactory(new String[] {
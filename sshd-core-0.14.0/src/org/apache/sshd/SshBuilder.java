@@ -40,13 +40,16 @@ import org.apache.sshd.common.Signature;
 import org.apache.sshd.common.TcpipForwarderFactory;
 import org.apache.sshd.common.cipher.AES128CBC;
 import org.apache.sshd.common.cipher.AES128CTR;
+import org.apache.sshd.common.cipher.AES128GCM;
 import org.apache.sshd.common.cipher.AES192CBC;
 import org.apache.sshd.common.cipher.AES192CTR;
 import org.apache.sshd.common.cipher.AES256CBC;
 import org.apache.sshd.common.cipher.AES256CTR;
+import org.apache.sshd.common.cipher.AES256GCM;
 import org.apache.sshd.common.cipher.ARCFOUR128;
 import org.apache.sshd.common.cipher.ARCFOUR256;
 import org.apache.sshd.common.cipher.BlowfishCBC;
+import org.apache.sshd.common.cipher.ChaCha20Poly1305;
 import org.apache.sshd.common.cipher.TripleDESCBC;
 import org.apache.sshd.common.compression.CompressionNone;
 import org.apache.sshd.common.file.FileSystemFactory;
@@ -58,7 +61,9 @@ import org.apache.sshd.common.mac.HMACMD596;
 import org.apache.sshd.common.mac.HMACSHA1;
 import org.apache.sshd.common.mac.HMACSHA196;
 import org.apache.sshd.common.mac.HMACSHA256;
+import org.apache.sshd.common.mac.HMACSHA256ETM;
 import org.apache.sshd.common.mac.HMACSHA512;
+import org.apache.sshd.common.mac.HMACSHA512ETM;
 import org.apache.sshd.common.random.BouncyCastleRandom;
 import org.apache.sshd.common.random.JceRandom;
 import org.apache.sshd.common.random.SingletonRandomFactory;
@@ -157,6 +162,8 @@ public class SshBuilder {
             }
             if (macFactories == null) {
                 macFactories = Arrays.asList(
+                        new HMACSHA256ETM.Factory(),
+                        new HMACSHA512ETM.Factory(),
                         new HMACSHA256.Factory(),
                         new HMACSHA512.Factory(),
                         new HMACSHA1.Factory(),
@@ -261,6 +268,13 @@ public class SshBuilder {
 
         protected static List<NamedFactory<Cipher>> setUpDefaultCiphers() {
             List<NamedFactory<Cipher>> avail = new LinkedList<NamedFactory<Cipher>>();
+            // aead ciphers first, they need no separate mac pass over the packets
+            avail.add(new AES128GCM.Factory());
+            avail.add(new AES256GCM.Factory());
+            if (SecurityUtils.isBouncyCastleRegistered()) {
+                // fast without aes instructions
+                avail.add(new ChaCha20Poly1305.Factory());
+            }
             avail.add(new AES128CTR.Factory());
             avail.add(new AES192CTR.Factory());
             avail.add(new AES256CTR.Factory());
@@ -366,6 +380,8 @@ public class SshBuilder {
             if (SecurityUtils.isBouncyCastleRegistered()) {
                 if (keyExchangeFactories == null) {
                     keyExchangeFactories = Arrays.asList(
+                            new org.apache.sshd.server.kex.Curve25519SHA256.Factory(),
+                            new org.apache.sshd.server.kex.Curve25519SHA256.LibSshFactory(),
                             new org.apache.sshd.server.kex.DHGEX256.Factory(),
                             new org.apache.sshd.server.kex.DHGEX.Factory(),
                             new org.apache.sshd.server.kex.ECDHP256.Factory(),
@@ -261,6 +261,7 @@ public class SshClient extends AbstractFactoryManager implements ClientFactoryMa
                             executor.shutdownNow();
                             executor = null;
                         }
+                        shutdownMessageHandlerExecutor();
                     }
                 })
                 .build();
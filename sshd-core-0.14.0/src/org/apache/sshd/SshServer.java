@@ -330,6 +330,7 @@ public class SshServer extends AbstractFactoryManager implements ServerFactoryMa
                             executor.shutdownNow();
                             executor = null;
                         }
+                        shutdownMessageHandlerExecutor();
                     }
                 })
                 .build();
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -34,7 +35,9 @@ import org.apache.sshd.common.io.IoServiceFactoryFactory;
 import org.apache.sshd.common.session.AbstractSessionFactory;
 import org.apache.sshd.common.session.ConnectionService;
 import org.apache.sshd.common.session.SessionTimeoutListener;
+import org.apache.sshd.common.session.TransportMetrics;
 import org.apache.sshd.common.util.CloseableUtils;
+import org.apache.sshd.common.util.ThreadUtils;
 
 /**
  * TODO Add javadoc
@@ -58,6 +61,8 @@ public abstract class AbstractFactoryManager extends CloseableUtils.AbstractInne
     protected SshAgentFactory agentFactory;
     protected ScheduledExecutorService executor;
     protected boolean shutdownExecutor;
+    protected ExecutorService messageHandlerExecutor;
+    protected final TransportMetrics metrics = new TransportMetrics();
     protected TcpipForwarderFactory tcpipForwarderFactory;
     protected ForwardingFilter tcpipForwardingFilter;
     protected FileSystemFactory fileSystemFactory;
@@ -219,6 +224,30 @@ public abstract class AbstractFactoryManager extends CloseableUtils.AbstractInne
         this.shutdownExecutor = shutdownExecutor;
     }
 
+    public synchronized ExecutorService getMessageHandlerExecutor() {
+        if (messageHandlerExecutor == null) {
+            String threads = getProperties().get(MESSAGE_HANDLER_THREADS);
+            if (threads != null && threads.length() > 0) {
+                int nb = Integer.parseInt(threads);
+                if (nb > 0) {
+                    messageHandlerExecutor = ThreadUtils.newFixedThreadPool(getClass().getSimpleName() + "-message-handler", nb);
+                }
+            }
+        }
+        return messageHandlerExecutor;
+    }
+
+    public TransportMetrics getMetrics() {
+        return metrics;
+    }
+
+    protected synchronized void shutdownMessageHandlerExecutor() {
+        if (messageHandlerExecutor != null) {
+            messageHandlerExecutor.shutdownNow();
+            messageHandlerExecutor = null;
+        }
+    }
+
     public TcpipForwarderFactory getTcpipForwarderFactory() {
         return tcpipForwarderFactory;
     }
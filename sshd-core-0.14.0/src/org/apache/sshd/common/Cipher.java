@@ -44,6 +44,21 @@ public interface Cipher  {
      */
     int getBlockSize();
 
+    /**
+     * Retrieves the size packets have to be aligned to
+     *
+     * @return
+     */
+    int getCipherBlockSize();
+
+    /**
+     * Retrieves the size of the authentication tag of authenticated ciphers,
+     * which replace the mac. Their packet length is sent unencrypted.
+     *
+     * @return the tag size, or 0 if the cipher does not authenticate
+     */
+    int getAuthenticationTagSize();
+
     /**
      * Initialize the cipher for encryption or decryption with
      * the given private key and initialization vector
@@ -57,6 +72,8 @@ public interface Cipher  {
 
     /**
      * Performs in-place encryption or decryption on the given data.
+     * For authenticated ciphers this finishes a packet: the tag follows
+     * the data, it is written when encrypting and verified when decrypting.
      * 
      * @param input
      * @param inputOffset
@@ -65,4 +82,24 @@ public interface Cipher  {
      */
     void update(byte[] input, int inputOffset, int inputLen) throws Exception;
 
+    /**
+     * Tells the sequence number of the next packet, only used for authenticated
+     * ciphers and before {@link #updateAAD}. Ciphers may derive their nonce from it.
+     *
+     * @param seq
+     */
+    void setSequenceNumber(long seq);
+
+    /**
+     * Processes the packet length of the current packet, only used for authenticated
+     * ciphers and before {@link #update}. It is authenticated and, depending on the
+     * cipher, encrypted or decrypted in place.
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @throws Exception
+     */
+    void updateAAD(byte[] data, int offset, int length) throws Exception;
+
 }
@@ -20,12 +20,14 @@ package org.apache.sshd.common;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.sshd.agent.SshAgentFactory;
 import org.apache.sshd.common.file.FileSystemFactory;
 import org.apache.sshd.common.io.IoServiceFactory;
 import org.apache.sshd.common.session.ConnectionService;
+import org.apache.sshd.common.session.TransportMetrics;
 
 /**
  * This interface allows retrieving all the <code>NamedFactory</code> used
@@ -41,6 +43,13 @@ public interface FactoryManager {
      */
     String WINDOW_SIZE = "window-size";
 
+    /**
+     * Key used to retrieve the value of the size up to which local windows
+     * may grow when their data is consumed quickly. Defaults to the window size,
+     * i.e. windows do not grow.
+     */
+    String MAX_WINDOW_SIZE = "max-window-size";
+
     /**
      * Key used to retrieve the value of the maximum packet size
      * in the configuration properties map.
@@ -57,6 +66,25 @@ public interface FactoryManager {
      */
     int DEFAULT_NIO_WORKERS = Runtime.getRuntime().availableProcessors() + 1;
 
+    /**
+     * Number of threads handling decoded packets, shared by all sessions.
+     * With a positive value, the I/O threads only decrypt and frame packets and a
+     * session's packets are handled in order on this pool, so a slow session does not
+     * hold up the other sessions served by the same I/O thread.
+     * Defaults to 0, packets are handled on the I/O thread.
+     */
+    String MESSAGE_HANDLER_THREADS = "message-handler-threads";
+
+    /**
+     * Size of the buffer each NIO2 session reads from its socket into.
+     */
+    String NIO2_READ_BUFFER_SIZE = "nio2-read-buffer-size";
+
+    /**
+     * Default size of the NIO2 read buffer.
+     */
+    int DEFAULT_NIO2_READ_BUFFER_SIZE = 32 * 1024;
+
     /**
      * Key used to retrieve the value of the timeout after which
      * it will close the connection if the other side has not been
@@ -222,6 +250,22 @@ public interface FactoryManager {
      */
     ScheduledExecutorService getScheduledExecutorService();
 
+    /**
+     * Retrieve the <code>ExecutorService</code> handling decoded packets.
+     *
+     * @return the <code>ExecutorService</code> or <code>null</code> if packets
+     *         are to be handled on the I/O threads
+     * @see #MESSAGE_HANDLER_THREADS
+     */
+    ExecutorService getMessageHandlerExecutor();
+
+    /**
+     * Retrieve the transport metrics of all the sessions created by this factory manager.
+     *
+     * @return the <code>TransportMetrics</code>, can not be <code>null</code>
+     */
+    TransportMetrics getMetrics();
+
     /**
      * Retrieve the <code>ForwardingFilter</code> to be used by the SSH server.
      * If no filter has been configured (i.e. this method returns
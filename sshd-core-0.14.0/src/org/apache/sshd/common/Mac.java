@@ -35,4 +35,10 @@ public interface Mac {
     void updateUInt(long foo);
 
     void doFinal(byte[] buf, int offset) throws Exception;
+
+    /**
+     * Tells whether the mac is computed over the encrypted packet (encrypt-then-mac).
+     * The packet length is then sent unencrypted.
+     */
+    boolean isEncryptThenMac();
 }
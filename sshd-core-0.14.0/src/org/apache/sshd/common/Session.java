@@ -24,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.sshd.common.future.SshFuture;
 import org.apache.sshd.common.io.IoSession;
 import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.session.TransportMetrics;
 import org.apache.sshd.common.util.Buffer;
 
 /**
@@ -88,6 +89,14 @@ public interface Session extends Closeable {
      */
     FactoryManager getFactoryManager();
 
+    /**
+     * Retrieve the transport metrics of this session, they are added to the
+     * metrics of the factory manager as well.
+     *
+     * @return the metrics, can not be <tt>null</tt>.
+     */
+    TransportMetrics getMetrics();
+
     /**
      * Retrieve one of the negotiated values during the KEX stage
      * @param paramType The parameter type index - one of the {@link SSHConstants}
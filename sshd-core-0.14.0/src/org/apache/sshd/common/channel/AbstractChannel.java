@@ -213,11 +213,15 @@ public abstract class AbstractChannel extends CloseableUtils.AbstractInnerClosea
         super.doCloseImmediately();
     }
 
-    protected void writePacket(Buffer buffer) throws IOException {
+    /**
+     * @return the write future or <code>null</code> if the packet has been discarded
+     */
+    protected IoWriteFuture writePacket(Buffer buffer) throws IOException {
         if (!isClosing()) {
-            session.writePacket(buffer);
+            return session.writePacket(buffer);
         } else {
             log.debug("Discarding output packet because channel is being closed");
+            return null;
         }
     }
 
@@ -285,7 +289,8 @@ public abstract class AbstractChannel extends CloseableUtils.AbstractInnerClosea
     protected void configureWindow() {
         int window = session.getIntProperty(FactoryManager.WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
         int packet = session.getIntProperty(FactoryManager.MAX_PACKET_SIZE, DEFAULT_PACKET_SIZE);
-        localWindow.init(window, packet);
+        int maxWindow = session.getIntProperty(FactoryManager.MAX_WINDOW_SIZE, window);
+        localWindow.init(window, packet, maxWindow);
     }
 
     protected void sendWindowAdjust(int len) throws IOException {
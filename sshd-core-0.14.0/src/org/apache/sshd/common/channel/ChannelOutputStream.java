@@ -24,7 +24,10 @@ import java.io.OutputStream;
 
 import org.apache.sshd.common.SshConstants;
 import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.future.SshFutureListener;
+import org.apache.sshd.common.io.IoWriteFuture;
 import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.common.util.BufferPool;
 import org.slf4j.Logger;
 
 /**
@@ -50,7 +53,6 @@ public class ChannelOutputStream extends OutputStream {
         this.remoteWindow = remoteWindow;
         this.log = log;
         this.cmd = cmd;
-        newBuffer(0);
     }
 
     public void setNoDelay(boolean noDelay) {
@@ -94,6 +96,9 @@ public class ChannelOutputStream extends OutputStream {
                 }
                 continue;
             }
+            if (buffer == null) {
+                newBuffer(l);
+            }
             buffer.putRawBytes(buf, s, _l);
             bufferLength += _l;
             s += _l;
@@ -119,17 +124,22 @@ public class ChannelOutputStream extends OutputStream {
                 buf.putInt(length);
                 buf.wpos(buf.wpos() + length);
                 if (total == length) {
-                    newBuffer(length);
+                    // the next buffer is sized by the next write
+                    buffer = null;
+                    bufferLength = 0;
                 } else {
                     int leftover = total - length;
-                    newBuffer(Math.max(leftover, length));
+                    newBuffer(leftover);
                     buffer.putRawBytes(buf.array(), pos - leftover, leftover);
                     bufferLength = leftover;
                 }
                 lastSize = length;
                 remoteWindow.waitAndConsume(length);
                 log.debug("Send {} on channel {}", cmd == SshConstants.SSH_MSG_CHANNEL_DATA ? "SSH_MSG_CHANNEL_DATA" : "SSH_MSG_CHANNEL_EXTENDED_DATA", channel.getId());
-                channel.writePacket(buf);
+                IoWriteFuture future = channel.writePacket(buf);
+                if (future != null) {
+                    future.addListener(new ReleaseBufferListener(buf));
+                }
             }
         } catch (WindowClosedException e) {
             closed = true;
@@ -147,8 +157,31 @@ public class ChannelOutputStream extends OutputStream {
         closed = true;
     }
 
+    /**
+     * Returns the packet buffer to the pool once it has been written,
+     * nothing else references it at that point.
+     */
+    private static class ReleaseBufferListener implements SshFutureListener<IoWriteFuture> {
+        private final Buffer buffer;
+
+        ReleaseBufferListener(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public void operationComplete(IoWriteFuture future) {
+            if (future.isWritten()) {
+                BufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Creates the buffer for the next packet, large enough for the given amount of data,
+     * up to a full packet, so that it does not grow while the data is written.
+     */
     private void newBuffer(int size) {
-        buffer = channel.getSession().createBuffer(cmd, size <= 0 ? 0 : 12 + size);
+        size = Math.min(size, Math.min(remoteWindow.getPacketSize(), BufferPool.MAX_POOLED_SIZE));
+        buffer = channel.getSession().createBuffer(cmd, 12 + size);
         buffer.putInt(channel.getRecipient());
         if (cmd == SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA) {
             buffer.putInt(1);
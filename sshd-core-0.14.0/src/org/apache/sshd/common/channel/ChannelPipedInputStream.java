@@ -23,27 +23,35 @@ import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.SocketException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-import org.apache.sshd.common.util.Buffer;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * TODO Add javadoc
+ * Inbound pipe of a channel, filled by the session with the data received from the peer and
+ * read by a single consumer thread, e.g. a shell or a subsystem.
+ *
+ * The data is kept in a ring buffer large enough for the whole local window, as the peer may
+ * not send more than that before the reader has consumed some data. The writer replaces the
+ * ring by a larger one when the window has grown. There is a single writer and a single reader,
+ * so they only share two positions and do not need a lock, the reader parks when the pipe is
+ * empty and the writer wakes it up.
  *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
 public class ChannelPipedInputStream extends InputStream {
 
     private final Window localWindow;
-    private final Buffer buffer = new Buffer();
     private final byte[] b = new byte[1];
-    private boolean closed;
-    private boolean eofSent;
 
-    private final Lock lock = new ReentrantLock();
-    private final Condition dataAvailable = lock.newCondition();
+    // allocated by the writer on the first data, the window is not known before the channel is open;
+    // always set before writePos, so the reader sees the ring holding the data it has been told of
+    private volatile byte[] ring;
+    // total number of bytes written and read, each one only changed by one side
+    private volatile long writePos;
+    private volatile long readPos;
+    private volatile Thread reader;
+
+    private volatile boolean closed;
+    private boolean eofSent;
 
     private int timeout = 0; // zero is infinite
 
@@ -52,7 +60,7 @@ public class ChannelPipedInputStream extends InputStream {
      * This is different from the {@link #closed}, which indicates that the reader of this {@link InputStream}
      * will not be reading data any more.
      */
-    private boolean writerClosed;
+    private volatile boolean writerClosed;
 
     public ChannelPipedInputStream(Window localWindow) {
         this.localWindow = localWindow;
@@ -68,16 +76,13 @@ public class ChannelPipedInputStream extends InputStream {
 
     @Override
     public int available() throws IOException {
-        lock.lock();
-        try {
-            int avail = buffer.available();
-            if (avail == 0 && writerClosed) {
-                return -1;
-            }
-            return avail;
-        } finally {
-            lock.unlock();
+        // writerClosed is set after the last data has been written
+        boolean eof = writerClosed;
+        int avail = (int) (writePos - readPos);
+        if (avail == 0 && eof) {
+            return -1;
         }
+        return avail;
     }
 
     public int read() throws IOException {
@@ -93,78 +98,112 @@ public class ChannelPipedInputStream extends InputStream {
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
         long startTime = System.currentTimeMillis();
-        lock.lock();
-        try {
-            for (;;) {
-                if (closed && writerClosed && eofSent || closed && !writerClosed) {
-                    throw new IOException("Pipe closed");
-                }
-                if (buffer.available() > 0) {
-                    break;
-                }
-                if (writerClosed) {
-                    eofSent = true;
-                    return -1; // no more data to read
-                }
-                try {
+        long avail;
+        for (;;) {
+            if (closed && (!writerClosed || eofSent)) {
+                throw new IOException("Pipe closed");
+            }
+            boolean eof = writerClosed;
+            avail = writePos - readPos;
+            if (avail > 0) {
+                break;
+            }
+            if (eof) {
+                eofSent = true;
+                return -1; // no more data to read
+            }
+            reader = Thread.currentThread();
+            try {
+                // check again as the writer may have missed the reader
+                if (writePos == readPos && !writerClosed && !closed) {
                     if (timeout > 0) {
                         long remaining = timeout - (System.currentTimeMillis() - startTime);
                         if (remaining <= 0) {
                             throw new SocketException("timeout");
                         }
-                        dataAvailable.await(remaining, TimeUnit.MILLISECONDS);
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(remaining));
                     } else {
-                        dataAvailable.await();
+                        LockSupport.park(this);
                     }
-                } catch (InterruptedException e) {
-                    throw (IOException) new InterruptedIOException().initCause(e);
                 }
+            } finally {
+                reader = null;
             }
-            if (len > buffer.available()) {
-                len = buffer.available();
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
             }
-            buffer.getRawBytes(b, off, len);
-            if (buffer.rpos() > localWindow.getPacketSize() || buffer.available() == 0) {
-                buffer.compact();
-            }
-        } finally {
-            lock.unlock();
         }
+        if (len > avail) {
+            len = (int) avail;
+        }
+        byte[] ring = this.ring;
+        long pos = readPos;
+        int index = (int) pos & (ring.length - 1);
+        int first = Math.min(len, ring.length - index);
+        System.arraycopy(ring, index, b, off, first);
+        System.arraycopy(ring, 0, b, off + first, len - first);
+        readPos = pos + len;
         localWindow.consumeAndCheck(len);
         return len;
     }
 
     public void eof() {
-        lock.lock();
-        try {
-            writerClosed = true;
-            dataAvailable.signalAll();
-        } finally {
-            lock.unlock();
-        }
+        writerClosed = true;
+        wakeUpReader();
     }
 
     @Override
     public void close() throws IOException {
-        lock.lock();
-        try {
-            closed = true;
-            dataAvailable.signalAll();
-        } finally {
-            lock.unlock();
-        }
+        closed = true;
+        wakeUpReader();
     }
 
     public void receive(byte[] bytes, int off, int len) throws IOException {
-        lock.lock();
-        try {
-            if (writerClosed || closed) {
-                throw new IOException("Pipe closed");
+        if (writerClosed || closed) {
+            throw new IOException("Pipe closed");
+        }
+        byte[] ring = this.ring;
+        long pos = writePos;
+        // the reader only frees space, so this is the most that is used
+        int used = (int) (pos - readPos);
+        if (ring == null || len > ring.length - used) {
+            ring = grow(ring, pos, used + len);
+        }
+        int index = (int) pos & (ring.length - 1);
+        int first = Math.min(len, ring.length - index);
+        System.arraycopy(bytes, off, ring, index, first);
+        System.arraycopy(bytes, off + first, ring, 0, len - first);
+        writePos = pos + len;
+        wakeUpReader();
+    }
+
+    private byte[] grow(byte[] old, long pos, int needed) throws IOException {
+        int size = localWindow.getMaxSize();
+        if (old == null) {
+            size = Math.max(size, needed);
+        } else if (needed > size) {
+            throw new IOException("Peer sent more data than the window allows");
+        }
+        byte[] ring = new byte[size > 1 ? Integer.highestOneBit(size - 1) << 1 : 1];
+        if (old != null) {
+            // the reader keeps reading from the old ring until it sees the new one, the data
+            // it may still need is copied to the same positions, data after pos is not there yet
+            for (long p = readPos; p < pos; ) {
+                int from = (int) p & (old.length - 1);
+                int to = (int) p & (ring.length - 1);
+                int n = (int) Math.min(pos - p, Math.min(old.length - from, ring.length - to));
+                System.arraycopy(old, from, ring, to, n);
+                p += n;
             }
-            buffer.putRawBytes(bytes, off, len);
-            dataAvailable.signalAll();
-        } finally {
-            lock.unlock();
+        }
+        this.ring = ring;
+        return ring;
+    }
+
+    private void wakeUpReader() {
+        Thread t = reader;
+        if (t != null) {
+            LockSupport.unpark(t);
         }
     }
 }
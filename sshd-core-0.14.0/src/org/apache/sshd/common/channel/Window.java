@@ -20,6 +20,7 @@ package org.apache.sshd.common.channel;
 
 import java.io.IOException;
 
+import org.apache.sshd.common.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +35,12 @@ import org.slf4j.LoggerFactory;
  */
 public class Window {
 
+    /**
+     * A local window which allows growing is doubled when half of it has been consumed
+     * within this time after the previous window adjustment.
+     */
+    public static final long GROW_INTERVAL = 100;
+
     private final static Logger log = LoggerFactory.getLogger(Window.class);
 
     private final AbstractChannel channel;
@@ -41,7 +48,9 @@ public class Window {
     private final String name;
 
     private int size;
-    private int maxSize;
+    private volatile int maxSize;
+    private int maxSizeLimit;
+    private long lastAdjustTime;
     private int packetSize;
     private boolean waiting;
     private boolean closed;
@@ -67,9 +76,18 @@ public class Window {
     }
 
     public void init(int size, int packetSize) {
+        init(size, packetSize, size);
+    }
+
+    /**
+     * Initialize a window which may grow up to the given limit when the data is consumed
+     * quickly, see {@link #consumeAndCheck(int)}.
+     */
+    public void init(int size, int packetSize, int maxSizeLimit) {
         synchronized (lock) {
             this.size = size;
             this.maxSize = size;
+            this.maxSizeLimit = Math.max(size, maxSizeLimit);
             this.packetSize = packetSize;
             lock.notifyAll();
         }
@@ -103,10 +121,29 @@ public class Window {
             if (log.isTraceEnabled()) {
                 log.trace("Consume " + name + " by " + len + " down to " + size);
             }
+            if (size < maxSize / 2) {
+                grow();
+            }
             check(maxSize);
         }
     }
 
+    /**
+     * Doubles the window, up to its limit, if the peer could have sent more data than
+     * the window allowed, i.e. half of it has been consumed shortly after the last
+     * adjustment. Must be called right before the window is adjusted.
+     */
+    private void grow() {
+        long now = System.currentTimeMillis();
+        if (maxSize < maxSizeLimit && lastAdjustTime > 0 && now - lastAdjustTime < GROW_INTERVAL) {
+            maxSize = (int) Math.min(maxSizeLimit, 2L * maxSize);
+            if (log.isDebugEnabled()) {
+                log.debug("Grow " + name + " up to " + maxSize);
+            }
+        }
+        lastAdjustTime = now;
+    }
+
     public void check(int maxFree) throws IOException {
         synchronized (lock) {
             if (size < maxFree / 2) {
@@ -121,11 +158,18 @@ public class Window {
 
     public void waitAndConsume(int len) throws InterruptedException, WindowClosedException {
         synchronized (lock) {
+            long start = 0;
             while (size < len && !closed) {
                 log.debug("Waiting for {} bytes on {}", len, name);
+                if (start == 0) {
+                    start = System.nanoTime();
+                }
                 waiting = true;
                 lock.wait();
             }
+            if (start != 0) {
+                stalled(System.nanoTime() - start);
+            }
             if (waiting) {
                 if (closed) {
                     log.debug("Window {} has been closed", name);
@@ -146,11 +190,18 @@ public class Window {
 
     public int waitForSpace() throws InterruptedException, WindowClosedException {
         synchronized (lock) {
+            long start = 0;
             while (size == 0 && !closed) {
                 log.debug("Waiting for some space on {}", name);
+                if (start == 0) {
+                    start = System.nanoTime();
+                }
                 waiting = true;
                 lock.wait();
             }
+            if (start != 0) {
+                stalled(System.nanoTime() - start);
+            }
             if (waiting) {
                 if (closed) {
                     log.debug("Window {} has been closed", name);
@@ -166,6 +217,13 @@ public class Window {
         }
     }
 
+    private void stalled(long nanos) {
+        Session session = channel != null ? channel.getSession() : null;
+        if (session != null) {
+            session.getMetrics().windowStalled(nanos);
+        }
+    }
+
     public void notifyClosed() {
         synchronized (lock) {
             closed = true;
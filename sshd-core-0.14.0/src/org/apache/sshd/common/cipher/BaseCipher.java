@@ -52,6 +52,14 @@ public class BaseCipher implements Cipher {
         return bsize;
     }
 
+    public int getCipherBlockSize() {
+        return ivsize;
+    }
+
+    public int getAuthenticationTagSize() {
+        return 0;
+    }
+
     public void init(Mode mode, byte[] key, byte[] iv) throws Exception {
         key = resize(key, bsize);
         iv = resize(iv, ivsize);
@@ -71,6 +79,13 @@ public class BaseCipher implements Cipher {
         cipher.update(input, inputOffset, inputLen, input, inputOffset);
     }
 
+    public void setSequenceNumber(long seq) {
+    }
+
+    public void updateAAD(byte[] data, int offset, int length) throws Exception {
+        throw new UnsupportedOperationException(transformation + " does not support associated data");
+    }
+
     protected static byte[] resize(byte[] data, int size) {
         if (data.length > size) {
             byte[] tmp = new byte[size];
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.cipher;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.sshd.common.util.SecurityUtils;
+
+/**
+ * AES in Galois/Counter Mode as specified by RFC 5647 and used by OpenSSH.
+ * Encryption and authentication are done in one pass, so no mac is used.
+ * The 12 byte nonce consists of a fixed part and a 64 bit packet counter
+ * which is incremented after each packet.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class BaseGCMCipher extends BaseCipher {
+
+    public static final int NONCE_SIZE = 12;
+    public static final int TAG_SIZE = 16;
+
+    protected Mode mode;
+    protected SecretKeySpec secretKey;
+    protected byte[] nonce;
+
+    public BaseGCMCipher(int bsize) {
+        super(NONCE_SIZE, bsize, "AES", "AES/GCM/NoPadding");
+    }
+
+    @Override
+    public int getCipherBlockSize() {
+        return 16;
+    }
+
+    @Override
+    public int getAuthenticationTagSize() {
+        return TAG_SIZE;
+    }
+
+    @Override
+    public void init(Mode mode, byte[] key, byte[] iv) throws Exception {
+        this.mode = mode;
+        this.secretKey = new SecretKeySpec(resize(key, bsize), algorithm);
+        this.nonce = resize(iv, ivsize).clone();
+        // the nonce changes with every packet, the cipher is initialized per packet
+        cipher = SecurityUtils.getCipher(transformation);
+    }
+
+    @Override
+    public void updateAAD(byte[] data, int offset, int length) throws Exception {
+        cipher.init(mode == Mode.Encrypt ? javax.crypto.Cipher.ENCRYPT_MODE : javax.crypto.Cipher.DECRYPT_MODE,
+                    secretKey,
+                    new GCMParameterSpec(TAG_SIZE * 8, nonce));
+        cipher.updateAAD(data, offset, length);
+    }
+
+    @Override
+    public void update(byte[] input, int inputOffset, int inputLen) throws Exception {
+        if (mode == Mode.Encrypt) {
+            cipher.doFinal(input, inputOffset, inputLen, input, inputOffset);
+        } else {
+            // throws AEADBadTagException if the packet has been tampered with
+            cipher.doFinal(input, inputOffset, inputLen + TAG_SIZE, input, inputOffset);
+        }
+        incrementCounter();
+    }
+
+    private void incrementCounter() {
+        for (int i = NONCE_SIZE - 1; i >= NONCE_SIZE - 8; i--) {
+            if (++nonce[i] != 0) {
+                break;
+            }
+        }
+    }
+
+}
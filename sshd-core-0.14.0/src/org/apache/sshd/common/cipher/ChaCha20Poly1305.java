@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.cipher;
+
+import java.security.MessageDigest;
+
+import javax.crypto.AEADBadTagException;
+
+import org.apache.sshd.common.Cipher;
+import org.apache.sshd.common.NamedFactory;
+import org.bouncycastle.crypto.engines.ChaChaEngine;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+/**
+ * ChaCha20-Poly1305 authenticated cipher as specified by OpenSSH in PROTOCOL.chacha20poly1305.
+ * It is fast in software, which makes it the better choice for devices without AES instructions.
+ *
+ * The 64 byte key holds two ChaCha20 keys: the second one encrypts the packet length,
+ * the first one the payload and derives the Poly1305 key. Both use the packet sequence
+ * number as nonce. The tag authenticates the encrypted length and payload.
+ * This implementation uses the BouncyCastle lightweight API.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class ChaCha20Poly1305 implements Cipher {
+
+    public static final int KEY_SIZE = 64;
+    public static final int TAG_SIZE = 16;
+
+    /**
+     * Named factory for ChaCha20Poly1305 Cipher
+     */
+    public static class Factory implements NamedFactory<Cipher> {
+        public String getName() {
+            return "chacha20-poly1305@openssh.com";
+        }
+        public Cipher create() {
+            return new ChaCha20Poly1305();
+        }
+    }
+
+    private final ChaChaEngine lengthEngine = new ChaChaEngine();
+    private final ChaChaEngine payloadEngine = new ChaChaEngine();
+    private final Poly1305 mac = new Poly1305();
+    private final byte[] nonce = new byte[8];
+    private final byte[] polyKey = new byte[64];
+    private final byte[] tag = new byte[TAG_SIZE];
+    private final byte[] receivedTag = new byte[TAG_SIZE];
+    private Mode mode;
+    private KeyParameter lengthKey;
+    private KeyParameter payloadKey;
+
+    public int getIVSize() {
+        return 0;
+    }
+
+    public int getBlockSize() {
+        return KEY_SIZE;
+    }
+
+    public int getCipherBlockSize() {
+        return 8;
+    }
+
+    public int getAuthenticationTagSize() {
+        return TAG_SIZE;
+    }
+
+    public void init(Mode mode, byte[] key, byte[] iv) throws Exception {
+        this.mode = mode;
+        this.payloadKey = new KeyParameter(key, 0, 32);
+        this.lengthKey = new KeyParameter(key, 32, 32);
+    }
+
+    public void setSequenceNumber(long seq) {
+        for (int i = 7; i >= 0; i--) {
+            nonce[i] = (byte) seq;
+            seq >>>= 8;
+        }
+    }
+
+    public void updateAAD(byte[] data, int offset, int length) throws Exception {
+        lengthEngine.init(true, new ParametersWithIV(lengthKey, nonce));
+        payloadEngine.init(true, new ParametersWithIV(payloadKey, nonce));
+        // the first key stream block gives the poly1305 key, the payload starts with the second
+        for (int i = 0; i < polyKey.length; i++) {
+            polyKey[i] = 0;
+        }
+        payloadEngine.processBytes(polyKey, 0, polyKey.length, polyKey, 0);
+        mac.init(new KeyParameter(polyKey, 0, 32));
+
+        if (mode == Mode.Encrypt) {
+            lengthEngine.processBytes(data, offset, length, data, offset);
+            mac.update(data, offset, length);
+        } else {
+            mac.update(data, offset, length);
+            lengthEngine.processBytes(data, offset, length, data, offset);
+        }
+    }
+
+    public void update(byte[] input, int inputOffset, int inputLen) throws Exception {
+        if (mode == Mode.Encrypt) {
+            payloadEngine.processBytes(input, inputOffset, inputLen, input, inputOffset);
+            mac.update(input, inputOffset, inputLen);
+            mac.doFinal(input, inputOffset + inputLen);
+        } else {
+            mac.update(input, inputOffset, inputLen);
+            mac.doFinal(tag, 0);
+            System.arraycopy(input, inputOffset + inputLen, receivedTag, 0, TAG_SIZE);
+            if (!MessageDigest.isEqual(tag, receivedTag)) {
+                throw new AEADBadTagException("Poly1305 tag mismatch");
+            }
+            payloadEngine.processBytes(input, inputOffset, inputLen, input, inputOffset);
+        }
+    }
+
+}
@@ -51,10 +51,24 @@ public class CipherNone implements Cipher {
         return 16;
     }
 
+    public int getCipherBlockSize() {
+        return 8;
+    }
+
+    public int getAuthenticationTagSize() {
+        return 0;
+    }
+
     public void init(Mode mode, byte[] bytes, byte[] bytes1) throws Exception {
     }
 
     public void update(byte[] input, int inputOffset, int inputLen) throws Exception {
     }
 
+    public void setSequenceNumber(long seq) {
+    }
+
+    public void updateAAD(byte[] data, int offset, int length) throws Exception {
+    }
+
 }
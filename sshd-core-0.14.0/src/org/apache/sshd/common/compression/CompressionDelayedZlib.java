@@ -34,12 +34,22 @@ public class CompressionDelayedZlib extends CompressionZlib {
      * Named factory for the ZLib Delayed Compression.
      */
     public static class Factory implements NamedFactory<Compression> {
+        private final boolean adaptive;
+
+        public Factory() {
+            this(false);
+        }
+
+        public Factory(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
         public String getName() {
             return "zlib@openssh.com";
         }
 
         public Compression create() {
-            return new CompressionDelayedZlib();
+            return new CompressionDelayedZlib(adaptive);
         }
     }
 
@@ -47,6 +57,11 @@ public class CompressionDelayedZlib extends CompressionZlib {
      * Create a new instance of a delayed ZLib compression
      */
     public CompressionDelayedZlib() {
+        this(false);
+    }
+
+    public CompressionDelayedZlib(boolean adaptive) {
+        super(adaptive);
     }
 
     public boolean isDelayed() {
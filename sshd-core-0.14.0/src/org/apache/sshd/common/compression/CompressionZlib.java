@@ -19,17 +19,24 @@
 package org.apache.sshd.common.compression;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 import org.apache.sshd.common.Compression;
 import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.SshConstants;
 import org.apache.sshd.common.util.Buffer;
 
 /**
  * ZLib based Compression.
  *
+ * In adaptive mode, the compression of the data of each channel is sampled, and data of channels
+ * which does not compress well, e.g. media files, is sent in stored blocks, i.e. with compression
+ * level 0. Compression is tried again from time to time, as the content of a channel may change.
+ *
  * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
  */
 public class CompressionZlib implements Compression {
@@ -38,25 +45,68 @@ public class CompressionZlib implements Compression {
      * Named factory for the ZLib Compression.
      */
     public static class Factory implements NamedFactory<Compression> {
+        private final boolean adaptive;
+
+        public Factory() {
+            this(false);
+        }
+
+        public Factory(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
         public String getName() {
             return "zlib";
         }
 
         public Compression create() {
-            return new CompressionZlib();
+            return new CompressionZlib(adaptive);
         }
     }
 
-    static private final int BUF_SIZE = 4096;
+    static private final int BUF_SIZE = 32 * 1024;
+
+    /**
+     * Channel data is sampled over this many bytes.
+     */
+    static final int SAMPLE_SIZE = 64 * 1024;
+    /**
+     * Channel data not compressing to less than this share of its size is stored.
+     */
+    static final double MIN_RATIO = 0.9;
+    /**
+     * Number of bytes stored before compression is sampled again.
+     */
+    static final int STORED_SIZE = 4 * 1024 * 1024;
+    /**
+     * Smaller packets are always compressed, they are too short to tell.
+     */
+    static final int MIN_SAMPLED_PACKET = 512;
+    private static final int MAX_TRACKED_CHANNELS = 64;
+
+    private static class ChannelStats {
+        long sampledIn;
+        long sampledOut;
+        long storedLeft;
+    }
 
-    private final byte[] tmpbuf = new byte[BUF_SIZE];
+    private final boolean adaptive;
+    private final Map<Integer, ChannelStats> channelStats = new HashMap<Integer, ChannelStats>();
+    private byte[] tmpbuf = new byte[BUF_SIZE];
     private Deflater compresser;
     private Inflater decompresser;
+    private int level;
+    private int currentLevel;
 
     /**
      * Create a new instance of a ZLib base compression
      */
     public CompressionZlib() {
+        this(false);
+    }
+
+    public CompressionZlib(boolean adaptive) {
+        this.adaptive = adaptive;
     }
 
     public boolean isDelayed() {
@@ -66,14 +116,92 @@ public class CompressionZlib implements Compression {
     public void init(Type type, int level) {
         compresser = new Deflater(level);
         decompresser = new Inflater();
+        this.level = level;
+        this.currentLevel = level;
     }
 
     public void compress(Buffer buffer) throws IOException {
-        compresser.setInput(buffer.array(), buffer.rpos(), buffer.available());
+        int len = buffer.available();
+        // the compressed data replaces the payload in the buffer
+        if (tmpbuf.length < len) {
+            tmpbuf = new byte[Math.max(len, tmpbuf.length * 2)];
+        }
+        System.arraycopy(buffer.array(), buffer.rpos(), tmpbuf, 0, len);
         buffer.wpos(buffer.rpos());
+        ChannelStats stats = adaptive ? getChannelStats(tmpbuf, len) : null;
+        if (stats != null) {
+            setLevel(buffer, stats.storedLeft > 0 ? Deflater.NO_COMPRESSION : level);
+        } else if (currentLevel != level) {
+            setLevel(buffer, level);
+        }
+        int start = buffer.wpos();
+        compresser.setInput(tmpbuf, 0, len);
+        deflate(buffer);
+        if (stats != null) {
+            update(stats, len, buffer.wpos() - start);
+        }
+    }
+
+    /**
+     * Changes the compression level for the following data.
+     * The level is changed while there is no input, so that the data is not flushed
+     * differently, whatever the zlib version.
+     */
+    private void setLevel(Buffer buffer, int newLevel) {
+        if (newLevel != currentLevel) {
+            compresser.setLevel(newLevel);
+            compresser.setInput(tmpbuf, 0, 0);
+            deflate(buffer);
+            currentLevel = newLevel;
+        }
+    }
+
+    private void deflate(Buffer buffer) {
+        int space = BUF_SIZE;
         int len;
-        while ((len = compresser.deflate(tmpbuf, 0, tmpbuf.length, Deflater.SYNC_FLUSH)) > 0) {
-            buffer.putRawBytes(tmpbuf, 0, len);
+        do {
+            // deflate right into the buffer, growing it if needed
+            int wpos = buffer.wpos();
+            buffer.wpos(wpos + space);
+            buffer.wpos(wpos);
+            len = compresser.deflate(buffer.array(), wpos, space, Deflater.SYNC_FLUSH);
+            buffer.wpos(wpos + len);
+        } while (len == space);
+    }
+
+    private ChannelStats getChannelStats(byte[] payload, int len) {
+        byte cmd = payload[0];
+        if (len < MIN_SAMPLED_PACKET
+                || (cmd != SshConstants.SSH_MSG_CHANNEL_DATA && cmd != SshConstants.SSH_MSG_CHANNEL_EXTENDED_DATA)) {
+            return null;
+        }
+        Integer channel = ((payload[1] & 0xff) << 24) | ((payload[2] & 0xff) << 16)
+                | ((payload[3] & 0xff) << 8) | (payload[4] & 0xff);
+        ChannelStats stats = channelStats.get(channel);
+        if (stats == null) {
+            // closed channels are not known here, start over when too many have been seen
+            if (channelStats.size() >= MAX_TRACKED_CHANNELS) {
+                channelStats.clear();
+            }
+            stats = new ChannelStats();
+            channelStats.put(channel, stats);
+        }
+        return stats;
+    }
+
+    private void update(ChannelStats stats, int in, int out) {
+        if (stats.storedLeft > 0) {
+            stats.storedLeft -= in;
+            return;
+        }
+        stats.sampledIn += in;
+        stats.sampledOut += out;
+        if (stats.sampledIn >= SAMPLE_SIZE) {
+            if (stats.sampledOut > stats.sampledIn * MIN_RATIO) {
+                stats.storedLeft = STORED_SIZE;
+            }
+            stats.sampledIn = 0;
+            stats.sampledOut = 0;
         }
     }
 
@@ -81,9 +209,14 @@ public class CompressionZlib implements Compression {
         decompresser.setInput(from.array(), from.rpos(), from.available());
         int len;
         try {
-            while ((len = decompresser.inflate(tmpbuf)) > 0) {
-                to.putRawBytes(tmpbuf, 0, len);
-            }
+            do {
+                // inflate right into the buffer, growing it if needed
+                int wpos = to.wpos();
+                to.wpos(wpos + BUF_SIZE);
+                to.wpos(wpos);
+                len = decompresser.inflate(to.array(), wpos, BUF_SIZE);
+                to.wpos(wpos + len);
+            } while (len > 0);
         } catch (DataFormatException e) {
             throw new IOException("Error decompressing data", e);
         }
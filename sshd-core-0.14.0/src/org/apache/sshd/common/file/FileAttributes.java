@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.file;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * The attributes of a file as plain fields, see {@link SshFile#getFileAttributes(boolean)}.
+ * Unlike the attribute map, it is cheap to create for every entry of a large directory.
+ * Only the attributes which have been set are known, the others are not sent to the client.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class FileAttributes {
+
+    // bits of the known attributes, by ordinal
+    private int known;
+
+    private long size;
+    private int uid;
+    private String owner;
+    private int gid;
+    private String group;
+    private boolean directory;
+    private boolean regularFile;
+    private boolean symbolicLink;
+    private int permissions;
+    private long creationTime;
+    private long lastModifiedTime;
+    private long lastAccessTime;
+    private int nlink;
+
+    /**
+     * Create the attributes from an attribute map, as returned by {@link SshFile#getAttributes(boolean)}.
+     */
+    @SuppressWarnings("unchecked")
+    public static FileAttributes fromMap(Map<SshFile.Attribute, Object> map) {
+        FileAttributes attributes = new FileAttributes();
+        if (map == null) {
+            return attributes;
+        }
+        for (Map.Entry<SshFile.Attribute, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            switch (entry.getKey()) {
+                case Size:              attributes.setSize((Long) value); break;
+                case Uid:               attributes.setUid((Integer) value); break;
+                case Owner:             attributes.setOwner((String) value); break;
+                case Gid:               attributes.setGid((Integer) value); break;
+                case Group:             attributes.setGroup((String) value); break;
+                case IsDirectory:       attributes.setDirectory((Boolean) value); break;
+                case IsRegularFile:     attributes.setRegularFile((Boolean) value); break;
+                case IsSymbolicLink:    attributes.setSymbolicLink((Boolean) value); break;
+                case Permissions:       attributes.setPermissions(toPermissionBits((EnumSet<SshFile.Permission>) value)); break;
+                case CreationTime:      attributes.setCreationTime((Long) value); break;
+                case LastModifiedTime:  attributes.setLastModifiedTime((Long) value); break;
+                case LastAccessTime:    attributes.setLastAccessTime((Long) value); break;
+                case NLink:             attributes.setNLink((Integer) value); break;
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the unix permission bits, e.g. <code>0644</code>
+     */
+    public static int toPermissionBits(EnumSet<SshFile.Permission> permissions) {
+        int bits = 0;
+        for (SshFile.Permission p : permissions) {
+            switch (p) {
+                case UserRead:      bits |= 0400; break;
+                case UserWrite:     bits |= 0200; break;
+                case UserExecute:   bits |= 0100; break;
+                case GroupRead:     bits |= 0040; break;
+                case GroupWrite:    bits |= 0020; break;
+                case GroupExecute:  bits |= 0010; break;
+                case OthersRead:    bits |= 0004; break;
+                case OthersWrite:   bits |= 0002; break;
+                case OthersExecute: bits |= 0001; break;
+            }
+        }
+        return bits;
+    }
+
+    public boolean isKnown(SshFile.Attribute attribute) {
+        return (known & (1 << attribute.ordinal())) != 0;
+    }
+
+    private FileAttributes set(SshFile.Attribute attribute) {
+        known |= 1 << attribute.ordinal();
+        return this;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public FileAttributes setSize(long size) {
+        this.size = size;
+        return set(SshFile.Attribute.Size);
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    public FileAttributes setUid(int uid) {
+        this.uid = uid;
+        return set(SshFile.Attribute.Uid);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public FileAttributes setOwner(String owner) {
+        this.owner = owner;
+        return set(SshFile.Attribute.Owner);
+    }
+
+    public int getGid() {
+        return gid;
+    }
+
+    public FileAttributes setGid(int gid) {
+        this.gid = gid;
+        return set(SshFile.Attribute.Gid);
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public FileAttributes setGroup(String group) {
+        this.group = group;
+        return set(SshFile.Attribute.Group);
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public FileAttributes setDirectory(boolean directory) {
+        this.directory = directory;
+        return set(SshFile.Attribute.IsDirectory);
+    }
+
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    public FileAttributes setRegularFile(boolean regularFile) {
+        this.regularFile = regularFile;
+        return set(SshFile.Attribute.IsRegularFile);
+    }
+
+    public boolean isSymbolicLink() {
+        return symbolicLink;
+    }
+
+    public FileAttributes setSymbolicLink(boolean symbolicLink) {
+        this.symbolicLink = symbolicLink;
+        return set(SshFile.Attribute.IsSymbolicLink);
+    }
+
+    /**
+     * @return the unix permission bits, without the file type
+     */
+    public int getPermissions() {
+        return permissions;
+    }
+
+    public FileAttributes setPermissions(int permissions) {
+        this.permissions = permissions;
+        return set(SshFile.Attribute.Permissions);
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public FileAttributes setCreationTime(long creationTime) {
+        this.creationTime = creationTime;
+        return set(SshFile.Attribute.CreationTime);
+    }
+
+    public long getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    public FileAttributes setLastModifiedTime(long lastModifiedTime) {
+        this.lastModifiedTime = lastModifiedTime;
+        return set(SshFile.Attribute.LastModifiedTime);
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public FileAttributes setLastAccessTime(long lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+        return set(SshFile.Attribute.LastAccessTime);
+    }
+
+    public int getNLink() {
+        return nlink;
+    }
+
+    public FileAttributes setNLink(int nlink) {
+        this.nlink = nlink;
+        return set(SshFile.Attribute.NLink);
+    }
+}
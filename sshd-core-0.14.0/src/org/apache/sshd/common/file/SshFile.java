@@ -22,6 +22,8 @@ package org.apache.sshd.common.file;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -83,6 +85,15 @@ public interface SshFile {
 
     Map<Attribute,Object> getAttributes(boolean followLinks) throws IOException;
 
+    /**
+     * Get the attributes sent to the client, e.g. for each entry of a directory listing.
+     * @param followLinks Whether to return the attributes of the target of a symbolic link.
+     * @return The {@link FileAttributes}, created once from what the file already knows.
+     * @throws java.io.FileNotFoundException if the file does not exist
+     * @throws java.io.IOException
+     */
+    FileAttributes getFileAttributes(boolean followLinks) throws IOException;
+
     void setAttributes(Map<Attribute, Object> attributes) throws IOException;
 
     Object getAttribute(Attribute attribute, boolean followLinks) throws IOException;
@@ -198,6 +209,24 @@ public interface SshFile {
      */
     boolean move(SshFile destination);
 
+    /**
+     * Get the size of the file system the file is on.
+     * @return The size in bytes or 0 if not known. See {@link java.io.File#getTotalSpace()}.
+     */
+    long getTotalSpace();
+
+    /**
+     * Get the free space of the file system the file is on.
+     * @return The free space in bytes or 0 if not known. See {@link java.io.File#getFreeSpace()}.
+     */
+    long getFreeSpace();
+
+    /**
+     * Get the space of the file system the file is on which may be used by this user.
+     * @return The available space in bytes or 0 if not known. See {@link java.io.File#getUsableSpace()}.
+     */
+    long getUsableSpace();
+
     /**
      * List file objects. If not a directory or does not exist, null will be
      * returned. Files must be returned in alphabetical order.
@@ -206,6 +235,17 @@ public interface SshFile {
      */
     List<SshFile> listSshFiles();
 
+    /**
+     * Iterate over the file objects of a directory. Unlike {@link #listSshFiles()}
+     * the file objects, and their attributes, are created while iterating, so a
+     * huge directory is never held in memory as a whole. Files may be returned
+     * in any order. If the iterator is {@link java.io.Closeable}, it is closed once
+     * it is no longer needed.
+     * @return The {@link java.util.Iterator} of {@link SshFile}s or null if not a
+     * directory or does not exist
+     */
+    Iterator<SshFile> iterateSshFiles();
+
     /**
      * Create output stream for writing. 
      * @param offset The number of bytes at where to start writing.
@@ -226,6 +266,16 @@ public interface SshFile {
      */
     InputStream createInputStream(long offset) throws IOException;
 
+    /**
+     * Create a channel for positional reading or writing.
+     * @param write Whether the channel is used for writing rather than reading.
+     * @return A {@link java.nio.channels.FileChannel} or <code>null</code> if the
+     *      file is not random accessible, in which case {@link #createInputStream(long)}
+     *      and {@link #createOutputStream(long)} are used instead
+     * @throws java.io.IOException
+     */
+    FileChannel createChannel(boolean write) throws IOException;
+
     /**
      * Handle post-handle-close functionality.
      * @throws IOException
@@ -23,11 +23,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.sshd.common.file.FileAttributes;
 import org.apache.sshd.common.file.FileSystemView;
 import org.apache.sshd.common.file.SshFile;
 import org.slf4j.Logger;
@@ -346,6 +349,9 @@ public class NativeFileSystemView implements FileSystemView {
         public Map<Attribute, Object> getAttributes(boolean followLinks) throws IOException {
             return null;
         }
+        public FileAttributes getFileAttributes(boolean followLinks) throws IOException {
+            return new FileAttributes().setDirectory(true);
+        }
         public void setAttributes(Map<Attribute, Object> attributes) throws IOException {
             throw new UnsupportedOperationException();
         }
@@ -410,6 +416,15 @@ public class NativeFileSystemView implements FileSystemView {
         public boolean move(SshFile destination) {
             return false;
         }
+        public long getTotalSpace() {
+            return 0;
+        }
+        public long getFreeSpace() {
+            return 0;
+        }
+        public long getUsableSpace() {
+            return 0;
+        }
         public List<SshFile> listSshFiles() {
             List<SshFile> list = new ArrayList<SshFile>();
             for (String root : roots.keySet()) {
@@ -419,12 +434,18 @@ public class NativeFileSystemView implements FileSystemView {
             }
             return list;
         }
+        public Iterator<SshFile> iterateSshFiles() {
+            return listSshFiles().iterator();
+        }
         public OutputStream createOutputStream(long offset) throws IOException {
             return null;
         }
         public InputStream createInputStream(long offset) throws IOException {
             return null;
         }
+        public FileChannel createChannel(boolean write) throws IOException {
+            return null;
+        }
         public void handleClose() throws IOException {
         }
     }
@@ -19,8 +19,10 @@
 
 package org.apache.sshd.common.file.nativefs;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -29,6 +31,9 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -36,11 +41,13 @@ import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 
+import org.apache.sshd.common.file.FileAttributes;
 import org.apache.sshd.common.file.SshFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -343,6 +350,18 @@ public class NativeSshFile implements SshFile {
         return retVal;
     }
 
+    public long getTotalSpace() {
+        return file.getTotalSpace();
+    }
+
+    public long getFreeSpace() {
+        return file.getFreeSpace();
+    }
+
+    public long getUsableSpace() {
+        return file.getUsableSpace();
+    }
+
     /**
      * Create directory.
      */
@@ -396,6 +415,50 @@ public class NativeSshFile implements SshFile {
         return Collections.unmodifiableList(Arrays.asList(virtualFiles));
     }
 
+    public Iterator<SshFile> iterateSshFiles() {
+
+        // is a directory
+        if (!file.isDirectory()) {
+            return null;
+        }
+
+        final DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(file.toPath());
+        } catch (IOException e) {
+            LOG.debug("Could not list directory " + file, e);
+            return null;
+        }
+
+        // get the virtual name of the base directory
+        String virtualFileStr = getAbsolutePath();
+        if (virtualFileStr.charAt(virtualFileStr.length() - 1) != nativeFileSystemView.getSeparator()) {
+            virtualFileStr += nativeFileSystemView.getSeparator();
+        }
+        final String virtualDirStr = virtualFileStr;
+        final Iterator<Path> paths = stream.iterator();
+
+        return new CloseableIterator<SshFile>() {
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+            public SshFile next() {
+                File fileObj = paths.next().toFile();
+                String fileName = virtualDirStr + fileObj.getName();
+                return nativeFileSystemView.createNativeSshFile(fileName, fileObj, userName);
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+            public void close() throws IOException {
+                stream.close();
+            }
+        };
+    }
+
+    private interface CloseableIterator<T> extends Iterator<T>, Closeable {
+    }
+
     /**
      * Create output stream for writing.
      */
@@ -483,6 +546,23 @@ public class NativeSshFile implements SshFile {
         }
     }
 
+    public FileChannel createChannel(final boolean write) throws IOException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("createChannel(" + file.getAbsolutePath() + ")[" + write + "]");
+        }
+
+        // permission check
+        if (write && !isWritable()) {
+            throw new IOException("No write permission : " + file.getName());
+        }
+        if (!write && !isReadable()) {
+            throw new IOException("No read permission : " + file.getName());
+        }
+
+        // closing the channel closes the random access file as well
+        return new RandomAccessFile(file, write ? "rw" : "r").getChannel();
+    }
+
     public void handleClose() {
         // Noop
     }
@@ -666,6 +746,13 @@ public class NativeSshFile implements SshFile {
         return map;
     }
 
+    public FileAttributes getFileAttributes(boolean followLinks) throws IOException {
+        if (!doesExist()) {
+            throw new FileNotFoundException(getAbsolutePath());
+        }
+        return FileAttributes.fromMap(getAttributes(followLinks));
+    }
+
     public void setAttributes(Map<Attribute, Object> attributes) throws IOException {
         Set<Attribute> unsupported = new HashSet<Attribute>();
         for (Attribute attribute : attributes.keySet()) {
@@ -66,6 +66,10 @@ public interface IoSession extends Closeable {
      */
     IoWriteFuture write(Buffer buffer);
 
+    /**
+     * Returns the number of packets written but not yet taken by the socket.
+     */
+    int getPendingWrites();
 
     /**
      * Closes this session immediately or after all queued write requests
@@ -19,6 +19,7 @@
 package org.apache.sshd.common.io.mina;
 
 import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.future.IoFuture;
@@ -40,6 +41,8 @@ public class MinaSession extends CloseableUtils.AbstractInnerCloseable implement
 
     private final MinaService service;
     private final org.apache.mina.core.session.IoSession session;
+    // mina only counts scheduled writes with statistics enabled
+    private final AtomicInteger pendingWrites = new AtomicInteger();
 
     public MinaSession(MinaService service, org.apache.mina.core.session.IoSession session) {
         this.service = service;
@@ -80,6 +83,10 @@ public class MinaSession extends CloseableUtils.AbstractInnerCloseable implement
         return session.write(buffer);
     }
 
+    public int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
     @Override
     protected Closeable getInnerCloseable() {
         return new Closeable() {
@@ -140,8 +147,10 @@ public class MinaSession extends CloseableUtils.AbstractInnerCloseable implement
             }
         }
         final Future future = new Future(null);
+        pendingWrites.incrementAndGet();
         session.write(MinaSupport.asIoBuffer(buffer)).addListener(new IoFutureListener<WriteFuture>() {
             public void operationComplete(WriteFuture cf) {
+                pendingWrites.decrementAndGet();
                 if (cf.getException() != null) {
                     future.setException(cf.getException());
                 } else {
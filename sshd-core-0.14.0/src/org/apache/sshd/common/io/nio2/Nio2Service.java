@@ -76,6 +76,18 @@ public abstract class Nio2Service extends CloseableUtils.AbstractInnerCloseable
         sessions.remove(session.getId());
     }
 
+    protected int getIntProperty(String property, int defaultValue) {
+        String valStr = manager.getProperties().get(property);
+        if (valStr != null) {
+            try {
+                return Integer.parseInt(valStr);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid value for " + property + ": " + valStr);
+            }
+        }
+        return defaultValue;
+    }
+
     protected <T> void setOption(NetworkChannel socket, String property, SocketOption<T> option, T defaultValue) throws IOException {
         String valStr = manager.getProperties().get(property);
         T val = defaultValue;
@@ -23,13 +23,19 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.sshd.common.FactoryManager;
 import org.apache.sshd.common.SshException;
 import org.apache.sshd.common.future.CloseFuture;
 import org.apache.sshd.common.future.DefaultSshFuture;
@@ -45,6 +51,11 @@ import org.apache.sshd.common.util.Readable;
  */
 public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoSession {
 
+    /**
+     * Maximum number of queued packets sent with a single gathering write.
+     */
+    public static final int MAX_GATHERED_WRITES = 64;
+
     private static final AtomicLong sessionIdGenerator = new AtomicLong(100);
 
     private final long id = sessionIdGenerator.incrementAndGet();
@@ -56,7 +67,11 @@ public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoS
     private final SocketAddress remoteAddress;
 
     private final Queue<DefaultIoWriteFuture> writes = new LinkedTransferQueue<DefaultIoWriteFuture>();
+    // size of the write queue, which is not constant time for a concurrent queue
+    private final AtomicInteger pendingWrites = new AtomicInteger();
     private final AtomicReference<DefaultIoWriteFuture> currentWrite = new AtomicReference<DefaultIoWriteFuture>();
+    // reads are never concurrent and the handler consumes the data before the next one
+    private final ByteBuffer readBuffer;
 
     public Nio2Session(Nio2Service service, IoHandler handler, AsynchronousSocketChannel socket) throws IOException {
         this.service = service;
@@ -64,6 +79,8 @@ public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoS
         this.socket = socket;
         this.localAddress = socket.getLocalAddress();
         this.remoteAddress = socket.getRemoteAddress();
+        this.readBuffer = ByteBuffer.allocateDirect(
+                service.getIntProperty(FactoryManager.NIO2_READ_BUFFER_SIZE, FactoryManager.DEFAULT_NIO2_READ_BUFFER_SIZE));
         log.debug("Creating IoSession on {} from {}", localAddress, remoteAddress);
     }
 
@@ -111,10 +128,15 @@ public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoS
             return future;
         }
         writes.add(future);
+        pendingWrites.incrementAndGet();
         startWriting();
         return future;
     }
 
+    public int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
     private void exceptionCaught(Throwable exc) {
         if (!closeFuture.isClosed()) {
             if (isClosing() || !socket.isOpen()) {
@@ -141,6 +163,7 @@ public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoS
         for (;;) {
             DefaultIoWriteFuture future = writes.poll();
             if (future != null) {
+                pendingWrites.decrementAndGet();
                 future.setException(new ClosedChannelException());
             } else {
                 break;
@@ -166,7 +189,8 @@ public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoS
     }
 
     public void startReading() {
-        final ByteBuffer buffer = ByteBuffer.allocate(32 * 1024);
+        final ByteBuffer buffer = readBuffer;
+        buffer.clear();
         socket.read(buffer, null, new Nio2CompletionHandler<Integer, Object>() {
             protected void onCompleted(Integer result, Object attachment) {
                 try {
@@ -201,46 +225,78 @@ public class Nio2Session extends CloseableUtils.AbstractCloseable implements IoS
         });
     }
 
+    /**
+     * Write the queued packets, as many as possible with a single gathering write.
+     * Only one write is in progress at any time, the futures stay in the queue until
+     * their buffer has been completely written.
+     */
     private void startWriting() {
         final DefaultIoWriteFuture future = writes.peek();
         if (future != null) {
             if (currentWrite.compareAndSet(null, future)) {
+                final List<DefaultIoWriteFuture> batch = new ArrayList<DefaultIoWriteFuture>();
+                for (Iterator<DefaultIoWriteFuture> it = writes.iterator(); it.hasNext() && batch.size() < MAX_GATHERED_WRITES;) {
+                    batch.add(it.next());
+                }
+                final ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = batch.get(i).buffer;
+                }
                 try {
-                    socket.write(future.buffer, null, new Nio2CompletionHandler<Integer, Object>() {
-                        protected void onCompleted(Integer result, Object attachment) {
-                            if (future.buffer.hasRemaining()) {
+                    socket.write(buffers, 0, buffers.length, 0L, TimeUnit.MILLISECONDS, null, new Nio2CompletionHandler<Long, Object>() {
+                        private int first;
+                        protected void onCompleted(Long result, Object attachment) {
+                            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                                DefaultIoWriteFuture written = batch.get(first++);
+                                removeWrite(written);
+                                written.setWritten();
+                            }
+                            if (first < buffers.length) {
                                 try {
-                                    socket.write(future.buffer, null, this);
+                                    socket.write(buffers, first, buffers.length - first, 0L, TimeUnit.MILLISECONDS, null, this);
                                 } catch (Throwable t) {
                                     log.debug("Exception caught while writing", t);
-                                    future.setWritten();
+                                    for (int i = first; i < buffers.length; i++) {
+                                        batch.get(i).setWritten();
+                                    }
                                     finishWrite();
                                 }
                             } else {
-                                log.debug("Finished writing");
-                                future.setWritten();
+                                log.debug("Finished writing {} packets", buffers.length);
                                 finishWrite();
                             }
                         }
                         protected void onFailed(Throwable exc, Object attachment) {
-                            future.setException(exc);
+                            for (int i = first; i < buffers.length; i++) {
+                                batch.get(i).setException(exc);
+                            }
                             exceptionCaught(exc);
                             finishWrite();
                         }
                         private void finishWrite() {
-                            writes.remove(future);
+                            for (int i = first; i < buffers.length; i++) {
+                                removeWrite(batch.get(i));
+                            }
                             currentWrite.compareAndSet(future, null);
                             startWriting();
                         }
                     });
                 } catch (RuntimeException e) {
-                    future.setWritten();
+                    for (DefaultIoWriteFuture f : batch) {
+                        f.setWritten();
+                    }
                     throw e;
                 }
             }
         }
     }
 
+    private void removeWrite(DefaultIoWriteFuture future) {
+        if (writes.remove(future)) {
+            pendingWrites.decrementAndGet();
+        }
+    }
+
     static class DefaultIoWriteFuture extends DefaultSshFuture<IoWriteFuture> implements IoWriteFuture {
         private final ByteBuffer buffer;
         DefaultIoWriteFuture(Object lock, ByteBuffer buffer) {
@@ -21,6 +21,7 @@ package org.apache.sshd.common.kex;
 import java.math.BigInteger;
 
 import org.apache.sshd.common.Digest;
+import org.apache.sshd.common.util.Buffer;
 
 /**
  * Base class for the Diffie-Hellman key agreement.
@@ -36,6 +37,8 @@ public abstract class AbstractDH {
     public static AbstractDH getInstance(String algo) throws Exception {
         if (algo.startsWith("ecdh-sha2-")) {
             return new ECDH();
+        } else if (algo.startsWith("curve25519-sha256")) {
+            return new Curve25519();
         } else {
             return new DH();
         }
@@ -57,6 +60,13 @@ public abstract class AbstractDH {
 
     public abstract Digest getHash() throws Exception;
 
+    /**
+     * Writes a public value, e or f, to the buffer the exchange hash is computed of.
+     */
+    public void putPublicValue(Buffer buffer, byte[] value) {
+        buffer.putMPInt(value);
+    }
+
     // The shared secret returned by KeyAgreement.generateSecret() is
     // a byte array, which can (by chance, roughly 1 out of 256 times)
     // begin with zero byte (some JCE providers might strip this, though).
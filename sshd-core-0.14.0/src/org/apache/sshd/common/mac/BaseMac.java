@@ -33,13 +33,19 @@ public class BaseMac implements Mac {
     private final String algorithm;
     private final int defbsize;
     private final int bsize;
+    private final boolean etm;
     private final byte[] tmp;
     private javax.crypto.Mac mac;
 
     public BaseMac(String algorithm, int bsize, int defbsize) {
+        this(algorithm, bsize, defbsize, false);
+    }
+
+    public BaseMac(String algorithm, int bsize, int defbsize, boolean etm) {
         this.algorithm = algorithm;
         this.bsize = bsize;
         this.defbsize = defbsize;
+        this.etm = etm;
         this.tmp = new byte[defbsize];
     }
 
@@ -47,6 +53,10 @@ public class BaseMac implements Mac {
         return bsize;
     }
 
+    public boolean isEncryptThenMac() {
+        return etm;
+    }
+
     public void init(byte[] key) throws Exception {
         if (key.length > defbsize) {
             byte[] tmp = new byte[defbsize];
@@ -20,12 +20,15 @@ package org.apache.sshd.common.session;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -52,6 +55,7 @@ import org.apache.sshd.common.future.SshFutureListener;
 import org.apache.sshd.common.io.IoSession;
 import org.apache.sshd.common.io.IoWriteFuture;
 import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.common.util.BufferPool;
 import org.apache.sshd.common.util.BufferUtils;
 import org.apache.sshd.common.util.CloseableUtils;
 import org.apache.sshd.common.util.EventListenerUtils;
@@ -102,7 +106,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     /** The pseudo random generator */
     protected final Random random;
     /** Boolean indicating if this session has been authenticated or not */
-    protected boolean authed;
+    protected volatile boolean authed;
     /** The name of the authenticated user */
     protected String username;
 
@@ -134,6 +138,12 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     protected Mac outMac;
     protected Mac inMac;
     protected byte[] inMacResult;
+    // authentication tag size of aead ciphers, which are used without mac
+    protected int outAuthSize;
+    protected int inAuthSize;
+    // encrypt-then-mac: the mac covers the encrypted packet, the length is not encrypted
+    protected boolean outEtm;
+    protected boolean inEtm;
     protected Compression outCompression;
     protected Compression inCompression;
     protected long seqi;
@@ -142,11 +152,21 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     protected Buffer uncompressBuffer;
     protected int decoderState;
     protected int decoderLength;
+    protected final int maxPacketLength;
     protected final Object encodeLock = new Object();
     protected final Object decodeLock = new Object();
     protected final Object requestLock = new Object();
     protected final AtomicReference<Buffer> requestResult = new AtomicReference<Buffer>();
     protected final Map<AttributeKey<?>, Object> attributes = new ConcurrentHashMap<AttributeKey<?>, Object>();
+    // decoded packets waiting for the message handler executor, in order of arrival
+    protected final ExecutorService messageHandlerExecutor;
+    protected final ArrayDeque<Buffer> pendingMessages = new ArrayDeque<Buffer>();
+    protected boolean handlingMessages;
+    protected final Runnable messageHandler = new Runnable() {
+        public void run() {
+            handlePendingMessages();
+        }
+    };
 
     // Session timeout
     protected long authTimeoutTimestamp = 0L;
@@ -166,6 +186,13 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     protected volatile long lastKeyTime;
     protected final Queue<PendingWriteFuture> pendingPackets = new LinkedList<PendingWriteFuture>();
 
+    //
+    // Metrics
+    //
+    protected final TransportMetrics metrics;
+    protected final long createTime = System.nanoTime();
+    protected volatile long kexStartTime = createTime;
+
     protected Service currentService;
 
     /**
@@ -184,6 +211,11 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         authTimeoutTimestamp = System.currentTimeMillis() + authTimeoutMs;
         idleTimeoutMs = getLongProperty(FactoryManager.IDLE_TIMEOUT, idleTimeoutMs);
         disconnectTimeoutMs = getLongProperty(FactoryManager.DISCONNECT_TIMEOUT, disconnectTimeoutMs);
+        messageHandlerExecutor = factoryManager.getMessageHandlerExecutor();
+        metrics = new TransportMetrics(factoryManager.getMetrics());
+        metrics.sessionOpened();
+        // room for the channel data of the largest packet we accept plus headers and padding
+        maxPacketLength = Math.max(256 * 1024, getIntProperty(FactoryManager.MAX_PACKET_SIZE, 0) + 1024);
     }
 
     /**
@@ -262,6 +294,20 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         return factoryManager;
     }
 
+    public TransportMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the number of packets waiting to be written, either for the end of
+     * a key exchange or for the socket.
+     */
+    public int getPendingWrites() {
+        synchronized (pendingPackets) {
+            return pendingPackets.size() + ioSession.getPendingWrites();
+        }
+    }
+
     public String getNegotiatedKexParameter(int paramType) {
     	if ((paramType < 0) || (negotiated == null) || (paramType >= negotiated.length)) {
     		return null;
@@ -280,6 +326,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
 
     public void setAuthenticated() throws IOException {
         this.authed = true;
+        metrics.authenticated(System.nanoTime() - createTime);
         sendEvent(SessionListener.Event.Authenticated);
     }
 
@@ -327,6 +374,64 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         }
     }
 
+    /**
+     * Tells whether a decoded packet has to be handled before the next one is decoded.
+     * This is the case for all packets if there is no message handler executor.
+     * Key exchange messages change how the following packets are decoded, and so
+     * does authentication when compression is delayed, so both are always handled
+     * inline. As the peer may not send other messages during a key exchange, these
+     * overtaking queued messages does not change their meaning.
+     */
+    protected boolean isHandledInline(Buffer buffer) {
+        if (messageHandlerExecutor == null || !authed) {
+            return true;
+        }
+        byte cmd = buffer.array()[buffer.rpos()];
+        return cmd == SshConstants.SSH_MSG_KEXINIT || cmd == SshConstants.SSH_MSG_NEWKEYS
+                || (cmd >= SshConstants.SSH_MSG_KEX_FIRST && cmd <= SshConstants.SSH_MSG_KEX_LAST);
+    }
+
+    /**
+     * Hands a copy of a decoded packet over to the message handler executor.
+     * Packets of a session are handled one at a time in the order they were received.
+     */
+    protected void queueMessage(Buffer buffer) {
+        // the decoder buffer is reused for the next packet
+        Buffer copy = BufferPool.getBuffer(buffer.available());
+        copy.putRawBytes(buffer.array(), buffer.rpos(), buffer.available());
+        boolean submit;
+        synchronized (pendingMessages) {
+            pendingMessages.addLast(copy);
+            submit = !handlingMessages;
+            handlingMessages = true;
+        }
+        if (submit) {
+            messageHandlerExecutor.execute(messageHandler);
+        }
+    }
+
+    protected void handlePendingMessages() {
+        while (true) {
+            Buffer buffer;
+            synchronized (pendingMessages) {
+                buffer = pendingMessages.pollFirst();
+                if (buffer == null) {
+                    handlingMessages = false;
+                    return;
+                }
+            }
+            try {
+                if (!isClosing()) {
+                    handleMessage(buffer);
+                }
+            } catch (Throwable t) {
+                exceptionCaught(t);
+            } finally {
+                BufferPool.release(buffer);
+            }
+        }
+    }
+
     protected void doHandleMessage(Buffer buffer) throws Exception {
         byte cmd = buffer.getByte();
         switch (cmd) {
@@ -379,6 +484,9 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                 break;
             case SSH_MSG_KEXINIT:
                 log.debug("Received SSH_MSG_KEXINIT");
+                if (kexStartTime == 0) {
+                    kexStartTime = System.nanoTime();
+                }
                 receiveKexInit(buffer);
                 if (kexState.compareAndSet(KEX_STATE_DONE, KEX_STATE_RUN)) {
                     sendKexInit();
@@ -396,6 +504,8 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                     throw new IllegalStateException("Received command " + cmd + " before key exchange is finished");
                 }
                 receiveNewKeys();
+                metrics.keyExchanged(System.nanoTime() - kexStartTime);
+                kexStartTime = 0;
                 if (reexchangeFuture != null) {
                     reexchangeFuture.setValue(true);
                 }
@@ -479,6 +589,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     @Override
     protected void doCloseImmediately() {
         super.doCloseImmediately();
+        metrics.sessionClosed();
         // Fire 'close' event
         sessionListenerProxy.sessionClosed(this);
     }
@@ -554,7 +665,9 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         // packets are sent in the correct order
         synchronized (encodeLock) {
             encode(buffer);
-            return ioSession.write(buffer);
+            IoWriteFuture future = ioSession.write(buffer);
+            metrics.packetQueued(ioSession.getPendingWrites());
+            return future;
         }
     }
 
@@ -588,6 +701,8 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     /**
      * Create a new buffer for the specified SSH packet and reserve the needed space
      * (5 bytes) for the packet header.
+     * The buffer is backed by an array from the {@link BufferPool}, its owner may
+     * release it once the packet has been written.
      *
      * @param cmd the SSH command
      * @param len estimated number of bytes the buffer will hold, 0 if unknown.
@@ -596,7 +711,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     public Buffer createBuffer(byte cmd, int len) {
         Buffer buffer;
         if (len <= 0) {
-            buffer = new Buffer();
+            buffer = BufferPool.getBuffer(Buffer.DEFAULT_SIZE);
         } else {
             // Since the caller claims to know how many bytes they will need
             // increase their request to account for our headers/footers if
@@ -612,7 +727,8 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             if (outMac != null) {
                 len += outMac.getBlockSize();
             }
-            buffer = new Buffer(new byte[Math.max(len, Buffer.DEFAULT_SIZE)], false);
+            len += outAuthSize;
+            buffer = BufferPool.getBuffer(len);
         }
         buffer.rpos(5);
         buffer.wpos(5);
@@ -628,12 +744,15 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
      * @throws IOException if an exception occurs during the encoding process
      */
     private void encode(Buffer buffer) throws IOException {
+        long start = System.nanoTime();
         try {
             // Check that the packet has some free space for the header
             if (buffer.rpos() < 5) {
                 log.warn("Performance cost: when sending a packet, ensure that "
                            + "5 bytes are available in front of the buffer");
-                Buffer nb = new Buffer();
+                // room for the header, the payload, padding and mac
+                Buffer nb = BufferPool.getBuffer(5 + buffer.available() + 128);
+                nb.rpos(5);
                 nb.wpos(5);
                 nb.putBuffer(buffer);
                 buffer = nb;
@@ -641,6 +760,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             // Grab the length of the packet (excluding the 5 header bytes)
             int len = buffer.available();
             int off = buffer.rpos() - 5;
+            int payloadLen = len;
             // Debug log the packet
             if (log.isTraceEnabled()) {
                 log.trace("Sending packet #{}: {}", seqo, buffer.printHex());
@@ -650,15 +770,16 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                 outCompression.compress(buffer);
                 len = buffer.available();
             }
-            // Compute padding length
+            // Compute padding length, aead ciphers and etm macs do not encrypt the packet
+            // length with the payload, so it does not count for the alignment
             int bsize = outCipherSize;
             int oldLen = len;
-            len += 5;
+            len += outAuthSize > 0 || outEtm ? 1 : 5;
             int pad = (-len) & (bsize - 1);
             if (pad < bsize) {
                 pad += bsize;
             }
-            len = len + pad - 4;
+            len = oldLen + 1 + pad;
             // Write 5 header bytes
             buffer.wpos(off);
             buffer.putInt(len);
@@ -666,17 +787,21 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             // Fill padding
             buffer.wpos(off + oldLen + 5 + pad);
             random.fill(buffer.array(), buffer.wpos() - pad, pad);
-            // Compute mac
-            if (outMac != null) {
-                int macSize = outMac.getBlockSize();
-                int l = buffer.wpos();
-                buffer.wpos(l + macSize);
-                outMac.updateUInt(seqo);
-                outMac.update(buffer.array(), off, l);
-                outMac.doFinal(buffer.array(), l);
+            // Compute mac of the plain packet
+            if (outMac != null && !outEtm) {
+                appendMac(buffer, off);
             }
             // Encrypt packet, excluding mac
-            if (outCipher != null) {
+            if (outAuthSize > 0) {
+                int l = buffer.wpos();
+                buffer.wpos(l + outAuthSize);
+                outCipher.setSequenceNumber(seqo);
+                outCipher.updateAAD(buffer.array(), off, 4);
+                outCipher.update(buffer.array(), off + 4, len);
+            } else if (outEtm) {
+                outCipher.update(buffer.array(), off + 4, len);
+                appendMac(buffer, off);
+            } else if (outCipher != null) {
                 outCipher.update(buffer.array(), off, len + 4);
             }
             // Increment packet id
@@ -684,6 +809,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             // Update stats
             outPackets ++;
             outBytes += len;
+            metrics.packetEncoded(payloadLen, System.nanoTime() - start);
             // Make buffer ready to be read
             buffer.rpos(off);
         } catch (SshException e) {
@@ -693,6 +819,35 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         }
     }
 
+    /**
+     * Append the mac of the packet starting at the given offset and ending at the
+     * write position of the buffer.
+     */
+    private void appendMac(Buffer buffer, int off) throws Exception {
+        int macSize = outMac.getBlockSize();
+        int l = buffer.wpos();
+        buffer.wpos(l + macSize);
+        outMac.updateUInt(seqo);
+        outMac.update(buffer.array(), off, l - off);
+        outMac.doFinal(buffer.array(), l);
+    }
+
+    /**
+     * Check the mac of the packet at the start of the decoder buffer.
+     */
+    private void checkMac(byte[] data) throws Exception {
+        // Update mac with packet id
+        inMac.updateUInt(seqi);
+        // Update mac with packet data
+        inMac.update(data, 0, decoderLength + 4);
+        // Compute mac result
+        inMac.doFinal(inMacResult, 0);
+        // Check the computed result with the received mac (just after the packet data)
+        if (!BufferUtils.equals(inMacResult, 0, data, decoderLength + 4, inMacResult.length)) {
+            throw new SshException(SshConstants.SSH2_DISCONNECT_MAC_ERROR, "MAC Error");
+        }
+    }
+
     /**
      * Decode the incoming buffer and handle packets as needed.
      *
@@ -707,14 +862,17 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                 assert decoderBuffer.rpos() == 0;
                 // If we have received enough bytes, start processing those
                 if (decoderBuffer.available() > inCipherSize) {
-                    // Decrypt the first bytes
-                    if (inCipher != null) {
+                    // Decrypt the first bytes, aead ciphers only process the length
+                    if (inAuthSize > 0) {
+                        inCipher.setSequenceNumber(seqi);
+                        inCipher.updateAAD(decoderBuffer.array(), 0, 4);
+                    } else if (inCipher != null && !inEtm) {
                         inCipher.update(decoderBuffer.array(), 0, inCipherSize);
                     }
                     // Read packet length
                     decoderLength = decoderBuffer.getInt();
                     // Check packet length validity
-                    if (decoderLength < 5 || decoderLength > (256 * 1024)) {
+                    if (decoderLength < 5 || decoderLength > maxPacketLength) {
                         log.info("Error decoding packet (invalid length) {}", decoderBuffer.printHex());
                         throw new SshException(SshConstants.SSH2_DISCONNECT_PROTOCOL_ERROR,
                                                "Invalid packet length: " + decoderLength);
@@ -729,26 +887,31 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             } else if (decoderState == 1) {
                 // The read position should always be 4 at this point
                 assert decoderBuffer.rpos() == 4;
-                int macSize = inMac != null ? inMac.getBlockSize() : 0;
+                int macSize = inMac != null ? inMac.getBlockSize() : inAuthSize;
                 // Check if the packet has been fully received
                 if (decoderBuffer.available() >= decoderLength + macSize) {
+                    long start = System.nanoTime();
                     byte[] data = decoderBuffer.array();
+                    // With etm the mac is checked before anything is decrypted
+                    if (inEtm) {
+                        checkMac(data);
+                    }
                     // Decrypt the remaining of the packet
-                    if (inCipher != null){
+                    if (inAuthSize > 0) {
+                        // Decrypt and check the authentication tag at once
+                        try {
+                            inCipher.update(data, 4, decoderLength);
+                        } catch (GeneralSecurityException e) {
+                            throw new SshException(SshConstants.SSH2_DISCONNECT_MAC_ERROR, "MAC Error", e);
+                        }
+                    } else if (inEtm) {
+                        inCipher.update(data, 4, decoderLength);
+                    } else if (inCipher != null){
                         inCipher.update(data, inCipherSize, decoderLength + 4 - inCipherSize);
                     }
                     // Check the mac of the packet
-                    if (inMac != null) {
-                        // Update mac with packet id
-                        inMac.updateUInt(seqi);
-                        // Update mac with packet data
-                        inMac.update(data, 0, decoderLength + 4);
-                        // Compute mac result
-                        inMac.doFinal(inMacResult, 0);
-                        // Check the computed result with the received mac (just after the packet data)
-                        if (!BufferUtils.equals(inMacResult, 0, data, decoderLength + 4, macSize)) {
-                            throw new SshException(SshConstants.SSH2_DISCONNECT_MAC_ERROR, "MAC Error");
-                        }
+                    if (inMac != null && !inEtm) {
+                        checkMac(data);
                     }
                     // Increment incoming packet sequence number
                     seqi = (seqi + 1) & 0xffffffffL;
@@ -776,8 +939,13 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
                     // Update stats
                     inPackets ++;
                     inBytes += buf.available();
+                    metrics.packetDecoded(buf.available(), System.nanoTime() - start);
                     // Process decoded packet
-                    handleMessage(buf);
+                    if (isHandledInline(buf)) {
+                        handleMessage(buf);
+                    } else {
+                        queueMessage(buf);
+                    }
                     // Set ready to handle next packet
                     decoderBuffer.rpos(decoderLength + 4 + macSize);
                     decoderBuffer.wpos(wpos);
@@ -1014,17 +1182,26 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
         Es2c = resizeKey(Es2c, s2ccipher.getBlockSize(), hash, K, H);
         s2ccipher.init(isServer ? Cipher.Mode.Encrypt : Cipher.Mode.Decrypt, Es2c, IVs2c);
 
-        s2cmac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_STOC]);
-        MACs2c = resizeKey(MACs2c, s2cmac.getBlockSize(), hash, K, H);
-        s2cmac.init(MACs2c);
+        // the negotiated mac is ignored for aead ciphers, they authenticate themselves
+        if (s2ccipher.getAuthenticationTagSize() == 0) {
+            s2cmac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_STOC]);
+            MACs2c = resizeKey(MACs2c, s2cmac.getBlockSize(), hash, K, H);
+            s2cmac.init(MACs2c);
+        } else {
+            s2cmac = null;
+        }
 
         c2scipher = NamedFactory.Utils.create(factoryManager.getCipherFactories(), negotiated[SshConstants.PROPOSAL_ENC_ALGS_CTOS]);
         Ec2s = resizeKey(Ec2s, c2scipher.getBlockSize(), hash, K, H);
         c2scipher.init(isServer ? Cipher.Mode.Decrypt : Cipher.Mode.Encrypt, Ec2s, IVc2s);
 
-        c2smac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_CTOS]);
-        MACc2s = resizeKey(MACc2s, c2smac.getBlockSize(), hash, K, H);
-        c2smac.init(MACc2s);
+        if (c2scipher.getAuthenticationTagSize() == 0) {
+            c2smac = NamedFactory.Utils.create(factoryManager.getMacFactories(), negotiated[SshConstants.PROPOSAL_MAC_ALGS_CTOS]);
+            MACc2s = resizeKey(MACc2s, c2smac.getBlockSize(), hash, K, H);
+            c2smac.init(MACc2s);
+        } else {
+            c2smac = null;
+        }
 
         s2ccomp = NamedFactory.Utils.create(factoryManager.getCompressionFactories(), negotiated[SshConstants.PROPOSAL_COMP_ALGS_STOC]);
         c2scomp = NamedFactory.Utils.create(factoryManager.getCompressionFactories(), negotiated[SshConstants.PROPOSAL_COMP_ALGS_CTOS]);
@@ -1044,12 +1221,16 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
             inMac = s2cmac;
             inCompression = s2ccomp;
         }
-        outCipherSize = outCipher.getIVSize();
+        outCipherSize = outCipher.getCipherBlockSize();
+        outAuthSize = outCipher.getAuthenticationTagSize();
+        outEtm = outMac != null && outMac.isEncryptThenMac();
         if (outCompression != null) {
             outCompression.init(Compression.Type.Deflater, -1);
         }
-        inCipherSize = inCipher.getIVSize();
-        inMacResult = new byte[inMac.getBlockSize()];
+        inCipherSize = inCipher.getCipherBlockSize();
+        inAuthSize = inCipher.getAuthenticationTagSize();
+        inEtm = inMac != null && inMac.isEncryptThenMac();
+        inMacResult = inMac != null ? new byte[inMac.getBlockSize()] : null;
         if (inCompression != null) {
             inCompression.init(Compression.Type.Inflater, -1);
         }
@@ -1286,6 +1467,7 @@ public abstract class AbstractSession extends CloseableUtils.AbstractInnerClosea
     public SshFuture reExchangeKeys() throws IOException {
         if (kexState.compareAndSet(KEX_STATE_DONE, KEX_STATE_INIT)) {
             log.info("Initiating key re-exchange");
+            kexStartTime = System.nanoTime();
             sendKexInit();
             reexchangeFuture = new DefaultSshFuture(null);
         }
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.session;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.common.util.Histogram;
+
+/**
+ * Counters and timings of the SSH transport, kept for each session and for all
+ * the sessions of a factory manager.
+ *
+ * Together they tell where a slow transfer spends its time: encoding and decoding
+ * packets (crypto and compression), waiting for the peer to open the channel
+ * window, or waiting for the socket to take the written packets.
+ * Values recorded on a session are recorded on its parent as well.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public class TransportMetrics {
+
+    private final TransportMetrics parent;
+
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong activeSessions = new AtomicLong();
+    private final AtomicLong keyExchanges = new AtomicLong();
+    private final AtomicLong packetsIn = new AtomicLong();
+    private final AtomicLong packetsOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final Histogram handshakeTime = new Histogram("handshake", "us");
+    private final Histogram kexTime = new Histogram("kex", "us");
+    private final Histogram decodeTime = new Histogram("decode", "us");
+    private final Histogram encodeTime = new Histogram("encode", "us");
+    private final Histogram windowStallTime = new Histogram("window stall", "us");
+    private final Histogram writeQueueDepth = new Histogram("write queue", "");
+
+    public TransportMetrics() {
+        this(null);
+    }
+
+    public TransportMetrics(TransportMetrics parent) {
+        this.parent = parent;
+    }
+
+    public TransportMetrics getParent() {
+        return parent;
+    }
+
+    public void sessionOpened() {
+        sessions.incrementAndGet();
+        activeSessions.incrementAndGet();
+        if (parent != null) {
+            parent.sessionOpened();
+        }
+    }
+
+    public void sessionClosed() {
+        activeSessions.decrementAndGet();
+        if (parent != null) {
+            parent.sessionClosed();
+        }
+    }
+
+    /**
+     * @param nanos time from the start of the connection until the user was authenticated
+     */
+    public void authenticated(long nanos) {
+        handshakeTime.record(nanos / 1000);
+        if (parent != null) {
+            parent.authenticated(nanos);
+        }
+    }
+
+    /**
+     * @param nanos time from the start of the key exchange until the new keys were taken into use
+     */
+    public void keyExchanged(long nanos) {
+        keyExchanges.incrementAndGet();
+        kexTime.record(nanos / 1000);
+        if (parent != null) {
+            parent.keyExchanged(nanos);
+        }
+    }
+
+    /**
+     * @param length length of the payload
+     * @param nanos time spent checking, decrypting and decompressing the packet
+     */
+    public void packetDecoded(int length, long nanos) {
+        packetsIn.incrementAndGet();
+        bytesIn.addAndGet(length);
+        decodeTime.record(nanos / 1000);
+        if (parent != null) {
+            parent.packetDecoded(length, nanos);
+        }
+    }
+
+    /**
+     * @param length length of the payload
+     * @param nanos time spent compressing, encrypting and signing the packet
+     */
+    public void packetEncoded(int length, long nanos) {
+        packetsOut.incrementAndGet();
+        bytesOut.addAndGet(length);
+        encodeTime.record(nanos / 1000);
+        if (parent != null) {
+            parent.packetEncoded(length, nanos);
+        }
+    }
+
+    /**
+     * @param nanos time a channel waited for the remote window to open
+     */
+    public void windowStalled(long nanos) {
+        windowStallTime.record(nanos / 1000);
+        if (parent != null) {
+            parent.windowStalled(nanos);
+        }
+    }
+
+    /**
+     * @param depth number of packets waiting to be written, including the new one
+     */
+    public void packetQueued(int depth) {
+        writeQueueDepth.record(depth);
+        if (parent != null) {
+            parent.packetQueued(depth);
+        }
+    }
+
+    public long getSessions() {
+        return sessions.get();
+    }
+
+    public long getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    public long getKeyExchanges() {
+        return keyExchanges.get();
+    }
+
+    public long getPacketsIn() {
+        return packetsIn.get();
+    }
+
+    public long getPacketsOut() {
+        return packetsOut.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public Histogram getHandshakeTime() {
+        return handshakeTime;
+    }
+
+    public Histogram getKexTime() {
+        return kexTime;
+    }
+
+    public Histogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    public Histogram getEncodeTime() {
+        return encodeTime;
+    }
+
+    public Histogram getWindowStallTime() {
+        return windowStallTime;
+    }
+
+    public Histogram getWriteQueueDepth() {
+        return writeQueueDepth;
+    }
+
+    /**
+     * Returns the metrics as several lines of text, e.g. to be logged.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (parent == null) {
+            sb.append("sessions: total=").append(getSessions())
+                    .append(" active=").append(getActiveSessions()).append('\n');
+        }
+        sb.append("packets: in=").append(getPacketsIn())
+                .append(" out=").append(getPacketsOut())
+                .append(", bytes: in=").append(getBytesIn())
+                .append(" out=").append(getBytesOut())
+                .append(", key exchanges: ").append(getKeyExchanges()).append('\n');
+        sb.append(handshakeTime).append('\n');
+        sb.append(kexTime).append('\n');
+        sb.append(decodeTime).append('\n');
+        sb.append(encodeTime).append('\n');
+        sb.append(windowStallTime).append('\n');
+        sb.append(writeQueueDepth);
+        return sb.toString();
+    }
+}
@@ -534,7 +534,8 @@ public final class Buffer implements Readable {
     private void ensureCapacity(int capacity) {
         if (data.length - wpos < capacity) {
             int cw = wpos + capacity;
-            byte[] tmp = new byte[getNextPowerOf2(cw)];
+            // the old array may still be referenced by its owner, so it is not released
+            byte[] tmp = BufferPool.getArray(cw);
             System.arraycopy(data, 0, tmp, 0, data.length);
             data = tmp;
         }
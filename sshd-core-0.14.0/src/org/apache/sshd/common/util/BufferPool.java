@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sshd.common.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of byte arrays backing {@link Buffer}s, organized in power of 2 size classes
+ * from {@link Buffer#DEFAULT_SIZE} up to {@link #MAX_POOLED_SIZE} bytes.
+ *
+ * Only code that owns a buffer may release it, i.e. code that knows the array is no
+ * longer referenced anywhere, typically once the packet has been written.
+ * Releasing is optional, arrays which are not released are simply garbage collected.
+ *
+ * @author <a href="mailto:dev@mina.apache.org">Apache MINA SSHD Project</a>
+ */
+public final class BufferPool {
+
+    /**
+     * Arrays larger than this are neither pooled nor taken from the pool.
+     */
+    public static final int MAX_POOLED_SIZE = 256 * 1024;
+
+    /**
+     * Number of bytes kept per size class, at least two arrays are kept per class.
+     */
+    public static final int MAX_POOLED_BYTES_PER_CLASS = 2 * 1024 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(Buffer.DEFAULT_SIZE);
+    private static final int MAX_SHIFT = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE);
+
+    private static final ArrayDeque<byte[]>[] POOLS = createPools();
+
+    private static ArrayDeque<byte[]>[] createPools() {
+        @SuppressWarnings("unchecked")
+        ArrayDeque<byte[]>[] pools = (ArrayDeque<byte[]>[]) new ArrayDeque<?>[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayDeque<byte[]>();
+        }
+        return pools;
+    }
+
+    private BufferPool() {
+    }
+
+    /**
+     * Get an array of at least the given size.
+     * The content of the array is undefined.
+     */
+    public static byte[] getArray(int size) {
+        int shift = getShift(size);
+        if (shift > MAX_SHIFT) {
+            return new byte[size];
+        }
+        ArrayDeque<byte[]> pool = POOLS[shift - MIN_SHIFT];
+        byte[] data;
+        synchronized (pool) {
+            data = pool.pollLast();
+        }
+        return data != null ? data : new byte[1 << shift];
+    }
+
+    /**
+     * Get an empty buffer, ready for writing, able to hold at least the given number of bytes
+     * without growing.
+     */
+    public static Buffer getBuffer(int size) {
+        return new Buffer(getArray(size), false);
+    }
+
+    /**
+     * Give an array back to the pool.
+     * The caller must not use the array afterwards.
+     */
+    public static void release(byte[] data) {
+        if (data == null || data.length < Buffer.DEFAULT_SIZE || data.length > MAX_POOLED_SIZE
+                || Integer.bitCount(data.length) != 1) {
+            return;
+        }
+        int shift = Integer.numberOfTrailingZeros(data.length);
+        ArrayDeque<byte[]> pool = POOLS[shift - MIN_SHIFT];
+        int max = Math.max(2, MAX_POOLED_BYTES_PER_CLASS >> shift);
+        synchronized (pool) {
+            if (pool.size() < max) {
+                pool.addLast(data);
+            }
+        }
+    }
+
+    /**
+     * Give the array of a buffer back to the pool.
+     * The caller must not use the buffer afterwards.
+     */
+    public static void release(Buffer buffer) {
+        if (buffer != null) {
+            release(buffer.array());
+        }
+    }
+
+    private static int getShift(int size) {
+        if (size <= Buffer.DEFAULT_SIZE) {
+            return MIN_SHIFT;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+}
@@ -18,33 +18,44 @@
  */
 package org.apache.sshd.server.sftp;
 
+import java.io.Closeable;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Date;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
 import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.file.FileAttributes;
 import org.apache.sshd.common.file.FileSystemAware;
 import org.apache.sshd.common.file.FileSystemView;
 import org.apache.sshd.common.file.SshFile;
 import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.common.util.BufferPool;
 import org.apache.sshd.common.util.IoUtils;
+import org.apache.sshd.common.util.SecurityUtils;
 import org.apache.sshd.common.util.SelectorUtils;
 import org.apache.sshd.common.util.ThreadUtils;
 import org.apache.sshd.server.Command;
@@ -123,11 +134,39 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
      */
     public static final String MAX_OPEN_HANDLES_PER_SESSION = "max-open-handles-per-session";
 
+    /**
+     * Properties key for the number of threads servicing handle based requests
+     * (read, write, fstat, ...) of a session. Requests on the same handle are
+     * always processed in order. A value of 0 processes every request on the
+     * thread reading them.
+     */
+    public static final String WORKER_THREADS_PER_SESSION = "sftp-worker-threads-per-session";
+    public static final int DEFAULT_WORKER_THREADS_PER_SESSION = 4;
+
+    /**
+     * Properties key for the maximum number of requests that have been read
+     * but not yet processed. The client is not read from when this is reached.
+     */
+    public static final String MAX_PENDING_REQUESTS_PER_SESSION = "sftp-max-pending-requests-per-session";
+    public static final int DEFAULT_MAX_PENDING_REQUESTS_PER_SESSION = 64;
+
     public static final int LOWER_SFTP_IMPL = 3; // Working implementation from v3
-    public static final int HIGHER_SFTP_IMPL = 3; //  .. up to
-    public static final String ALL_SFTP_IMPL = "3";
+    public static final int HIGHER_SFTP_IMPL = 6; //  .. up to
+    public static final String ALL_SFTP_IMPL = "3,4,5,6";
     public static final int  MAX_PACKET_LENGTH = 1024 * 16;
 
+    /**
+     * Largest SFTP packet announced to the client, the same as OpenSSH uses.
+     */
+    public static final int MAX_SFTP_PACKET_LENGTH = 256 * 1024;
+
+    /**
+     * Largest data length of a read or write. The rest of the packet leaves room for
+     * the headers, so a read reply still fits into a pooled buffer.
+     * Replies are split into as many channel packets as needed.
+     */
+    public static final int MAX_READ_WRITE_LENGTH = MAX_SFTP_PACKET_LENGTH - 1024;
+
     public static final int SSH_FXP_INIT =             1;
     public static final int SSH_FXP_VERSION =          2;
     public static final int SSH_FXP_OPEN =             3;
@@ -148,6 +187,7 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     public static final int SSH_FXP_RENAME =          18;
     public static final int SSH_FXP_READLINK =        19;
     public static final int SSH_FXP_SYMLINK =         20;
+    public static final int SSH_FXP_LINK =            21; // v6
     public static final int SSH_FXP_STATUS =         101;
     public static final int SSH_FXP_HANDLE =         102;
     public static final int SSH_FXP_DATA =           103;
@@ -156,6 +196,25 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     public static final int SSH_FXP_EXTENDED =       200;
     public static final int SSH_FXP_EXTENDED_REPLY = 201;
 
+    // extensions, see draft-ietf-secsh-filexfer-extensions
+    public static final String EXT_COPY_DATA = "copy-data";
+    public static final String EXT_CHECK_FILE = "check-file";
+    public static final String EXT_CHECK_FILE_NAME = "check-file-name";
+    public static final String EXT_CHECK_FILE_HANDLE = "check-file-handle";
+    public static final String EXT_LIMITS = "limits@openssh.com";
+    public static final String EXT_FSYNC = "fsync@openssh.com";
+    public static final String EXT_STATVFS = "statvfs@openssh.com";
+    public static final String EXT_POSIX_RENAME = "posix-rename@openssh.com";
+    public static final String CHECK_FILE_ALGORITHMS = "md5,sha1,sha224,sha256,sha384,sha512";
+    public static final int MIN_CHECK_FILE_BLOCK_SIZE = 256;
+    public static final int MAX_CHECK_FILE_REPLY_LENGTH = 256 * 1024;
+
+    // unit of the sizes in statvfs@openssh.com replies
+    private static final int STATVFS_BLOCK_SIZE = 4096;
+
+    // chunk size when copying or hashing file content on the server
+    private static final int COPY_BUFFER_SIZE = BufferPool.MAX_POOLED_SIZE;
+
     public static final int SSH_FX_OK =                0;
     public static final int SSH_FX_EOF =               1;
     public static final int SSH_FX_NO_SUCH_FILE =      2;
@@ -170,8 +229,37 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     public static final int SSH_FILEXFER_ATTR_UIDGID =      0x00000002;
     public static final int SSH_FILEXFER_ATTR_PERMISSIONS = 0x00000004;
     public static final int SSH_FILEXFER_ATTR_ACMODTIME =   0x00000008; //v3 naming convention
+    public static final int SSH_FILEXFER_ATTR_ACCESSTIME =  0x00000008; // v4
+    public static final int SSH_FILEXFER_ATTR_CREATETIME =  0x00000010; // v4
+    public static final int SSH_FILEXFER_ATTR_MODIFYTIME =  0x00000020; // v4
+    public static final int SSH_FILEXFER_ATTR_ACL =         0x00000040; // v4
+    public static final int SSH_FILEXFER_ATTR_OWNERGROUP =  0x00000080; // v4
+    public static final int SSH_FILEXFER_ATTR_SUBSECOND_TIMES = 0x00000100; // v4
+    public static final int SSH_FILEXFER_ATTR_BITS =        0x00000200; // v5
+    public static final int SSH_FILEXFER_ATTR_ALLOCATION_SIZE = 0x00000400; // v6
+    public static final int SSH_FILEXFER_ATTR_TEXT_HINT =   0x00000800; // v6
+    public static final int SSH_FILEXFER_ATTR_MIME_TYPE =   0x00001000; // v6
+    public static final int SSH_FILEXFER_ATTR_LINK_COUNT =  0x00002000; // v6
+    public static final int SSH_FILEXFER_ATTR_UNTRANSLATED_NAME = 0x00004000; // v6
+    public static final int SSH_FILEXFER_ATTR_CTIME =       0x00008000; // v6
     public static final int SSH_FILEXFER_ATTR_EXTENDED =    0x80000000;
 
+    public static final int SSH_FILEXFER_TYPE_REGULAR =   1; // v4
+    public static final int SSH_FILEXFER_TYPE_DIRECTORY = 2;
+    public static final int SSH_FILEXFER_TYPE_SYMLINK =   3;
+    public static final int SSH_FILEXFER_TYPE_SPECIAL =   4;
+    public static final int SSH_FILEXFER_TYPE_UNKNOWN =   5;
+
+    public static final int SSH_FILEXFER_ATTR_FLAGS_READONLY = 0x00000001; // v5
+
+    public static final int SSH_FXP_REALPATH_NO_CHECK =    0x00000001; // v6
+    public static final int SSH_FXP_REALPATH_STAT_IF =     0x00000002;
+    public static final int SSH_FXP_REALPATH_STAT_ALWAYS = 0x00000003;
+
+    public static final int SSH_FXF_RENAME_OVERWRITE = 0x00000001; // v5
+    public static final int SSH_FXF_RENAME_ATOMIC =    0x00000002;
+    public static final int SSH_FXF_RENAME_NATIVE =    0x00000004;
+
     public static final int SSH_FXF_READ =   0x00000001;
     public static final int SSH_FXF_WRITE =  0x00000002;
     public static final int SSH_FXF_APPEND = 0x00000004;
@@ -179,6 +267,25 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     public static final int SSH_FXF_TRUNC =  0x00000010;
     public static final int SSH_FXF_EXCL =   0x00000020;
 
+    // open flags from v5 on, translated to the ones above
+    public static final int SSH_FXF_ACCESS_DISPOSITION = 0x00000007;
+    public static final int SSH_FXF_CREATE_NEW =         0x00000000;
+    public static final int SSH_FXF_CREATE_TRUNCATE =    0x00000001;
+    public static final int SSH_FXF_OPEN_EXISTING =      0x00000002;
+    public static final int SSH_FXF_OPEN_OR_CREATE =     0x00000003;
+    public static final int SSH_FXF_TRUNCATE_EXISTING =  0x00000004;
+    public static final int SSH_FXF_APPEND_DATA =        0x00000008;
+    public static final int SSH_FXF_APPEND_DATA_ATOMIC = 0x00000010;
+    public static final int SSH_FXF_TEXT_MODE =          0x00000020;
+    public static final int SSH_FXF_BLOCK_READ =         0x00000040;
+    public static final int SSH_FXF_BLOCK_WRITE =        0x00000080;
+    public static final int SSH_FXF_BLOCK_DELETE =       0x00000100;
+    public static final int SSH_FXF_BLOCK_ADVISORY =     0x00000200;
+
+    public static final int ACE4_READ_DATA =   0x00000001;
+    public static final int ACE4_WRITE_DATA =  0x00000002;
+    public static final int ACE4_APPEND_DATA = 0x00000004;
+
     public static final int S_IFMT =   0170000;  // bitmask for the file type bitfields
     public static final int S_IFSOCK = 0140000;  // socket
     public static final int S_IFLNK =  0120000;  // symbolic link
@@ -204,6 +311,8 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     private ExitCallback callback;
     private InputStream in;
     private OutputStream out;
+    // length prefix of replies sent from buffers without room for it, guarded by out
+    private final byte[] lengthBytes = new byte[4];
     private OutputStream err;
     private Environment env;
     private ServerSession session;
@@ -213,7 +322,12 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 	private Future<?> pendingFuture;
     private FileSystemView root;
     private int version;
-    private final Map<String, Handle> handles = new HashMap<String, Handle>();
+    private final Map<String, Handle> handles = new ConcurrentHashMap<String, Handle>();
+    private ExecutorService workers;
+    private int maxPendingRequests;
+    // guarded by itself, also guards pendingRequests
+    private final Map<String, RequestQueue> requestQueues = new HashMap<String, RequestQueue>();
+    private int pendingRequests;
 
     protected static abstract class Handle {
         SshFile file;
@@ -233,14 +347,16 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
 
     protected static class DirectoryHandle extends Handle implements Iterator<SshFile> {
         boolean done;
-        // the directory should be read once at "open directory"
-        List<SshFile> fileList = null;
-        int fileIndex;
+        // the directory is read while the client asks for more files,
+        // each READDIR creates only the files it sends
+        Iterator<SshFile> files;
 
         public DirectoryHandle(SshFile file) {
             super(file);
-            fileList = file.listSshFiles();
-            fileIndex = 0;
+            files = file.iterateSshFiles();
+            if (files == null) {
+                files = Collections.<SshFile>emptyList().iterator();
+            }
         }
 
         public boolean isDone() {
@@ -252,13 +368,11 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
 
         public boolean hasNext() {
-            return fileIndex < fileList.size();
+            return files.hasNext();
         }
 
         public SshFile next() {
-            SshFile f = fileList.get(fileIndex);
-            fileIndex++;
-            return f;
+            return files.next();
         }
 
         public void remove() {
@@ -266,8 +380,17 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
 
         public void clearFileList() {
-            // allow the garbage collector to do the job
-            fileList = null;
+            // release the listing, e.g. an open directory stream
+            if (files instanceof Closeable) {
+                IoUtils.closeQuietly((Closeable) files);
+            }
+            files = Collections.<SshFile>emptyList().iterator();
+        }
+
+        @Override
+        public void close() throws IOException {
+            clearFileList();
+            super.close();
         }
     }
 
@@ -278,6 +401,14 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         InputStream input;
         long inputPos;
         long length;
+        // positional access, if supported by the file, avoids reopening streams on seek
+        FileChannel readChannel;
+        boolean readChannelRequested;
+        FileChannel writeChannel;
+        boolean writeChannelRequested;
+        // time of the last write, applied to the file on fsync and close
+        // instead of updating its metadata for every packet; 0 if none pending
+        long modified;
 
         public FileHandle(SshFile sshFile, int flags) {
             super(sshFile);
@@ -285,9 +416,20 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
 
         public int read(byte[] data, long offset) throws IOException {
+            return read(data, 0, data.length, offset);
+        }
+
+        public int read(byte[] data, int off, int len, long offset) throws IOException {
             if ((flags & SSH_FXF_READ) == 0) {
                 throw new IOException("File has not been opened for reading");
             }
+            if (!readChannelRequested) {
+                readChannelRequested = true;
+                readChannel = file.createChannel(false);
+            }
+            if (readChannel != null) {
+                return readChannel.read(ByteBuffer.wrap(data, off, len), offset);
+            }
             if (input != null && offset >= length) {
                 return -1;
             }
@@ -303,15 +445,37 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             if (offset >= length) {
                 return -1;
             }
-            int read = input.read(data);
+            int read = input.read(data, off, len);
             inputPos += read;
             return read;
         }
 
         public void write(byte[] data, long offset) throws IOException {
+            write(data, 0, data.length, offset);
+        }
+
+        public void write(byte[] data, int off, int len, long offset) throws IOException {
             if ((flags & SSH_FXF_WRITE) == 0) {
                 throw new IOException("File has not been opened for writing");
             }
+            if (!writeChannelRequested) {
+                writeChannelRequested = true;
+                writeChannel = file.createChannel(true);
+                if (writeChannel != null && (flags & SSH_FXF_TRUNC) != 0) {
+                    // streams truncate when opened, channels do not
+                    writeChannel.truncate(0);
+                }
+            }
+            if (writeChannel != null) {
+                if ((flags & SSH_FXF_APPEND) != 0) {
+                    offset = writeChannel.size();
+                }
+                ByteBuffer src = ByteBuffer.wrap(data, off, len);
+                while (src.hasRemaining()) {
+                    offset += writeChannel.write(src, offset);
+                }
+                return;
+            }
             if ((flags & SSH_FXF_APPEND) != 0) {
                 offset = (output != null) ? outputPos : file.getSize();
             }
@@ -323,19 +487,82 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 outputPos = offset;
                 output = file.createOutputStream(offset);
             }
-            output.write(data);
-            outputPos += data.length;
+            output.write(data, off, len);
+            outputPos += len;
+        }
+
+        /**
+         * Push written data to the storage device, see fsync@openssh.com.
+         */
+        public void sync() throws IOException {
+            if (writeChannel != null) {
+                writeChannel.force(true);
+            } else if (output != null) {
+                // streams can only be handed on to the file system
+                output.flush();
+            }
+            flushModified();
+        }
+
+        public void flushModified() {
+            if (modified != 0) {
+                file.setLastModified(modified);
+                modified = 0;
+            }
         }
 
         @Override
         public void close() throws IOException {
-            IoUtils.closeQuietly(output, input);
+            IoUtils.closeQuietly(output, input, writeChannel, readChannel);
             output = null;
             input = null;
+            writeChannel = null;
+            readChannel = null;
+            flushModified();
             super.close();
         }
     }
 
+    /**
+     * Requests on one handle, processed one after the other by a worker thread.
+     */
+    protected class RequestQueue implements Runnable {
+        final String handle;
+        final Queue<Buffer> requests = new ArrayDeque<Buffer>();
+        boolean scheduled;
+
+        public RequestQueue(String handle) {
+            this.handle = handle;
+        }
+
+        public void run() {
+            while (true) {
+                Buffer buffer;
+                synchronized (requestQueues) {
+                    buffer = requests.poll();
+                    if (buffer == null) {
+                        scheduled = false;
+                        requestQueues.remove(handle);
+                        return;
+                    }
+                }
+                try {
+                    process(buffer);
+                } catch (Throwable t) {
+                    if (!closed) {
+                        log.error("Exception caught in SFTP subsystem while processing request for handle " + handle, t);
+                    }
+                } finally {
+                    BufferPool.release(buffer);
+                    synchronized (requestQueues) {
+                        pendingRequests--;
+                        requestQueues.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
     public SftpSubsystem() {
         this(null);
     }
@@ -407,13 +634,18 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     public void run() {
         DataInputStream dis = null;
         try {
+            int workerThreads = session.getIntProperty(WORKER_THREADS_PER_SESSION, DEFAULT_WORKER_THREADS_PER_SESSION);
+            if (workerThreads > 0) {
+                workers = ThreadUtils.newFixedThreadPool(getClass().getSimpleName() + "-worker", workerThreads);
+            }
+            maxPendingRequests = Math.max(1, session.getIntProperty(MAX_PENDING_REQUESTS_PER_SESSION, DEFAULT_MAX_PENDING_REQUESTS_PER_SESSION));
             dis = new DataInputStream(in);
             while (true) {
                 int length = dis.readInt();
                 if (length < 5) {
                     throw new IllegalArgumentException();
                 }
-                Buffer buffer = new Buffer(length + 4);
+                Buffer buffer = BufferPool.getBuffer(length + 4);
                 buffer.putInt(length);
                 int nb = length;
                 while (nb > 0) {
@@ -424,13 +656,22 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     buffer.wpos(buffer.wpos() + l);
                     nb -= l;
                 }
-                process(buffer);
+                dispatch(buffer);
             }
         } catch (Throwable t) {
             if (!closed && !(t instanceof EOFException)) { // Ignore
                 log.error("Exception caught in SFTP subsystem", t);
             }
         } finally {
+            try {
+                awaitPendingRequests(0);
+            } catch (IOException e) {
+                log.debug("Interrupted while waiting for pending requests");
+            }
+            if (workers != null) {
+                workers.shutdownNow();
+                workers = null;
+            }
             if (dis != null) {
                 try {
                     dis.close();
@@ -455,9 +696,85 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
     }
 
+    /**
+     * Hand a request over for processing. Requests operating on an open handle
+     * are queued per handle and processed by the worker threads, so reads and writes
+     * on different handles proceed concurrently and replies are sent as soon as
+     * they are ready. All other requests wait for the pending ones and are then
+     * processed on the reading thread, which keeps their order with respect to
+     * every request that came before.
+     */
+    protected void dispatch(Buffer buffer) throws IOException {
+        String handle = workers != null ? getRequestHandle(buffer) : null;
+        if (handle == null) {
+            awaitPendingRequests(0);
+            try {
+                process(buffer);
+            } finally {
+                BufferPool.release(buffer);
+            }
+            return;
+        }
+        awaitPendingRequests(maxPendingRequests - 1);
+        synchronized (requestQueues) {
+            RequestQueue queue = requestQueues.get(handle);
+            if (queue == null) {
+                queue = new RequestQueue(handle);
+                requestQueues.put(handle, queue);
+            }
+            queue.requests.add(buffer);
+            pendingRequests++;
+            if (!queue.scheduled) {
+                queue.scheduled = true;
+                workers.execute(queue);
+            }
+        }
+    }
+
+    /**
+     * Peek at the handle of a request without consuming the buffer.
+     * @return the handle or <code>null</code> if the request does not operate on an open handle
+     */
+    protected String getRequestHandle(Buffer buffer) {
+        int rpos = buffer.rpos();
+        try {
+            buffer.getInt();
+            int type = buffer.getByte();
+            switch (type) {
+                case SSH_FXP_CLOSE:
+                case SSH_FXP_READ:
+                case SSH_FXP_WRITE:
+                case SSH_FXP_FSTAT:
+                case SSH_FXP_FSETSTAT:
+                case SSH_FXP_READDIR:
+                    buffer.getInt();
+                    return buffer.getString();
+                default:
+                    return null;
+            }
+        } catch (RuntimeException e) {
+            // malformed, let process() report it
+            return null;
+        } finally {
+            buffer.rpos(rpos);
+        }
+    }
+
+    protected void awaitPendingRequests(int maxPending) throws IOException {
+        synchronized (requestQueues) {
+            while (pendingRequests > maxPending) {
+                try {
+                    requestQueues.wait();
+                } catch (InterruptedException e) {
+                    throw (IOException) new InterruptedIOException("Interrupted while waiting for pending requests").initCause(e);
+                }
+            }
+        }
+    }
+
     protected void process(Buffer buffer) throws IOException {
         int length = buffer.getInt();
-        int type = buffer.getByte();
+        int type = buffer.getByte() & 0xff;
         int id = buffer.getInt();
         switch (type) {
             case SSH_FXP_INIT: {
@@ -472,30 +789,49 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     buffer.clear();
                     buffer.putByte((byte) SSH_FXP_VERSION);
                     buffer.putInt(version);
+                    buffer.putString(EXT_LIMITS);
+                    buffer.putString("1");
+                    buffer.putString(EXT_FSYNC);
+                    buffer.putString("1");
+                    buffer.putString(EXT_STATVFS);
+                    buffer.putString("2");
+                    buffer.putString(EXT_POSIX_RENAME);
+                    buffer.putString("1");
+                    buffer.putString(EXT_COPY_DATA);
+                    buffer.putString("1");
+                    buffer.putString(EXT_CHECK_FILE_NAME);
+                    buffer.putString(CHECK_FILE_ALGORITHMS);
+                    buffer.putString(EXT_CHECK_FILE_HANDLE);
+                    buffer.putString(CHECK_FILE_ALGORITHMS);
                     send(buffer);
                 } else {
-                    // We only support version 3 (Version 1 and 2 are not common)
+                    // We only support versions 3 to 6 (Version 1 and 2 are not common)
                     sendStatus(id, SSH_FX_OP_UNSUPPORTED, "SFTP server only support versions " + ALL_SFTP_IMPL);
                 }
 
                 break;
             }
             case SSH_FXP_OPEN: {
-                if (session.getFactoryManager().getProperties() != null) {
-                    String maxHandlesString = session.getFactoryManager().getProperties().get(MAX_OPEN_HANDLES_PER_SESSION);
-                    if (maxHandlesString != null) {
-                        int maxHandleCount = Integer.parseInt(maxHandlesString);
-                        if (handles.size() > maxHandleCount) {
-                            sendStatus(id, SSH_FX_FAILURE, "Too many open handles");
-                            break;
-                        }
-                    }
+                int maxHandleCount = getMaxOpenHandles();
+                if (maxHandleCount > 0 && handles.size() > maxHandleCount) {
+                    sendStatus(id, SSH_FX_FAILURE, "Too many open handles");
+                    break;
                 }
 
                 String path = buffer.getString();
-                int pflags = buffer.getInt();
+                int pflags;
+                if (version >= 5) {
+                    int access = buffer.getInt();
+                    pflags = getOpenFlags(access, buffer.getInt());
+                } else {
+                    pflags = buffer.getInt();
+                }
                 Map<SshFile.Attribute, Object> attrs = readAttrs(buffer);
                 log.debug("Received SSH_FXP_OPEN (path={}, pflags={}, attrs={})", path, pflags, attrs);
+                if (pflags < 0) {
+                    sendStatus(id, SSH_FX_OP_UNSUPPORTED, "Byte range locks are not supported");
+                    break;
+                }
                 try {
                     SshFile file = resolveFile(path);
                     if (file.doesExist()) {
@@ -572,16 +908,25 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                         sendStatus(id, SSH_FX_FAILURE, handle);
                     } else {
                         FileHandle fh = (FileHandle) p;
-                        byte[] b = new byte[Math.min(len, Buffer.MAX_LEN)];
-                        len = fh.read(b, offset);
-                        if (len >= 0) {
-                            Buffer buf = new Buffer(len + 5);
+                        len = Math.max(0, Math.min(len, MAX_READ_WRITE_LENGTH));
+                        // read the data straight into the reply, after its header
+                        Buffer buf = createReplyBuffer(9 + len);
+                        try {
                             buf.putByte((byte) SSH_FXP_DATA);
                             buf.putInt(id);
-                            buf.putBytes(b, 0, len);
-                            send(buf);
-                        } else {
-                            sendStatus(id, SSH_FX_EOF, "");
+                            int lenPos = buf.wpos();
+                            buf.putInt(0);
+                            len = fh.read(buf.array(), buf.wpos(), len, offset);
+                            if (len >= 0) {
+                                buf.wpos(lenPos);
+                                buf.putInt(len);
+                                buf.wpos(lenPos + 4 + len);
+                                send(buf);
+                            } else {
+                                sendStatus(id, SSH_FX_EOF, "");
+                            }
+                        } finally {
+                            BufferPool.release(buf);
                         }
                     }
                 } catch (IOException e) {
@@ -592,19 +937,23 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             case SSH_FXP_WRITE: {
                 String handle = buffer.getString();
                 long offset = buffer.getLong();
-                byte[] data = buffer.getBytes();
-                log.debug("Received SSH_FXP_WRITE (handle={}, offset={}, data=byte[{}])", handle, offset, data.length);
+                int dataLen = buffer.getInt();
+                int dataPos = buffer.rpos();
+                log.debug("Received SSH_FXP_WRITE (handle={}, offset={}, data=byte[{}])", handle, offset, dataLen);
+                if (dataLen < 0 || dataLen > buffer.available()) {
+                    // the data is taken from the buffer in place, past its end are stale pooled bytes
+                    sendStatus(id, SSH_FX_BAD_MESSAGE, "Invalid data length: " + dataLen);
+                    break;
+                }
+                buffer.rpos(dataPos + dataLen);
                 try {
                     Handle p = handles.get(handle);
                     if (!(p instanceof FileHandle)) {
                         sendStatus(id, SSH_FX_FAILURE, handle);
                     } else {
                         FileHandle fh = (FileHandle) p;
-                        fh.write(data, offset);
-                        SshFile sshFile = fh.getFile();
-
-                        sshFile.setLastModified(new Date().getTime());
-                        
+                        fh.write(buffer.array(), dataPos, dataLen, offset);
+                        fh.modified = System.currentTimeMillis();
                         sendStatus(id, SSH_FX_OK, "");
                     }
                 } catch (IOException e) {
@@ -614,6 +963,7 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             }
             case SSH_FXP_LSTAT: {
                 String path = buffer.getString();
+                skipAttrFlags(buffer);
                 log.debug("Received SSH_FXP_LSTAT (path={})", path);
                 try {
                     SshFile p = resolveFile(path);
@@ -627,6 +977,7 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             }
             case SSH_FXP_FSTAT: {
                 String handle = buffer.getString();
+                skipAttrFlags(buffer);
                 log.debug("Received SSH_FXP_FSTAT (handle={})", handle);
                 try {
                     Handle p = handles.get(handle);
@@ -648,6 +999,14 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 log.debug("Received SSH_FXP_SETSTAT (path={}, attrs={})", path, attrs);
                 try {
                     SshFile p = resolveFile(path);
+                    if (attrs.containsKey(SshFile.Attribute.LastModifiedTime)) {
+                        // the time given by the client must not be overwritten when the file is closed
+                        for (Handle h : handles.values()) {
+                            if (h instanceof FileHandle && h.getFile().getAbsolutePath().equals(p.getAbsolutePath())) {
+                                ((FileHandle) h).modified = 0;
+                            }
+                        }
+                    }
                     p.setAttributes(attrs);
                     sendStatus(id, SSH_FX_OK, "");
                 } catch (FileNotFoundException e) {
@@ -668,6 +1027,10 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                     if (p == null) {
                         sendStatus(id, SSH_FX_FAILURE, handle);
                     } else {
+                        if (p instanceof FileHandle && attrs.containsKey(SshFile.Attribute.LastModifiedTime)) {
+                            // the time given by the client must not be overwritten when the file is closed
+                            ((FileHandle) p).modified = 0;
+                        }
                         p.getFile().setAttributes(attrs);
                         sendStatus(id, SSH_FX_OK, "");
                     }
@@ -816,13 +1179,26 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             }
             case SSH_FXP_REALPATH: {
                 String path = buffer.getString();
-                log.debug("Received SSH_FXP_REALPATH (path={})", path);
+                int control = 0;
+                if (version >= 6 && buffer.available() > 0) {
+                    control = buffer.getByte();
+                    while (buffer.available() > 0) {
+                        String composePath = buffer.getString();
+                        path = composePath.startsWith("/") ? composePath : path + "/" + composePath;
+                    }
+                }
+                log.debug("Received SSH_FXP_REALPATH (path={}, control={})", path, control);
                 if (path.trim().length() == 0) {
                     path = ".";
                 }
                 try {
                     SshFile p = resolveFile(path);
-                    sendPath(id, p, false);
+                    if (control == SSH_FXP_REALPATH_STAT_ALWAYS && !p.doesExist()) {
+                        sendStatus(id, SSH_FX_NO_SUCH_FILE, p.getAbsolutePath());
+                    } else {
+                        // without a control byte the path is not checked
+                        sendPath(id, p, control == SSH_FXP_REALPATH_STAT_IF || control == SSH_FXP_REALPATH_STAT_ALWAYS);
+                    }
                 } catch (FileNotFoundException e) {
                     e.printStackTrace();
                     sendStatus(id, SSH_FX_NO_SUCH_FILE, e.getMessage());
@@ -834,6 +1210,7 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             }
             case SSH_FXP_STAT: {
                 String path = buffer.getString();
+                skipAttrFlags(buffer);
                 log.debug("Received SSH_FXP_STAT (path={})", path);
                 try {
                     SshFile p = resolveFile(path);
@@ -848,22 +1225,9 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             case SSH_FXP_RENAME: {
                 String oldPath = buffer.getString();
                 String newPath = buffer.getString();
-                log.debug("Received SSH_FXP_RENAME (oldPath={}, newPath={})", oldPath, newPath);
-                try {
-                    SshFile o = resolveFile(oldPath);
-                    SshFile n = resolveFile(newPath);
-                    if (!o.doesExist()) {
-                        sendStatus(id, SSH_FX_NO_SUCH_FILE, o.getAbsolutePath());
-                    } else if (n.doesExist()) {
-                        sendStatus(id, SSH_FX_FAILURE, n.getAbsolutePath());
-                    } else if (!o.move(n)) {
-                        sendStatus(id, SSH_FX_FAILURE, "Failed to rename file");
-                    } else {
-                        sendStatus(id, SSH_FX_OK, "");
-                    }
-                } catch (IOException e) {
-                    sendStatus(id, SSH_FX_FAILURE, e.getMessage());
-                }
+                int flags = version >= 5 ? buffer.getInt() : 0;
+                log.debug("Received SSH_FXP_RENAME (oldPath={}, newPath={}, flags={})", new Object[] { oldPath, newPath, flags });
+                doRename(id, oldPath, newPath, (flags & SSH_FXF_RENAME_OVERWRITE) != 0);
                 break;
             }
             case SSH_FXP_READLINK: {
@@ -896,10 +1260,45 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
                 }
                 break;
             }
+            case SSH_FXP_LINK: {
+                String linkpath = buffer.getString();
+                String targetpath = buffer.getString();
+                boolean symlink = buffer.getBoolean();
+                log.debug("Received SSH_FXP_LINK (linkpath={}, targetpath={}, symlink={})", new Object[] { linkpath, targetpath, symlink });
+                if (!symlink) {
+                    sendStatus(id, SSH_FX_OP_UNSUPPORTED, "Hard links are not supported");
+                    break;
+                }
+                try {
+                    SshFile link = resolveFile(linkpath);
+                    SshFile target = resolveFile(targetpath);
+                    link.createSymbolicLink(target);
+                    sendStatus(id, SSH_FX_OK, "");
+                } catch (UnsupportedOperationException e) {
+                    sendStatus(id, SSH_FX_OP_UNSUPPORTED, "Command " + type + " is unsupported or not implemented");
+                } catch (IOException e) {
+                    sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+                }
+                break;
+            }
             case SSH_FXP_EXTENDED: {
                 String extension = buffer.getString();
-                log.info("Received unsupported SSH_FXP_EXTENDED({})", extension);
-                sendStatus(id, SSH_FX_OP_UNSUPPORTED, "Command SSH_FXP_EXTENDED(" + extension + ") is unsupported or not implemented");
+                if (EXT_LIMITS.equals(extension)) {
+                    doLimits(id);
+                } else if (EXT_FSYNC.equals(extension)) {
+                    doFsync(id, buffer);
+                } else if (EXT_STATVFS.equals(extension)) {
+                    doStatVfs(id, buffer);
+                } else if (EXT_POSIX_RENAME.equals(extension)) {
+                    doPosixRename(id, buffer);
+                } else if (EXT_COPY_DATA.equals(extension)) {
+                    doCopyData(id, buffer);
+                } else if (EXT_CHECK_FILE_NAME.equals(extension) || EXT_CHECK_FILE_HANDLE.equals(extension)) {
+                    doCheckFile(id, extension, buffer);
+                } else {
+                    log.info("Received unsupported SSH_FXP_EXTENDED({})", extension);
+                    sendStatus(id, SSH_FX_OP_UNSUPPORTED, "Command SSH_FXP_EXTENDED(" + extension + ") is unsupported or not implemented");
+                }
                 break;
             }
             default: {
@@ -910,20 +1309,336 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         }
     }
 
+    /**
+     * Tell the client how large its requests may be, so it does not have to fall
+     * back to small reads and writes.
+     */
+    protected void doLimits(int id) throws IOException {
+        log.debug("Received SSH_FXP_EXTENDED(limits@openssh.com)");
+        Buffer buffer = createReplyBuffer(0);
+        buffer.putByte((byte) SSH_FXP_EXTENDED_REPLY);
+        buffer.putInt(id);
+        buffer.putLong(MAX_SFTP_PACKET_LENGTH);
+        buffer.putLong(MAX_READ_WRITE_LENGTH);
+        buffer.putLong(MAX_READ_WRITE_LENGTH);
+        buffer.putLong(getMaxOpenHandles());
+        sendAndRelease(buffer);
+    }
+
+    /**
+     * Make sure everything written to a handle is on the storage device, so a
+     * client can rely on it without closing the file.
+     */
+    protected void doFsync(int id, Buffer buffer) throws IOException {
+        String handle = buffer.getString();
+        log.debug("Received SSH_FXP_EXTENDED(fsync@openssh.com) (handle={})", handle);
+        try {
+            Handle p = handles.get(handle);
+            if (!(p instanceof FileHandle)) {
+                sendStatus(id, SSH_FX_FAILURE, handle);
+            } else {
+                ((FileHandle) p).sync();
+                sendStatus(id, SSH_FX_OK, "");
+            }
+        } catch (IOException e) {
+            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+        }
+    }
+
+    /**
+     * Report the size of the file system a path is on, so a client can check for
+     * free space before uploading.
+     */
+    protected void doStatVfs(int id, Buffer buffer) throws IOException {
+        String path = buffer.getString();
+        log.debug("Received SSH_FXP_EXTENDED(statvfs@openssh.com) (path={})", path);
+        try {
+            SshFile file = resolveFile(path);
+            long total = file.getTotalSpace();
+            if (total <= 0) {
+                sendStatus(id, SSH_FX_OP_UNSUPPORTED, "Size of file system is unknown");
+                return;
+            }
+            long free = file.getFreeSpace();
+            long usable = file.getUsableSpace();
+            Buffer reply = createReplyBuffer(0);
+            reply.putByte((byte) SSH_FXP_EXTENDED_REPLY);
+            reply.putInt(id);
+            reply.putLong(STATVFS_BLOCK_SIZE); // f_bsize
+            reply.putLong(STATVFS_BLOCK_SIZE); // f_frsize
+            reply.putLong(total / STATVFS_BLOCK_SIZE); // f_blocks
+            reply.putLong(free / STATVFS_BLOCK_SIZE); // f_bfree
+            reply.putLong(usable / STATVFS_BLOCK_SIZE); // f_bavail
+            reply.putLong(0); // f_files
+            reply.putLong(0); // f_ffree
+            reply.putLong(0); // f_favail
+            reply.putLong(0); // f_fsid
+            reply.putLong(0); // f_flag
+            reply.putLong(255); // f_namemax
+            sendAndRelease(reply);
+        } catch (IOException e) {
+            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+        }
+    }
+
+    /**
+     * Rename replacing an existing file, so a client can upload to a temporary
+     * name and then move the file into place with a single request.
+     */
+    protected void doPosixRename(int id, Buffer buffer) throws IOException {
+        String oldPath = buffer.getString();
+        String newPath = buffer.getString();
+        log.debug("Received SSH_FXP_EXTENDED(posix-rename@openssh.com) (oldPath={}, newPath={})", oldPath, newPath);
+        doRename(id, oldPath, newPath, true);
+    }
+
+    /**
+     * @param overwrite whether an existing file is replaced, otherwise renaming fails
+     */
+    protected void doRename(int id, String oldPath, String newPath, boolean overwrite) throws IOException {
+        try {
+            SshFile o = resolveFile(oldPath);
+            SshFile n = resolveFile(newPath);
+            if (!o.doesExist()) {
+                sendStatus(id, SSH_FX_NO_SUCH_FILE, o.getAbsolutePath());
+                return;
+            }
+            if (n.doesExist() && (!overwrite || n.isDirectory())) {
+                // directories are never replaced, some backends would move the file into them
+                sendStatus(id, SSH_FX_FAILURE, n.getAbsolutePath());
+                return;
+            }
+            // file systems which rename like rename(2) replace the file atomically,
+            // others refuse to overwrite and the file is removed first
+            boolean moved = o.move(n);
+            if (!moved && overwrite && n.doesExist() && n.delete()) {
+                // the deleted file may still describe the old document, look the path up again
+                moved = o.move(resolveFile(newPath));
+            }
+            if (moved) {
+                sendStatus(id, SSH_FX_OK, "");
+            } else {
+                sendStatus(id, SSH_FX_FAILURE, "Failed to rename file");
+            }
+        } catch (IOException e) {
+            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the maximum of open handles, 0 if not limited
+     */
+    protected int getMaxOpenHandles() {
+        Map<String, String> properties = session.getFactoryManager().getProperties();
+        String maxHandlesString = properties != null ? properties.get(MAX_OPEN_HANDLES_PER_SESSION) : null;
+        return maxHandlesString != null ? Integer.parseInt(maxHandlesString) : 0;
+    }
+
+    /**
+     * Copy a range of a file opened for reading to a file opened for writing,
+     * without the data going through the client.
+     */
+    protected void doCopyData(int id, Buffer buffer) throws IOException {
+        String readHandle = buffer.getString();
+        long readOffset = buffer.getLong();
+        long readLength = buffer.getLong();
+        String writeHandle = buffer.getString();
+        long writeOffset = buffer.getLong();
+        log.debug("Received SSH_FXP_EXTENDED(copy-data) (readHandle={}, readOffset={}, readLength={}, writeHandle={}, writeOffset={})",
+                new Object[] { readHandle, readOffset, readLength, writeHandle, writeOffset });
+        try {
+            Handle r = handles.get(readHandle);
+            Handle w = handles.get(writeHandle);
+            if (!(r instanceof FileHandle)) {
+                sendStatus(id, SSH_FX_FAILURE, readHandle);
+                return;
+            }
+            if (!(w instanceof FileHandle)) {
+                sendStatus(id, SSH_FX_FAILURE, writeHandle);
+                return;
+            }
+            if (readOffset < 0 || readLength < 0 || writeOffset < 0) {
+                sendStatus(id, SSH_FX_FAILURE, "Invalid range");
+                return;
+            }
+            FileHandle src = (FileHandle) r;
+            FileHandle dst = (FileHandle) w;
+            if (readLength == 0) {
+                // up to the end of the file as it is now
+                readLength = Math.max(0, src.getFile().getSize() - readOffset);
+            }
+            if (src.getFile().getAbsolutePath().equals(dst.getFile().getAbsolutePath())
+                    && readOffset < writeOffset + readLength && writeOffset < readOffset + readLength) {
+                sendStatus(id, SSH_FX_FAILURE, "Overlapping ranges");
+                return;
+            }
+            byte[] data = BufferPool.getArray(COPY_BUFFER_SIZE);
+            try {
+                while (readLength > 0) {
+                    int len = src.read(data, 0, (int) Math.min(readLength, data.length), readOffset);
+                    if (len <= 0) {
+                        break;
+                    }
+                    dst.write(data, 0, len, writeOffset);
+                    readOffset += len;
+                    writeOffset += len;
+                    readLength -= len;
+                }
+            } finally {
+                BufferPool.release(data);
+            }
+            dst.modified = System.currentTimeMillis();
+            sendStatus(id, SSH_FX_OK, "");
+        } catch (IOException e) {
+            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+        }
+    }
+
+    /**
+     * Hash a range of a file, either as a whole or in blocks, so a client can verify
+     * a transfer without reading the file again.
+     */
+    protected void doCheckFile(int id, String extension, Buffer buffer) throws IOException {
+        String target = buffer.getString();
+        String algorithms = buffer.getString();
+        long offset = buffer.getLong();
+        long length = buffer.getLong();
+        int blockSize = buffer.getInt();
+        log.debug("Received SSH_FXP_EXTENDED({}) (target={}, algorithms={}, offset={}, length={}, blockSize={})",
+                new Object[] { extension, target, algorithms, offset, length, blockSize });
+        String algorithm = null;
+        MessageDigest digest = null;
+        for (String name : algorithms.split(",")) {
+            digest = createDigest(name.trim());
+            if (digest != null) {
+                algorithm = name.trim();
+                break;
+            }
+        }
+        if (digest == null) {
+            sendStatus(id, SSH_FX_OP_UNSUPPORTED, "No supported hash algorithm in " + algorithms);
+            return;
+        }
+        if (offset < 0 || length < 0 || (blockSize != 0 && blockSize < MIN_CHECK_FILE_BLOCK_SIZE)) {
+            sendStatus(id, SSH_FX_FAILURE, "Invalid range or block size");
+            return;
+        }
+        FileHandle fh = null;
+        boolean temporary = false;
+        try {
+            if (EXT_CHECK_FILE_HANDLE.equals(extension)) {
+                Handle h = handles.get(target);
+                if (!(h instanceof FileHandle)) {
+                    sendStatus(id, SSH_FX_FAILURE, target);
+                    return;
+                }
+                fh = (FileHandle) h;
+            } else {
+                SshFile file = resolveFile(target);
+                if (!file.doesExist()) {
+                    sendStatus(id, SSH_FX_NO_SUCH_FILE, "No such file " + target);
+                    return;
+                }
+                if (!file.isReadable()) {
+                    sendStatus(id, SSH_FX_PERMISSION_DENIED, "Can not read " + target);
+                    return;
+                }
+                fh = new FileHandle(file, SSH_FXF_READ);
+                temporary = true;
+            }
+            if (length == 0) {
+                length = Math.max(0, fh.getFile().getSize() - offset);
+            }
+            if (blockSize > 0 && (length / blockSize + 1) * digest.getDigestLength() > MAX_CHECK_FILE_REPLY_LENGTH) {
+                sendStatus(id, SSH_FX_FAILURE, "Too many blocks, use a larger block size");
+                return;
+            }
+            Buffer reply = createReplyBuffer(0);
+            byte[] data = BufferPool.getArray(COPY_BUFFER_SIZE);
+            try {
+                reply.putByte((byte) SSH_FXP_EXTENDED_REPLY);
+                reply.putInt(id);
+                reply.putString(EXT_CHECK_FILE);
+                reply.putString(algorithm);
+                // the hashes of all blocks are simply appended
+                long inBlock = 0;
+                while (length > 0) {
+                    long n = Math.min(length, data.length);
+                    if (blockSize > 0) {
+                        n = Math.min(n, blockSize - inBlock);
+                    }
+                    int len = fh.read(data, 0, (int) n, offset);
+                    if (len <= 0) {
+                        break;
+                    }
+                    digest.update(data, 0, len);
+                    offset += len;
+                    length -= len;
+                    inBlock += len;
+                    if (inBlock == blockSize) {
+                        reply.putRawBytes(digest.digest());
+                        inBlock = 0;
+                    }
+                }
+                if (blockSize == 0 || inBlock > 0) {
+                    reply.putRawBytes(digest.digest());
+                }
+                send(reply);
+            } finally {
+                BufferPool.release(data);
+                BufferPool.release(reply);
+            }
+        } catch (IOException e) {
+            sendStatus(id, SSH_FX_FAILURE, e.getMessage());
+        } finally {
+            if (temporary) {
+                fh.close();
+            }
+        }
+    }
+
+    /**
+     * @return the digest for a check-file algorithm name or <code>null</code> if not supported
+     */
+    protected MessageDigest createDigest(String algorithm) {
+        String name;
+        if ("md5".equals(algorithm)) {
+            name = "MD5";
+        } else if ("sha1".equals(algorithm)) {
+            name = "SHA-1";
+        } else if ("sha224".equals(algorithm)) {
+            name = "SHA-224";
+        } else if ("sha256".equals(algorithm)) {
+            name = "SHA-256";
+        } else if ("sha384".equals(algorithm)) {
+            name = "SHA-384";
+        } else if ("sha512".equals(algorithm)) {
+            name = "SHA-512";
+        } else {
+            return null;
+        }
+        try {
+            return SecurityUtils.getMessageDigest(name);
+        } catch (GeneralSecurityException e) {
+            log.debug("Hash algorithm " + name + " is not available", e);
+            return null;
+        }
+    }
+
     protected void sendHandle(int id, String handle) throws IOException {
-        Buffer buffer = new Buffer();
+        Buffer buffer = createReplyBuffer(0);
         buffer.putByte((byte) SSH_FXP_HANDLE);
         buffer.putInt(id);
         buffer.putString(handle);
-        send(buffer);
+        sendAndRelease(buffer);
     }
 
     protected void sendAttrs(int id, SshFile file, boolean followLinks) throws IOException {
-        Buffer buffer = new Buffer();
+        Buffer buffer = createReplyBuffer(0);
         buffer.putByte((byte) SSH_FXP_ATTRS);
         buffer.putInt(id);
         writeAttrs(buffer, file, followLinks);
-        send(buffer);
+        sendAndRelease(buffer);
     }
 
     protected void sendPath(int id, SshFile f) throws IOException {
@@ -931,7 +1646,7 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     }
 
     protected void sendPath(int id, SshFile f, boolean sendAttrs) throws IOException {
-        Buffer buffer = new Buffer();
+        Buffer buffer = createReplyBuffer(0);
         buffer.putByte((byte) SSH_FXP_NAME);
         buffer.putInt(id);
         buffer.putInt(1);
@@ -949,42 +1664,70 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         if (f.getName().length() == 0) {
             f = resolveFile(".");
         }
-        buffer.putString(getLongName(f, sendAttrs)); // Format specified in the specs
-        buffer.putInt(0);
-        send(buffer);
+        if (version >= 4) {
+            // no long name from v4 on, but attributes with a file type
+            FileAttributes attributes = null;
+            if (sendAttrs) {
+                try {
+                    attributes = f.getFileAttributes(false);
+                } catch (FileNotFoundException e) {
+                    // e.g. the real path of a file which is yet to be created
+                }
+            }
+            if (attributes != null) {
+                writeAttrs(buffer, attributes);
+            } else {
+                writeEmptyAttrs(buffer);
+            }
+        } else {
+            buffer.putString(getLongName(f, sendAttrs)); // Format specified in the specs
+            buffer.putInt(0);
+        }
+        sendAndRelease(buffer);
     }
 
     protected void sendLink(int id, String link) throws IOException {
-        Buffer buffer = new Buffer();
+        Buffer buffer = createReplyBuffer(0);
         buffer.putByte((byte) SSH_FXP_NAME);
         buffer.putInt(id);
         buffer.putInt(1);
         //normalize the given path, use *nix style separator
         buffer.putString(link);
-        buffer.putString(link);
-        buffer.putInt(0);
-        send(buffer);
+        if (version >= 4) {
+            writeEmptyAttrs(buffer);
+        } else {
+            buffer.putString(link);
+            buffer.putInt(0);
+        }
+        sendAndRelease(buffer);
     }
 
     protected void sendName(int id, Iterator<SshFile> files) throws IOException {
-        Buffer buffer = new Buffer();
+        Buffer buffer = createReplyBuffer(0);
         buffer.putByte((byte) SSH_FXP_NAME);
         buffer.putInt(id);
         int wpos = buffer.wpos();
         buffer.putInt(0);
         int nb = 0;
+        // shared by the entries, creating a calendar is expensive
+        Calendar calendar = new GregorianCalendar();
+        StringBuilder sb = new StringBuilder();
         while (files.hasNext() && buffer.wpos() < MAX_PACKET_LENGTH) {
             SshFile f = files.next();
+            FileAttributes attributes = f.getFileAttributes(false);
             buffer.putString(f.getName());
-            buffer.putString(getLongName(f)); // Format specified in the specs
-            writeAttrs(buffer, f, false);
+            if (version < 4) {
+                sb.setLength(0);
+                buffer.putString(getLongName(sb, f.getName(), attributes, calendar)); // Format specified in the specs
+            }
+            writeAttrs(buffer, attributes);
             nb++;
         }
         int oldpos = buffer.wpos();
         buffer.wpos(wpos);
         buffer.putInt(nb);
         buffer.wpos(oldpos);
-        send(buffer);
+        sendAndRelease(buffer);
     }
 
     private String getLongName(SshFile f) throws IOException {
@@ -992,72 +1735,80 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     }
 
     private String getLongName(SshFile f, boolean sendAttrs) throws IOException {
-        Map<SshFile.Attribute, Object> attributes;
+        FileAttributes attributes = null;
         if (sendAttrs) {
-            attributes = f.getAttributes(false);
-        } else {
-            attributes = new HashMap<SshFile.Attribute, Object>();
-            attributes.put(SshFile.Attribute.Owner, "owner");
-            attributes.put(SshFile.Attribute.Group, "group");
-            attributes.put(SshFile.Attribute.Size, (long) 0);
-            attributes.put(SshFile.Attribute.IsDirectory, false);
-            attributes.put(SshFile.Attribute.IsSymbolicLink, false);
-            attributes.put(SshFile.Attribute.IsRegularFile, false);
-            attributes.put(SshFile.Attribute.Permissions, EnumSet.noneOf(SshFile.Permission.class));
-            attributes.put(SshFile.Attribute.LastModifiedTime, (long) 0);
-        }
-        String username = (String) attributes.get(SshFile.Attribute.Owner);
-        if (username.length() > 8) {
-            username = username.substring(0, 8);
-        } else {
-            for (int i = username.length(); i < 8; i++) {
-                username = username + " ";
+            try {
+                attributes = f.getFileAttributes(false);
+            } catch (FileNotFoundException e) {
+                // e.g. the real path of a file which is yet to be created
             }
         }
-        String group = (String) attributes.get(SshFile.Attribute.Group);
-        if (group.length() > 8) {
-            group = group.substring(0, 8);
-        } else {
-            for (int i = group.length(); i < 8; i++) {
-                group = group + " ";
-            }
+        if (attributes == null) {
+            attributes = new FileAttributes()
+                    .setOwner("owner")
+                    .setGroup("group")
+                    .setSize(0)
+                    .setDirectory(false)
+                    .setSymbolicLink(false)
+                    .setRegularFile(false)
+                    .setPermissions(0)
+                    .setLastModifiedTime(0);
         }
+        return getLongName(new StringBuilder(), f.getName(), attributes, new GregorianCalendar());
+    }
 
-        long length = (Long) attributes.get(SshFile.Attribute.Size);
-        String lengthString = String.format("%1$8s", length);
-
-        boolean isDirectory = (Boolean) attributes.get(SshFile.Attribute.IsDirectory);
-        boolean isLink = (Boolean) attributes.get(SshFile.Attribute.IsSymbolicLink);
-        int perms = getPermissions(attributes);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(isDirectory ? "d" : isLink ? "l" : "-");
-        sb.append((perms & S_IRUSR) != 0 ? "r" : "-");
-        sb.append((perms & S_IWUSR) != 0 ? "w" : "-");
-        sb.append((perms & S_IXUSR) != 0 ? "x" : "-");
-        sb.append((perms & S_IRGRP) != 0 ? "r" : "-");
-        sb.append((perms & S_IWGRP) != 0 ? "w" : "-");
-        sb.append((perms & S_IXGRP) != 0 ? "x" : "-");
-        sb.append((perms & S_IROTH) != 0 ? "r" : "-");
-        sb.append((perms & S_IWOTH) != 0 ? "w" : "-");
-        sb.append((perms & S_IXOTH) != 0 ? "x" : "-");
+    private String getLongName(StringBuilder sb, String name, FileAttributes attributes, Calendar calendar) {
+        int perms = attributes.getPermissions();
+        sb.append(attributes.isDirectory() ? 'd' : attributes.isSymbolicLink() ? 'l' : '-');
+        sb.append((perms & S_IRUSR) != 0 ? 'r' : '-');
+        sb.append((perms & S_IWUSR) != 0 ? 'w' : '-');
+        sb.append((perms & S_IXUSR) != 0 ? 'x' : '-');
+        sb.append((perms & S_IRGRP) != 0 ? 'r' : '-');
+        sb.append((perms & S_IWGRP) != 0 ? 'w' : '-');
+        sb.append((perms & S_IXGRP) != 0 ? 'x' : '-');
+        sb.append((perms & S_IROTH) != 0 ? 'r' : '-');
+        sb.append((perms & S_IWOTH) != 0 ? 'w' : '-');
+        sb.append((perms & S_IXOTH) != 0 ? 'x' : '-');
         sb.append("  ");
-        sb.append(attributes.containsKey(SshFile.Attribute.NLink)
-                ? attributes.get(SshFile.Attribute.NLink) : "1");
-        sb.append(" ");
-        sb.append(username);
-        sb.append(" ");
-        sb.append(group);
-        sb.append(" ");
-        sb.append(lengthString);
-        sb.append(" ");
-        sb.append(getUnixDate((Long) attributes.get(SshFile.Attribute.LastModifiedTime)));
-        sb.append(" ");
-        sb.append(f.getName());
-
+        if (attributes.isKnown(SshFile.Attribute.NLink)) {
+            sb.append(attributes.getNLink());
+        } else {
+            sb.append('1');
+        }
+        sb.append(' ');
+        appendPadded(sb, attributes.getOwner(), 8, false);
+        sb.append(' ');
+        appendPadded(sb, attributes.getGroup(), 8, false);
+        sb.append(' ');
+        appendPadded(sb, String.valueOf(attributes.getSize()), 8, true);
+        sb.append(' ');
+        appendUnixDate(sb, calendar, attributes.getLastModifiedTime());
+        sb.append(' ');
+        sb.append(name);
         return sb.toString();
     }
 
+    /**
+     * Append a value cut or padded with spaces to the given width.
+     */
+    private static void appendPadded(StringBuilder sb, String value, int width, boolean alignRight) {
+        if (value == null) {
+            value = "";
+        }
+        int pad = width - value.length();
+        if (alignRight) {
+            for (int i = 0; i < pad; i++) {
+                sb.append(' ');
+            }
+            sb.append(value);
+        } else {
+            sb.append(value, 0, Math.min(width, value.length()));
+            for (int i = 0; i < pad; i++) {
+                sb.append(' ');
+            }
+        }
+    }
+
     protected Map<SshFile.Attribute, Object> getPermissions(int perms) {
         Map<SshFile.Attribute, Object> attrs = new HashMap<SshFile.Attribute, Object>();
         if ((perms & S_IFMT) == S_IFREG) {
@@ -1127,41 +1878,205 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     }
 
     protected void writeAttrs(Buffer buffer, SshFile file, boolean followLinks) throws IOException {
-        if (!file.doesExist()) {
-            throw new FileNotFoundException(file.getAbsolutePath());
+        writeAttrs(buffer, file.getFileAttributes(followLinks));
+    }
+
+    protected void writeAttrs(Buffer buffer, FileAttributes attributes) throws IOException {
+        if (version >= 4) {
+            writeAttrsV4(buffer, attributes);
+            return;
         }
-        Map<SshFile.Attribute, Object> attributes = file.getAttributes(followLinks);
-        boolean isReg = getBool((Boolean) attributes.get(SshFile.Attribute.IsRegularFile));
-        boolean isDir = getBool((Boolean) attributes.get(SshFile.Attribute.IsDirectory));
-        boolean isLnk = getBool((Boolean) attributes.get(SshFile.Attribute.IsSymbolicLink));
+        boolean isReg = attributes.isRegularFile();
+        boolean isDir = attributes.isDirectory();
+        boolean isLnk = attributes.isSymbolicLink();
         int flags = 0;
-        if ((isReg || isLnk) && attributes.containsKey(SshFile.Attribute.Size)) {
+        if ((isReg || isLnk) && attributes.isKnown(SshFile.Attribute.Size)) {
             flags |= SSH_FILEXFER_ATTR_SIZE;
         }
-        if (attributes.containsKey(SshFile.Attribute.Uid) && attributes.containsKey(SshFile.Attribute.Gid)) {
+        if (attributes.isKnown(SshFile.Attribute.Uid) && attributes.isKnown(SshFile.Attribute.Gid)) {
             flags |= SSH_FILEXFER_ATTR_UIDGID;
         }
-        if (attributes.containsKey(SshFile.Attribute.Permissions)) {
+        if (attributes.isKnown(SshFile.Attribute.Permissions)) {
             flags |= SSH_FILEXFER_ATTR_PERMISSIONS;
         }
-        if (attributes.containsKey(SshFile.Attribute.LastAccessTime) && attributes.containsKey(SshFile.Attribute.LastModifiedTime)) {
+        if (attributes.isKnown(SshFile.Attribute.LastAccessTime) && attributes.isKnown(SshFile.Attribute.LastModifiedTime)) {
             flags |= SSH_FILEXFER_ATTR_ACMODTIME;
         }
         buffer.putInt(flags);
         if ((flags & SSH_FILEXFER_ATTR_SIZE) != 0) {
-            buffer.putLong((Long) attributes.get(SshFile.Attribute.Size));
+            buffer.putLong(attributes.getSize());
         }
         if ((flags & SSH_FILEXFER_ATTR_UIDGID) != 0) {
-            buffer.putInt((Integer) attributes.get(SshFile.Attribute.Uid));
-            buffer.putInt((Integer) attributes.get(SshFile.Attribute.Gid));
+            buffer.putInt(attributes.getUid());
+            buffer.putInt(attributes.getGid());
         }
         if ((flags & SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
-            buffer.putInt(getPermissions(attributes));
+            int pf = attributes.getPermissions();
+            pf |= isReg ? S_IFREG : 0;
+            pf |= isDir ? S_IFDIR : 0;
+            pf |= isLnk ? S_IFLNK : 0;
+            buffer.putInt(pf);
         }
         if ((flags & SSH_FILEXFER_ATTR_ACMODTIME) != 0) {
-            buffer.putInt(((Long) attributes.get(SshFile.Attribute.LastAccessTime)) / 1000);
-            buffer.putInt(((Long) attributes.get(SshFile.Attribute.LastModifiedTime)) / 1000);
+            buffer.putInt(attributes.getLastAccessTime() / 1000);
+            buffer.putInt(attributes.getLastModifiedTime() / 1000);
+        }
+    }
+
+    /**
+     * Write attributes as of v4 and later, with the file type always present
+     * and times as 64 bit seconds plus nanoseconds.
+     */
+    protected void writeAttrsV4(Buffer buffer, FileAttributes attributes) throws IOException {
+        boolean isReg = attributes.isRegularFile();
+        boolean isDir = attributes.isDirectory();
+        boolean isLnk = attributes.isSymbolicLink();
+        int flags = 0;
+        if ((isReg || isLnk) && attributes.isKnown(SshFile.Attribute.Size)) {
+            flags |= SSH_FILEXFER_ATTR_SIZE;
+        }
+        if (attributes.getOwner() != null && attributes.getGroup() != null) {
+            flags |= SSH_FILEXFER_ATTR_OWNERGROUP;
+        }
+        if (attributes.isKnown(SshFile.Attribute.Permissions)) {
+            flags |= SSH_FILEXFER_ATTR_PERMISSIONS;
+            if (version >= 5) {
+                flags |= SSH_FILEXFER_ATTR_BITS;
+            }
+        }
+        if (attributes.isKnown(SshFile.Attribute.LastAccessTime)) {
+            flags |= SSH_FILEXFER_ATTR_ACCESSTIME;
+        }
+        if (attributes.isKnown(SshFile.Attribute.CreationTime)) {
+            flags |= SSH_FILEXFER_ATTR_CREATETIME;
+        }
+        if (attributes.isKnown(SshFile.Attribute.LastModifiedTime)) {
+            flags |= SSH_FILEXFER_ATTR_MODIFYTIME;
+        }
+        if ((flags & (SSH_FILEXFER_ATTR_ACCESSTIME | SSH_FILEXFER_ATTR_CREATETIME | SSH_FILEXFER_ATTR_MODIFYTIME)) != 0) {
+            flags |= SSH_FILEXFER_ATTR_SUBSECOND_TIMES;
+        }
+        if (version >= 6 && attributes.isKnown(SshFile.Attribute.NLink)) {
+            flags |= SSH_FILEXFER_ATTR_LINK_COUNT;
+        }
+        buffer.putInt(flags);
+        if (isReg) {
+            buffer.putByte((byte) SSH_FILEXFER_TYPE_REGULAR);
+        } else if (isDir) {
+            buffer.putByte((byte) SSH_FILEXFER_TYPE_DIRECTORY);
+        } else if (isLnk) {
+            buffer.putByte((byte) SSH_FILEXFER_TYPE_SYMLINK);
+        } else if (attributes.isKnown(SshFile.Attribute.IsRegularFile)) {
+            buffer.putByte((byte) SSH_FILEXFER_TYPE_SPECIAL);
+        } else {
+            buffer.putByte((byte) SSH_FILEXFER_TYPE_UNKNOWN);
+        }
+        if ((flags & SSH_FILEXFER_ATTR_SIZE) != 0) {
+            buffer.putLong(attributes.getSize());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_OWNERGROUP) != 0) {
+            buffer.putString(attributes.getOwner());
+            buffer.putString(attributes.getGroup());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
+            int pf = attributes.getPermissions();
+            pf |= isReg ? S_IFREG : 0;
+            pf |= isDir ? S_IFDIR : 0;
+            pf |= isLnk ? S_IFLNK : 0;
+            buffer.putInt(pf);
+        }
+        if ((flags & SSH_FILEXFER_ATTR_ACCESSTIME) != 0) {
+            writeTime(buffer, attributes.getLastAccessTime());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_CREATETIME) != 0) {
+            writeTime(buffer, attributes.getCreationTime());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_MODIFYTIME) != 0) {
+            writeTime(buffer, attributes.getLastModifiedTime());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_BITS) != 0) {
+            boolean readOnly = (attributes.getPermissions() & S_IWUSR) == 0;
+            buffer.putInt(readOnly ? SSH_FILEXFER_ATTR_FLAGS_READONLY : 0);
+            if (version >= 6) {
+                // attrib-bits-valid
+                buffer.putInt(SSH_FILEXFER_ATTR_FLAGS_READONLY);
+            }
+        }
+        if ((flags & SSH_FILEXFER_ATTR_LINK_COUNT) != 0) {
+            buffer.putInt(attributes.getNLink());
+        }
+    }
+
+    private static void writeTime(Buffer buffer, long millis) {
+        buffer.putLong(Math.floorDiv(millis, 1000L));
+        buffer.putInt((int) Math.floorMod(millis, 1000L) * 1000000);
+    }
+
+    private static long readTime(Buffer buffer, int flags) {
+        long millis = buffer.getLong() * 1000L;
+        if ((flags & SSH_FILEXFER_ATTR_SUBSECOND_TIMES) != 0) {
+            millis += (buffer.getInt() & 0xffffffffL) / 1000000;
+        }
+        return millis;
+    }
+
+    /**
+     * Write the attributes of a name with nothing known about the file.
+     */
+    protected void writeEmptyAttrs(Buffer buffer) {
+        buffer.putInt(0);
+        if (version >= 4) {
+            buffer.putByte((byte) SSH_FILEXFER_TYPE_UNKNOWN);
+        }
+    }
+
+    /**
+     * Skip the attributes a client asks for in STAT, LSTAT and FSTAT from v4 on,
+     * all known attributes are sent anyway.
+     */
+    protected void skipAttrFlags(Buffer buffer) {
+        if (version >= 4 && buffer.available() >= 4) {
+            buffer.getInt();
+        }
+    }
+
+    /**
+     * Translate the desired access and flags of a v5 or later open request
+     * into the v3 open flags.
+     * @return the v3 flags or -1 if byte range locks are requested
+     */
+    protected int getOpenFlags(int access, int flags) {
+        if ((flags & (SSH_FXF_BLOCK_READ | SSH_FXF_BLOCK_WRITE | SSH_FXF_BLOCK_DELETE | SSH_FXF_BLOCK_ADVISORY)) != 0) {
+            return -1;
+        }
+        int pflags = 0;
+        if ((access & ACE4_READ_DATA) != 0) {
+            pflags |= SSH_FXF_READ;
+        }
+        if ((access & (ACE4_WRITE_DATA | ACE4_APPEND_DATA)) != 0) {
+            pflags |= SSH_FXF_WRITE;
         }
+        if ((flags & (SSH_FXF_APPEND_DATA | SSH_FXF_APPEND_DATA_ATOMIC)) != 0) {
+            pflags |= SSH_FXF_APPEND;
+        }
+        switch (flags & SSH_FXF_ACCESS_DISPOSITION) {
+            case SSH_FXF_CREATE_NEW:
+                pflags |= SSH_FXF_CREAT | SSH_FXF_EXCL;
+                break;
+            case SSH_FXF_CREATE_TRUNCATE:
+                pflags |= SSH_FXF_CREAT | SSH_FXF_TRUNC;
+                break;
+            case SSH_FXF_OPEN_OR_CREATE:
+                pflags |= SSH_FXF_CREAT;
+                break;
+            case SSH_FXF_TRUNCATE_EXISTING:
+                pflags |= SSH_FXF_TRUNC;
+                break;
+            default:
+                // SSH_FXF_OPEN_EXISTING
+                break;
+        }
+        return pflags;
     }
 
     protected boolean getBool(Boolean bool) {
@@ -1169,6 +2084,9 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
     }
 
     protected Map<SshFile.Attribute, Object> readAttrs(Buffer buffer) throws IOException {
+        if (version >= 4) {
+            return readAttrsV4(buffer);
+        }
         Map<SshFile.Attribute, Object> attrs = new HashMap<SshFile.Attribute, Object>();
         int flags = buffer.getInt();
         if ((flags & SSH_FILEXFER_ATTR_SIZE) != 0) {
@@ -1188,26 +2106,116 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
         return attrs;
     }
 
+    protected Map<SshFile.Attribute, Object> readAttrsV4(Buffer buffer) throws IOException {
+        Map<SshFile.Attribute, Object> attrs = new HashMap<SshFile.Attribute, Object>();
+        int flags = buffer.getInt();
+        // the type can not be changed
+        buffer.getByte();
+        if ((flags & SSH_FILEXFER_ATTR_SIZE) != 0) {
+            attrs.put(SshFile.Attribute.Size, buffer.getLong());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_ALLOCATION_SIZE) != 0) {
+            buffer.getLong();
+        }
+        if ((flags & SSH_FILEXFER_ATTR_OWNERGROUP) != 0) {
+            attrs.put(SshFile.Attribute.Owner, buffer.getString());
+            attrs.put(SshFile.Attribute.Group, buffer.getString());
+        }
+        if ((flags & SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
+            attrs.putAll(getPermissions(buffer.getInt()));
+        }
+        if ((flags & SSH_FILEXFER_ATTR_ACCESSTIME) != 0) {
+            attrs.put(SshFile.Attribute.LastAccessTime, readTime(buffer, flags));
+        }
+        if ((flags & SSH_FILEXFER_ATTR_CREATETIME) != 0) {
+            attrs.put(SshFile.Attribute.CreationTime, readTime(buffer, flags));
+        }
+        if ((flags & SSH_FILEXFER_ATTR_MODIFYTIME) != 0) {
+            attrs.put(SshFile.Attribute.LastModifiedTime, readTime(buffer, flags));
+        }
+        // the rest is read to get past it, none of it can be set
+        if ((flags & SSH_FILEXFER_ATTR_CTIME) != 0) {
+            readTime(buffer, flags);
+        }
+        if ((flags & SSH_FILEXFER_ATTR_ACL) != 0) {
+            buffer.getString();
+        }
+        if ((flags & SSH_FILEXFER_ATTR_BITS) != 0) {
+            buffer.getInt();
+            if (version >= 6) {
+                buffer.getInt();
+            }
+        }
+        if ((flags & SSH_FILEXFER_ATTR_TEXT_HINT) != 0) {
+            buffer.getByte();
+        }
+        if ((flags & SSH_FILEXFER_ATTR_MIME_TYPE) != 0) {
+            buffer.getString();
+        }
+        if ((flags & SSH_FILEXFER_ATTR_LINK_COUNT) != 0) {
+            buffer.getInt();
+        }
+        if ((flags & SSH_FILEXFER_ATTR_UNTRANSLATED_NAME) != 0) {
+            buffer.getString();
+        }
+        return attrs;
+    }
+
     protected void sendStatus(int id, int substatus, String msg) throws IOException {
         sendStatus(id, substatus, msg, "");
     }
 
     protected void sendStatus(int id, int substatus, String msg, String lang) throws IOException {
         log.debug("Send SSH_FXP_STATUS (substatus={}, msg={})", substatus, msg);
-        Buffer buffer = new Buffer();
+        Buffer buffer = createReplyBuffer(0);
         buffer.putByte((byte) SSH_FXP_STATUS);
         buffer.putInt(id);
         buffer.putInt(substatus);
         buffer.putString(msg);
         buffer.putString(lang);
-        send(buffer);
+        sendAndRelease(buffer);
+    }
+
+    /**
+     * Create a pooled buffer for a reply, with room for the length prefix
+     * in front of its content so it can be sent with a single write.
+     */
+    protected Buffer createReplyBuffer(int len) {
+        Buffer buffer = BufferPool.getBuffer(4 + Math.max(len, 0));
+        buffer.rpos(4);
+        buffer.wpos(4);
+        return buffer;
+    }
+
+    protected void sendAndRelease(Buffer buffer) throws IOException {
+        try {
+            send(buffer);
+        } finally {
+            BufferPool.release(buffer);
+        }
     }
 
     protected void send(Buffer buffer) throws IOException {
-        DataOutputStream dos = new DataOutputStream(out);
-        dos.writeInt(buffer.available());
-        dos.write(buffer.array(), buffer.rpos(), buffer.available());
-        dos.flush();
+        int len = buffer.available();
+        // replies may be sent by several worker threads
+        synchronized (out) {
+            if (buffer.rpos() >= 4) {
+                int wpos = buffer.wpos();
+                buffer.wpos(buffer.rpos() - 4);
+                buffer.putInt(len);
+                buffer.wpos(wpos);
+                out.write(buffer.array(), buffer.rpos() - 4, len + 4);
+                out.flush();
+            } else {
+                lengthBytes[0] = (byte) (len >>> 24);
+                lengthBytes[1] = (byte) (len >>> 16);
+                lengthBytes[2] = (byte) (len >>> 8);
+                lengthBytes[3] = (byte) len;
+                out.write(lengthBytes, 0, 4);
+                out.write(buffer.array(), buffer.rpos(), len);
+                out.flush();
+            }
+        }
     }
 
     public void destroy() {
@@ -1248,15 +2256,14 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
 
     /**
-     * Get unix style date string.
+     * Append unix style date string.
      */
-    private final static String getUnixDate(long millis) {
+    private static void appendUnixDate(StringBuilder sb, Calendar cal, long millis) {
         if (millis < 0) {
-            return "------------";
+            sb.append("------------");
+            return;
         }
 
-        StringBuffer sb = new StringBuffer(16);
-        Calendar cal = new GregorianCalendar();
         cal.setTimeInMillis(millis);
 
         // month
@@ -1296,7 +2303,6 @@ public class SftpSubsystem implements Command, Runnable, SessionAware, FileSyste
             }
             sb.append(mm);
         }
-        return sb.toString();
     }
 
 }
@@ -0,0 +1,227 @@
+package org.apache.sshd.common.channel;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.sshd.client.future.OpenFuture;
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+/**
+ * The inbound pipe with a writer thread which, like the peer, does not send more than
+ * the window it has been granted, and a reader which checks every byte.
+ */
+public class ChannelPipedInputStreamTests {
+
+    private static final int PACKET_SIZE = 32 * 1024;
+
+    @Rule
+    public Timeout timeout = Timeout.seconds(30);
+
+    @Test
+    public void ordering() throws Exception {
+        transfer(64 * 1024, 64 * 1024, 16 * 1024 * 1024, 1);
+    }
+
+    @Test
+    public void orderingWithSmallReads() throws Exception {
+        transfer(64 * 1024, 64 * 1024, 4 * 1024 * 1024, 2);
+    }
+
+    @Test
+    public void orderingWhileTheRingGrows() throws Exception {
+        // a window which is not a power of two, doubled up to the limit as the reader keeps up
+        Window window = transfer(48 * 1024, 1024 * 1024, 16 * 1024 * 1024, 3);
+        Assert.assertTrue(window.getMaxSize() > 48 * 1024);
+    }
+
+    @Test
+    public void moreThanTheWindowIsRejected() throws Exception {
+        ChannelPipedInputStream pipe = new ChannelPipedInputStream(window(1024, 1024, null));
+        pipe.receive(new byte[1024], 0, 1024);
+        try {
+            pipe.receive(new byte[1], 0, 1);
+            Assert.fail("data beyond the window must be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void dataBeforeEof() throws Exception {
+        ChannelPipedInputStream pipe = new ChannelPipedInputStream(window(1024, 1024, null));
+        pipe.receive(new byte[] { 1, 2, 3 }, 0, 3);
+        pipe.eof();
+        Assert.assertEquals(3, pipe.available());
+        byte[] b = new byte[8];
+        Assert.assertEquals(3, pipe.read(b, 0, b.length));
+        Assert.assertEquals(3, b[2]);
+        Assert.assertEquals(-1, pipe.read(b, 0, b.length));
+        Assert.assertEquals(-1, pipe.available());
+    }
+
+    @Test
+    public void eofWakesUpTheReader() throws Exception {
+        final ChannelPipedInputStream pipe = new ChannelPipedInputStream(window(1024, 1024, null));
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                pipe.eof();
+            }
+        }.start();
+        Assert.assertEquals(-1, pipe.read());
+    }
+
+    @Test(expected = SocketException.class)
+    public void readTimeout() throws Exception {
+        ChannelPipedInputStream pipe = new ChannelPipedInputStream(window(1024, 1024, null));
+        pipe.setTimeout(50);
+        pipe.read();
+    }
+
+    @Test
+    public void closedPipe() throws Exception {
+        ChannelPipedInputStream pipe = new ChannelPipedInputStream(window(1024, 1024, null));
+        pipe.close();
+        try {
+            pipe.read();
+            Assert.fail("reading a closed pipe must fail");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            pipe.receive(new byte[1], 0, 1);
+            Assert.fail("writing a closed pipe must fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Sends length bytes through the pipe in chunks of random sizes while another thread
+     * reads them in reads of random sizes.
+     */
+    private static Window transfer(int windowSize, int maxWindowSize, final int length, long seed) throws Exception {
+        // the credit of the writer, given back by the window adjustments of the reader
+        final Semaphore credit = new Semaphore(windowSize);
+        Window window = window(windowSize, maxWindowSize, credit);
+        final ChannelPipedInputStream pipe = new ChannelPipedInputStream(window);
+        final Random writes = new Random(seed);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread writer = new Thread("writer") {
+            @Override
+            public void run() {
+                try {
+                    byte[] chunk = new byte[PACKET_SIZE];
+                    for (int pos = 0; pos < length; ) {
+                        int len = Math.min(length - pos, 1 + writes.nextInt(PACKET_SIZE));
+                        credit.acquire(len);
+                        for (int i = 0; i < len; i++) {
+                            chunk[i] = valueAt(pos + i);
+                        }
+                        pipe.receive(chunk, 0, len);
+                        pos += len;
+                    }
+                    pipe.eof();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        writer.start();
+
+        Random reads = new Random(~seed);
+        byte[] b = new byte[PACKET_SIZE];
+        int pos = 0;
+        try {
+            for (;;) {
+                int n = pipe.read(b, 0, 1 + reads.nextInt(b.length));
+                if (n < 0) {
+                    break;
+                }
+                Assert.assertTrue(n > 0);
+                for (int i = 0; i < n; i++) {
+                    if (b[i] != valueAt(pos + i)) {
+                        Assert.fail("wrong byte at " + (pos + i));
+                    }
+                }
+                pos += n;
+            }
+        } finally {
+            writer.interrupt();
+            writer.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(length, pos);
+        return window;
+    }
+
+    /**
+     * Depends on every byte of the position, so that data read twice, skipped or taken
+     * from an old ring is noticed.
+     */
+    private static byte valueAt(int pos) {
+        return (byte) (pos ^ (pos >>> 8) ^ (pos >>> 16) ^ (pos >>> 24));
+    }
+
+    private static Window window(int size, int maxSize, final Semaphore credit) {
+        Window window = new Window(new WindowAdjustChannel(credit), null, false, true);
+        window.init(size, PACKET_SIZE, maxSize);
+        return window;
+    }
+
+    /**
+     * Returns the window adjustments to the writer instead of sending them to the peer.
+     */
+    private static class WindowAdjustChannel extends AbstractChannel {
+
+        private final Semaphore credit;
+
+        WindowAdjustChannel(Semaphore credit) {
+            this.credit = credit;
+        }
+
+        @Override
+        protected void sendWindowAdjust(int len) {
+            if (credit != null) {
+                credit.release(len);
+            }
+        }
+
+        public OpenFuture open(int recipient, int rwsize, int rmpsize, Buffer buffer) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void handleOpenSuccess(int recipient, int rwsize, int rmpsize, Buffer buffer) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void handleOpenFailure(Buffer buffer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void doWriteData(byte[] data, int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void doWriteExtendedData(byte[] data, int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
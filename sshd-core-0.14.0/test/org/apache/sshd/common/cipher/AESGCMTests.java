@@ -0,0 +1,142 @@
+package org.apache.sshd.common.cipher;
+
+import java.util.Arrays;
+
+import org.apache.sshd.common.Cipher;
+import org.apache.sshd.util.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test cases 4 and 16 of the GCM specification, the nonce is incremented per packet as
+ * described in RFC 5647.
+ */
+public class AESGCMTests {
+
+    private static final byte[] KEY = Hex.decode("feffe9928665731c6d6a8f9467308308");
+    private static final byte[] IV = Hex.decode("cafebabefacedbaddecaf888");
+    private static final byte[] PLAIN = Hex.decode(
+            "d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a72"
+            + "1c3c0c95956809532fcf0e2449a6b525b16aedf5aa0de657ba637b39");
+    private static final byte[] AAD = Hex.decode("feedfacedeadbeeffeedfacedeadbeefabaddad2");
+
+    private static final byte[] AES128_SEALED = Hex.decode(
+            "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e"
+            + "21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091"
+            + "5bc94fbc3221a5db94fae95ae7121a47");
+    private static final byte[] AES256_SEALED = Hex.decode(
+            "522dc1f099567d07f47f37a32a84427d643a8cdcbfe5c0c97598a2bd2555d1aa"
+            + "8cb08e48590dbb3da7b08b1056828838c5f61e6393ba7a0abcc9f662"
+            + "76fc6ece0f4e1768cddf8853bb2d551b");
+    // same key and data, nonce ending with ...889
+    private static final byte[] AES128_SEALED_NEXT = Hex.decode(
+            "5c21c68aa9787c7294b2d7a47a6e8e4d8adafeea894bf504323d55f62afe5ba1"
+            + "18a028444d260b032d4936a7a62acedcb095f614fed4092166b3c89f"
+            + "35e01666702558531db8000edaa9c9ce");
+
+    @Test
+    public void aes128Encrypt() throws Exception {
+        Cipher cipher = new AES128GCM();
+        cipher.init(Cipher.Mode.Encrypt, KEY, IV);
+        Assert.assertArrayEquals(AES128_SEALED, seal(cipher, AAD, PLAIN));
+    }
+
+    @Test
+    public void aes128Decrypt() throws Exception {
+        Cipher cipher = new AES128GCM();
+        cipher.init(Cipher.Mode.Decrypt, KEY, IV);
+        Assert.assertArrayEquals(PLAIN, open(cipher, AAD, AES128_SEALED));
+    }
+
+    @Test
+    public void aes256Encrypt() throws Exception {
+        Cipher cipher = new AES256GCM();
+        cipher.init(Cipher.Mode.Encrypt, Hex.concat(KEY, KEY), IV);
+        Assert.assertArrayEquals(AES256_SEALED, seal(cipher, AAD, PLAIN));
+    }
+
+    @Test
+    public void aes256Decrypt() throws Exception {
+        Cipher cipher = new AES256GCM();
+        cipher.init(Cipher.Mode.Decrypt, Hex.concat(KEY, KEY), IV);
+        Assert.assertArrayEquals(PLAIN, open(cipher, AAD, AES256_SEALED));
+    }
+
+    @Test
+    public void keyAndIvAreCut() throws Exception {
+        // key exchange derives longer keys than needed
+        Cipher cipher = new AES128GCM();
+        cipher.init(Cipher.Mode.Encrypt, Hex.concat(KEY, new byte[16]), Hex.concat(IV, new byte[8]));
+        Assert.assertArrayEquals(AES128_SEALED, seal(cipher, AAD, PLAIN));
+    }
+
+    @Test
+    public void nonceIncrementedPerPacket() throws Exception {
+        Cipher encrypt = new AES128GCM();
+        encrypt.init(Cipher.Mode.Encrypt, KEY, IV);
+        Cipher decrypt = new AES128GCM();
+        decrypt.init(Cipher.Mode.Decrypt, KEY, IV);
+
+        Assert.assertArrayEquals(AES128_SEALED, seal(encrypt, AAD, PLAIN));
+        Assert.assertArrayEquals(AES128_SEALED_NEXT, seal(encrypt, AAD, PLAIN));
+        Assert.assertArrayEquals(PLAIN, open(decrypt, AAD, AES128_SEALED));
+        Assert.assertArrayEquals(PLAIN, open(decrypt, AAD, AES128_SEALED_NEXT));
+    }
+
+    @Test
+    public void invocationCounterWraps() throws Exception {
+        // only the last 8 bytes of the nonce are counted, the fixed field is kept
+        byte[] aad = Hex.decode("00000010");
+        byte[] plain = Arrays.copyOf(PLAIN, 16);
+        Cipher cipher = new AES128GCM();
+        cipher.init(Cipher.Mode.Encrypt, KEY, Hex.decode("cafebabeffffffffffffffff"));
+
+        Assert.assertArrayEquals(Hex.decode("10c6a4b1875f49f3a8a75c49b698927128cd2a4b8183fa0d732643d404467cc1"),
+                seal(cipher, aad, plain));
+        Assert.assertArrayEquals(Hex.decode("b73adda300c40642eb6158f90f08d7fbbbac57982d4310dc7c6a73929f451bd0"),
+                seal(cipher, aad, plain));
+    }
+
+    @Test(expected = javax.crypto.AEADBadTagException.class)
+    public void tamperedPacketIsRejected() throws Exception {
+        byte[] sealed = AES128_SEALED.clone();
+        sealed[3] ^= 1;
+        Cipher cipher = new AES128GCM();
+        cipher.init(Cipher.Mode.Decrypt, KEY, IV);
+        open(cipher, AAD, sealed);
+    }
+
+    @Test(expected = javax.crypto.AEADBadTagException.class)
+    public void tamperedLengthIsRejected() throws Exception {
+        byte[] aad = AAD.clone();
+        aad[0] ^= 1;
+        Cipher cipher = new AES128GCM();
+        cipher.init(Cipher.Mode.Decrypt, KEY, IV);
+        open(cipher, aad, AES128_SEALED);
+    }
+
+    @Test
+    public void sizes() {
+        Cipher cipher = new AES256GCM();
+        Assert.assertEquals(12, cipher.getIVSize());
+        Assert.assertEquals(32, cipher.getBlockSize());
+        Assert.assertEquals(16, cipher.getCipherBlockSize());
+        Assert.assertEquals(16, cipher.getAuthenticationTagSize());
+    }
+
+    private static byte[] seal(Cipher cipher, byte[] aad, byte[] plain) throws Exception {
+        byte[] data = Arrays.copyOf(plain, plain.length + cipher.getAuthenticationTagSize());
+        cipher.updateAAD(aad, 0, aad.length);
+        cipher.update(data, 0, plain.length);
+        return data;
+    }
+
+    private static byte[] open(Cipher cipher, byte[] aad, byte[] sealed) throws Exception {
+        byte[] data = sealed.clone();
+        int length = data.length - cipher.getAuthenticationTagSize();
+        cipher.updateAAD(aad, 0, aad.length);
+        cipher.update(data, 0, length);
+        return Arrays.copyOf(data, length);
+    }
+
+}
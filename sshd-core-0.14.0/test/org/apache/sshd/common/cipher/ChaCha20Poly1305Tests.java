@@ -0,0 +1,104 @@
+package org.apache.sshd.common.cipher;
+
+import java.util.Arrays;
+
+import org.apache.sshd.common.Cipher;
+import org.apache.sshd.util.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Packets sealed as described in PROTOCOL.chacha20poly1305 of OpenSSH, the expected
+ * values are computed with an independent implementation of ChaCha20 and Poly1305.
+ */
+public class ChaCha20Poly1305Tests {
+
+    private static final byte[] KEY = Hex.decode(
+            "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f"
+            + "202122232425262728292a2b2c2d2e2f303132333435363738393a3b3c3d3e3f");
+    private static final byte[] LENGTH = Hex.decode("0000001c");
+    private static final byte[] PAYLOAD = Hex.decode("101112131415161718191a1b1c1d1e1f202122232425262728292a2b");
+
+    private static final long SEQ = 7;
+    private static final byte[] SEALED_LENGTH = Hex.decode("a39afcb6");
+    private static final byte[] SEALED = Hex.decode(
+            "385707505a963c497474a1ebcb92cd33149312155ac61ba4684331f4b305935b"
+            + "ebcb58957e4a47eb2585ecdf");
+
+    private static final long LARGE_SEQ = 0x0102030405060708L;
+    private static final byte[] LARGE_SEQ_SEALED_LENGTH = Hex.decode("e0eaa32c");
+    private static final byte[] LARGE_SEQ_SEALED = Hex.decode(
+            "fff7b7ebb199be8b08a6f2cd96f13941b5ad467238680e3b33fc1ec9c923c53c"
+            + "bc5bebab38202c2ea6a81ae8");
+
+    @Test
+    public void encrypt() throws Exception {
+        Cipher cipher = new ChaCha20Poly1305();
+        cipher.init(Cipher.Mode.Encrypt, KEY, null);
+        assertSealed(cipher, SEQ, SEALED_LENGTH, SEALED);
+        assertSealed(cipher, LARGE_SEQ, LARGE_SEQ_SEALED_LENGTH, LARGE_SEQ_SEALED);
+    }
+
+    @Test
+    public void decrypt() throws Exception {
+        Cipher cipher = new ChaCha20Poly1305();
+        cipher.init(Cipher.Mode.Decrypt, KEY, null);
+        assertOpened(cipher, SEQ, SEALED_LENGTH, SEALED);
+        assertOpened(cipher, LARGE_SEQ, LARGE_SEQ_SEALED_LENGTH, LARGE_SEQ_SEALED);
+    }
+
+    @Test(expected = javax.crypto.AEADBadTagException.class)
+    public void tamperedPayloadIsRejected() throws Exception {
+        byte[] sealed = SEALED.clone();
+        sealed[0] ^= 1;
+        Cipher cipher = new ChaCha20Poly1305();
+        cipher.init(Cipher.Mode.Decrypt, KEY, null);
+        assertOpened(cipher, SEQ, SEALED_LENGTH, sealed);
+    }
+
+    @Test(expected = javax.crypto.AEADBadTagException.class)
+    public void tamperedLengthIsRejected() throws Exception {
+        byte[] length = SEALED_LENGTH.clone();
+        length[3] ^= 1;
+        Cipher cipher = new ChaCha20Poly1305();
+        cipher.init(Cipher.Mode.Decrypt, KEY, null);
+        assertOpened(cipher, SEQ, length, SEALED);
+    }
+
+    @Test(expected = javax.crypto.AEADBadTagException.class)
+    public void wrongSequenceNumberIsRejected() throws Exception {
+        Cipher cipher = new ChaCha20Poly1305();
+        cipher.init(Cipher.Mode.Decrypt, KEY, null);
+        assertOpened(cipher, SEQ + 1, SEALED_LENGTH, SEALED);
+    }
+
+    @Test
+    public void sizes() {
+        Cipher cipher = new ChaCha20Poly1305();
+        Assert.assertEquals(0, cipher.getIVSize());
+        Assert.assertEquals(64, cipher.getBlockSize());
+        Assert.assertEquals(8, cipher.getCipherBlockSize());
+        Assert.assertEquals(16, cipher.getAuthenticationTagSize());
+    }
+
+    private static void assertSealed(Cipher cipher, long seq, byte[] sealedLength, byte[] sealed) throws Exception {
+        byte[] length = LENGTH.clone();
+        byte[] data = Arrays.copyOf(PAYLOAD, PAYLOAD.length + cipher.getAuthenticationTagSize());
+        cipher.setSequenceNumber(seq);
+        cipher.updateAAD(length, 0, length.length);
+        cipher.update(data, 0, PAYLOAD.length);
+        Assert.assertArrayEquals(sealedLength, length);
+        Assert.assertArrayEquals(sealed, data);
+    }
+
+    private static void assertOpened(Cipher cipher, long seq, byte[] sealedLength, byte[] sealed) throws Exception {
+        byte[] length = sealedLength.clone();
+        byte[] data = sealed.clone();
+        cipher.setSequenceNumber(seq);
+        cipher.updateAAD(length, 0, length.length);
+        cipher.update(data, 0, data.length - cipher.getAuthenticationTagSize());
+        Assert.assertArrayEquals(LENGTH, length);
+        Assert.assertArrayEquals(PAYLOAD, Arrays.copyOf(data, PAYLOAD.length));
+    }
+
+}
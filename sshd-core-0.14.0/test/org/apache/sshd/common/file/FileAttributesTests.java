@@ -0,0 +1,86 @@
+package org.apache.sshd.common.file;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FileAttributesTests {
+
+    @Test
+    public void fromMap() {
+        Map<SshFile.Attribute, Object> map = new HashMap<SshFile.Attribute, Object>();
+        map.put(SshFile.Attribute.Size, 1234L);
+        map.put(SshFile.Attribute.Uid, 1000);
+        map.put(SshFile.Attribute.Owner, "owner");
+        map.put(SshFile.Attribute.Gid, 100);
+        map.put(SshFile.Attribute.Group, "group");
+        map.put(SshFile.Attribute.IsDirectory, false);
+        map.put(SshFile.Attribute.IsRegularFile, true);
+        map.put(SshFile.Attribute.IsSymbolicLink, false);
+        map.put(SshFile.Attribute.Permissions, EnumSet.of(SshFile.Permission.UserRead, SshFile.Permission.UserWrite,
+                SshFile.Permission.GroupRead, SshFile.Permission.OthersRead));
+        map.put(SshFile.Attribute.CreationTime, 1000L);
+        map.put(SshFile.Attribute.LastModifiedTime, 2000L);
+        map.put(SshFile.Attribute.LastAccessTime, 3000L);
+        map.put(SshFile.Attribute.NLink, 2);
+
+        FileAttributes attributes = FileAttributes.fromMap(map);
+        for (SshFile.Attribute attribute : map.keySet()) {
+            Assert.assertTrue(attribute.name(), attributes.isKnown(attribute));
+        }
+        Assert.assertEquals(1234L, attributes.getSize());
+        Assert.assertEquals(1000, attributes.getUid());
+        Assert.assertEquals("owner", attributes.getOwner());
+        Assert.assertEquals(100, attributes.getGid());
+        Assert.assertEquals("group", attributes.getGroup());
+        Assert.assertFalse(attributes.isDirectory());
+        Assert.assertTrue(attributes.isRegularFile());
+        Assert.assertFalse(attributes.isSymbolicLink());
+        Assert.assertEquals(0644, attributes.getPermissions());
+        Assert.assertEquals(1000L, attributes.getCreationTime());
+        Assert.assertEquals(2000L, attributes.getLastModifiedTime());
+        Assert.assertEquals(3000L, attributes.getLastAccessTime());
+        Assert.assertEquals(2, attributes.getNLink());
+    }
+
+    @Test
+    public void missingValuesAreUnknown() {
+        Map<SshFile.Attribute, Object> map = new HashMap<SshFile.Attribute, Object>();
+        map.put(SshFile.Attribute.Size, 0L);
+        map.put(SshFile.Attribute.Owner, null);
+
+        FileAttributes attributes = FileAttributes.fromMap(map);
+        Assert.assertTrue(attributes.isKnown(SshFile.Attribute.Size));
+        Assert.assertFalse(attributes.isKnown(SshFile.Attribute.Owner));
+        Assert.assertFalse(attributes.isKnown(SshFile.Attribute.Permissions));
+
+        attributes = FileAttributes.fromMap(null);
+        for (SshFile.Attribute attribute : SshFile.Attribute.values()) {
+            Assert.assertFalse(attribute.name(), attributes.isKnown(attribute));
+        }
+    }
+
+    @Test
+    public void setters() {
+        FileAttributes attributes = new FileAttributes().setSize(0).setDirectory(true).setPermissions(0);
+        Assert.assertTrue(attributes.isKnown(SshFile.Attribute.Size));
+        Assert.assertTrue(attributes.isKnown(SshFile.Attribute.IsDirectory));
+        Assert.assertTrue(attributes.isKnown(SshFile.Attribute.Permissions));
+        Assert.assertFalse(attributes.isKnown(SshFile.Attribute.IsRegularFile));
+        Assert.assertTrue(attributes.isDirectory());
+    }
+
+    @Test
+    public void permissionBits() {
+        Assert.assertEquals(0, FileAttributes.toPermissionBits(EnumSet.noneOf(SshFile.Permission.class)));
+        Assert.assertEquals(0777, FileAttributes.toPermissionBits(EnumSet.allOf(SshFile.Permission.class)));
+        Assert.assertEquals(0751, FileAttributes.toPermissionBits(EnumSet.of(
+                SshFile.Permission.UserRead, SshFile.Permission.UserWrite, SshFile.Permission.UserExecute,
+                SshFile.Permission.GroupRead, SshFile.Permission.GroupExecute,
+                SshFile.Permission.OthersExecute)));
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.apache.sshd.common.kex;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPrivateKeySpec;
+import java.security.spec.ECPublicKeySpec;
+
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.Signature;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.server.kex.Curve25519SHA256;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.util.BogusIoSession;
+import org.apache.sshd.util.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Known answers for curve25519-sha256, the key agreement from RFC 7748 section 6.1
+ * and the exchange hash of RFC 8731 computed independently for fixed inputs.
+ */
+public class Curve25519Tests {
+
+    private static final byte[] ALICE_PRIVATE = Hex.decode(
+            "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+    private static final byte[] ALICE_PUBLIC = Hex.decode(
+            "8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a");
+    private static final byte[] BOB_PRIVATE = Hex.decode(
+            "5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb");
+    private static final byte[] BOB_PUBLIC = Hex.decode(
+            "de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f");
+    private static final byte[] SHARED = Hex.decode(
+            "4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742");
+
+    private static final byte[] V_C = "SSH-2.0-client".getBytes();
+    private static final byte[] V_S = "SSH-2.0-server".getBytes();
+    private static final byte[] I_C = "client kexinit".getBytes();
+    private static final byte[] I_S = "server kexinit".getBytes();
+    // sha256 over V_C, V_S, I_C, I_S, K_S, Q_C, Q_S, K with a nistp256 host key whose public point is G
+    private static final byte[] H = Hex.decode(
+            "79152ff0d7f13590f58dd812a95556a08e13a06697a7478e4687f6d30ccbab3c");
+
+    @Test
+    public void agreement() throws Exception {
+        Curve25519 alice = new Curve25519(ALICE_PRIVATE);
+        Curve25519 bob = new Curve25519(BOB_PRIVATE);
+        Assert.assertArrayEquals(ALICE_PUBLIC, alice.getE());
+        Assert.assertArrayEquals(BOB_PUBLIC, bob.getE());
+        alice.setF(bob.getE());
+        bob.setF(alice.getE());
+        Assert.assertArrayEquals(SHARED, alice.getK());
+        Assert.assertArrayEquals(SHARED, bob.getK());
+    }
+
+    @Test
+    public void randomKeysAgree() throws Exception {
+        Curve25519 alice = new Curve25519();
+        Curve25519 bob = new Curve25519();
+        Assert.assertEquals(32, alice.getE().length);
+        alice.setF(bob.getE());
+        bob.setF(alice.getE());
+        Assert.assertArrayEquals(alice.getK(), bob.getK());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPublicKeyLength() throws Exception {
+        new Curve25519().setF(new byte[31]);
+    }
+
+    @Test
+    public void serverExchange() throws Exception {
+        FixedSession session = new FixedSession();
+        Curve25519SHA256 kex = new Curve25519SHA256() {
+            @Override
+            protected AbstractDH getDH() {
+                return new Curve25519(BOB_PRIVATE);
+            }
+        };
+        kex.init(session, V_S, V_C, I_S, I_C);
+
+        Buffer init = new Buffer();
+        init.putByte(SshConstants.SSH_MSG_KEXDH_INIT);
+        init.putBytes(ALICE_PUBLIC);
+        Assert.assertTrue(kex.next(init));
+        Assert.assertArrayEquals(SHARED, kex.getK());
+        Assert.assertArrayEquals(H, kex.getH());
+
+        Buffer reply = session.reply;
+        Assert.assertEquals(SshConstants.SSH_MSG_KEXDH_REPLY, reply.getByte());
+        reply.getBytes();
+        Assert.assertArrayEquals(BOB_PUBLIC, reply.getBytes());
+        byte[] sigH = reply.getBytes();
+        Assert.assertEquals(0, reply.available());
+
+        Signature verifier = NamedFactory.Utils.create(session.getFactoryManager().getSignatureFactories(),
+                FixedSession.HOST_KEY_ALGORITHM);
+        verifier.init(session.getHostKey().getPublic(), null);
+        verifier.update(H, 0, H.length);
+        Assert.assertTrue(verifier.verify(sigH));
+    }
+
+    /**
+     * A session which has negotiated a nistp256 host key, the one with private scalar 1,
+     * and keeps the packet written by the key exchange.
+     */
+    private static class FixedSession extends ServerSession {
+
+        static final String HOST_KEY_ALGORITHM = "ecdsa-sha2-nistp256";
+
+        private final KeyPair hostKey;
+        Buffer reply;
+
+        FixedSession() throws Exception {
+            super(SshServer.setUpDefaultServer(), new BogusIoSession());
+            negotiated = new String[SshConstants.PROPOSAL_MAX];
+            negotiated[SshConstants.PROPOSAL_SERVER_HOST_KEY_ALGS] = HOST_KEY_ALGORITHM;
+
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            ECParameterSpec spec = parameters.getParameterSpec(ECParameterSpec.class);
+            KeyFactory factory = KeyFactory.getInstance("EC");
+            hostKey = new KeyPair(
+                    factory.generatePublic(new ECPublicKeySpec(spec.getGenerator(), spec)),
+                    factory.generatePrivate(new ECPrivateKeySpec(BigInteger.ONE, spec)));
+        }
+
+        @Override
+        public KeyPair getHostKey() {
+            return hostKey;
+        }
+
+        @Override
+        public IoWriteFuture writePacket(Buffer buffer) {
+            reply = buffer;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.apache.sshd.common.mac;
+
+import org.apache.sshd.common.Mac;
+import org.apache.sshd.util.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test case 2 of RFC 4231, the etm variants compute the same HMAC over other data.
+ */
+public class HMACSHA2ETMTests {
+
+    private static final byte[] KEY = Hex.decode("4a656665"); // "Jefe"
+    private static final byte[] DATA = Hex.decode(
+            "7768617420646f2079612077616e7420666f72206e6f7468696e673f"); // "what do ya want for nothing?"
+
+    @Test
+    public void hmacSha256Etm() throws Exception {
+        Mac mac = new HMACSHA256ETM();
+        Assert.assertTrue(mac.isEncryptThenMac());
+        Assert.assertEquals(32, mac.getBlockSize());
+        Assert.assertArrayEquals(
+                Hex.decode("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843"),
+                compute(mac, KEY, DATA));
+    }
+
+    @Test
+    public void hmacSha512Etm() throws Exception {
+        Mac mac = new HMACSHA512ETM();
+        Assert.assertTrue(mac.isEncryptThenMac());
+        Assert.assertEquals(64, mac.getBlockSize());
+        Assert.assertArrayEquals(
+                Hex.decode("164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea250554"
+                        + "9758bf75c05a994a6d034f65f8f0e6fdcaeab1a34d4a6b4b636e070a38bce737"),
+                compute(mac, KEY, DATA));
+    }
+
+    @Test
+    public void plainMacsAreNotEtm() {
+        Assert.assertFalse(new HMACSHA256().isEncryptThenMac());
+        Assert.assertFalse(new HMACSHA512().isEncryptThenMac());
+    }
+
+    @Test
+    public void reusedAfterDoFinal() throws Exception {
+        // one instance computes the mac of every packet
+        Mac mac = new HMACSHA256ETM();
+        byte[] first = compute(mac, KEY, DATA);
+        byte[] second = new byte[mac.getBlockSize()];
+        mac.update(DATA, 0, DATA.length);
+        mac.doFinal(second, 0);
+        Assert.assertArrayEquals(first, second);
+    }
+
+    private static byte[] compute(Mac mac, byte[] key, byte[] data) throws Exception {
+        byte[] result = new byte[mac.getBlockSize()];
+        mac.init(key);
+        mac.update(data, 0, data.length);
+        mac.doFinal(result, 0);
+        return result;
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.apache.sshd.common.session;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.Cipher;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.SshException;
+import org.apache.sshd.common.cipher.AES128CTR;
+import org.apache.sshd.common.mac.HMACSHA256ETM;
+import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.util.BogusIoSession;
+import org.apache.sshd.util.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Packet layout with encrypt-then-mac: the length is sent in plain, the mac covers the
+ * sequence number, the length and the encrypted packet.
+ */
+public class EncryptThenMacTests {
+
+    private static final byte[] CIPHER_KEY = Hex.decode("000102030405060708090a0b0c0d0e0f");
+    private static final byte[] IV = Hex.decode("f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff");
+    private static final byte[] MAC_KEY = Hex.decode(
+            "202122232425262728292a2b2c2d2e2f303132333435363738393a3b3c3d3e3f");
+    private static final long SEQ = 5;
+
+    @Test
+    public void encode() throws Exception {
+        byte[] packet = send("etm");
+        int length = new Buffer(packet).getInt();
+        Assert.assertEquals(0, length % 16);
+        Assert.assertEquals(4 + length + 32, packet.length);
+
+        javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(MAC_KEY, "HmacSHA256"));
+        mac.update(Hex.decode("00000005"));
+        mac.update(packet, 0, 4 + length);
+        Assert.assertArrayEquals(mac.doFinal(), Arrays.copyOfRange(packet, 4 + length, packet.length));
+
+        javax.crypto.Cipher cipher = javax.crypto.Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(javax.crypto.Cipher.DECRYPT_MODE, new SecretKeySpec(CIPHER_KEY, "AES"), new IvParameterSpec(IV));
+        Buffer plain = new Buffer(cipher.doFinal(packet, 4, length));
+        int pad = plain.getByte();
+        Assert.assertTrue(pad >= 4);
+        Assert.assertEquals(SshConstants.SSH_MSG_IGNORE, plain.getByte());
+        Assert.assertEquals("etm", plain.getString());
+        Assert.assertEquals(pad, plain.available());
+    }
+
+    @Test
+    public void decode() throws Exception {
+        AbstractSession session = newReceiver();
+        session.messageReceived(new Buffer(send("etm")));
+        Assert.assertEquals(SEQ + 1, session.seqi);
+        Assert.assertEquals(0, session.decoderState);
+    }
+
+    @Test
+    public void tamperedPacketIsRejected() throws Exception {
+        byte[] packet = send("etm");
+        packet[6] ^= 1;
+        try {
+            newReceiver().messageReceived(new Buffer(packet));
+            Assert.fail("mac error expected");
+        } catch (SshException e) {
+            Assert.assertEquals(SshConstants.SSH2_DISCONNECT_MAC_ERROR, e.getDisconnectCode());
+        }
+    }
+
+    @Test
+    public void tamperedLengthIsRejected() throws Exception {
+        byte[] packet = send("etm with a longer payload");
+        // still a valid length, the mac must not match
+        packet[3] -= 16;
+        try {
+            AbstractSession session = newReceiver();
+            session.messageReceived(new Buffer(packet));
+            Assert.fail("mac error expected");
+        } catch (SshException e) {
+            Assert.assertEquals(SshConstants.SSH2_DISCONNECT_MAC_ERROR, e.getDisconnectCode());
+        }
+    }
+
+    private static byte[] send(String data) throws Exception {
+        BogusIoSession ioSession = new BogusIoSession();
+        AbstractSession session = new ServerSession(SshServer.setUpDefaultServer(), ioSession);
+        session.outCipher = new AES128CTR();
+        session.outCipher.init(Cipher.Mode.Encrypt, CIPHER_KEY, IV);
+        session.outCipherSize = session.outCipher.getCipherBlockSize();
+        session.outMac = new HMACSHA256ETM();
+        session.outMac.init(MAC_KEY);
+        session.outEtm = true;
+        session.seqo = SEQ;
+
+        Buffer buffer = session.createBuffer(SshConstants.SSH_MSG_IGNORE);
+        buffer.putString(data);
+        session.writePacket(buffer);
+        List<byte[]> written = ioSession.getWritten();
+        // the identification is sent first
+        Assert.assertEquals(2, written.size());
+        return written.get(1);
+    }
+
+    private static AbstractSession newReceiver() throws Exception {
+        AbstractSession session = new ServerSession(SshServer.setUpDefaultServer(), new BogusIoSession());
+        session.clientVersion = "SSH-2.0-test";
+        session.inCipher = new AES128CTR();
+        session.inCipher.init(Cipher.Mode.Decrypt, CIPHER_KEY, IV);
+        session.inCipherSize = session.inCipher.getCipherBlockSize();
+        session.inMac = new HMACSHA256ETM();
+        session.inMac.init(MAC_KEY);
+        session.inMacResult = new byte[session.inMac.getBlockSize()];
+        session.inEtm = true;
+        session.seqi = SEQ;
+        return session;
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.apache.sshd.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTests {
+
+    @Test
+    public void sizeClasses() {
+        Assert.assertEquals(Buffer.DEFAULT_SIZE, BufferPool.getArray(1).length);
+        Assert.assertEquals(Buffer.DEFAULT_SIZE, BufferPool.getArray(Buffer.DEFAULT_SIZE).length);
+        Assert.assertEquals(512, BufferPool.getArray(Buffer.DEFAULT_SIZE + 1).length);
+        Assert.assertEquals(32 * 1024, BufferPool.getArray(20000).length);
+        Assert.assertEquals(BufferPool.MAX_POOLED_SIZE, BufferPool.getArray(BufferPool.MAX_POOLED_SIZE).length);
+        Assert.assertEquals(BufferPool.MAX_POOLED_SIZE + 1, BufferPool.getArray(BufferPool.MAX_POOLED_SIZE + 1).length);
+    }
+
+    @Test
+    public void releasedArrayIsReused() {
+        byte[] data = new byte[64 * 1024];
+        BufferPool.release(data);
+        Assert.assertSame(data, BufferPool.getArray(40000));
+    }
+
+    @Test
+    public void releasedBufferIsReused() {
+        Buffer buffer = BufferPool.getBuffer(3000);
+        Assert.assertEquals(0, buffer.wpos());
+        Assert.assertEquals(4096, buffer.capacity());
+        byte[] data = buffer.array();
+        BufferPool.release(buffer);
+        Assert.assertSame(data, BufferPool.getBuffer(2049).array());
+    }
+
+    @Test
+    public void otherArraysAreNotPooled() {
+        byte[] odd = new byte[1000];
+        BufferPool.release(odd);
+        Assert.assertNotSame(odd, BufferPool.getArray(1000));
+        Assert.assertNotSame(odd, BufferPool.getArray(1024));
+
+        byte[] small = new byte[128];
+        BufferPool.release(small);
+        Assert.assertNotSame(small, BufferPool.getArray(128));
+
+        byte[] large = new byte[BufferPool.MAX_POOLED_SIZE * 2];
+        BufferPool.release(large);
+        Assert.assertNotSame(large, BufferPool.getArray(large.length));
+
+        BufferPool.release((byte[]) null);
+        BufferPool.release((Buffer) null);
+    }
+
+    @Test
+    public void poolSizeIsBounded() {
+        int size = BufferPool.MAX_POOLED_SIZE;
+        int max = BufferPool.MAX_POOLED_BYTES_PER_CLASS / size;
+        // empty the size class
+        for (int i = 0; i < max; i++) {
+            BufferPool.getArray(size);
+        }
+        Set<byte[]> released = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        for (int i = 0; i < max * 2; i++) {
+            byte[] data = new byte[size];
+            released.add(data);
+            BufferPool.release(data);
+        }
+        List<byte[]> taken = new ArrayList<byte[]>();
+        for (int i = 0; i < max * 2; i++) {
+            taken.add(BufferPool.getArray(size));
+        }
+        int reused = 0;
+        for (byte[] data : taken) {
+            if (released.contains(data)) {
+                reused++;
+            }
+        }
+        Assert.assertEquals(max, reused);
+    }
+
+}
@@ -0,0 +1,206 @@
+package org.apache.sshd.server.sftp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.file.nativefs.NativeFileSystemView;
+import org.apache.sshd.common.util.Buffer;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.util.BogusIoSession;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+/**
+ * Runs an {@link SftpSubsystem} over in-memory pipes, rooted in a temporary folder,
+ * and talks to it with raw SFTP packets.
+ */
+public abstract class BaseSftpTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A request the subsystem chokes on leaves the client waiting for its reply.
+     */
+    @Rule
+    public Timeout timeout = Timeout.seconds(10);
+
+    protected SftpSubsystem sftp;
+    protected ServerSession session;
+    /**
+     * The extensions announced in the SSH_FXP_VERSION reply, by name.
+     */
+    protected final Map<String, String> extensions = new LinkedHashMap<String, String>();
+    // the version negotiated by start()
+    protected int version;
+    private DataOutputStream requests;
+    private DataInputStream replies;
+    private final CountDownLatch exited = new CountDownLatch(1);
+    private int lastId;
+
+    protected void start(int version) throws Exception {
+        start(new SftpSubsystem(), version);
+    }
+
+    protected void start(SftpSubsystem subsystem, int version) throws Exception {
+        launch(subsystem);
+        Buffer reply = init(version);
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_VERSION, reply.getByte());
+        Assert.assertEquals(version, reply.getInt());
+        while (reply.available() > 0) {
+            extensions.put(reply.getString(), reply.getString());
+        }
+        this.version = version;
+    }
+
+    /**
+     * Start the subsystem without the protocol initialization, see {@link #init(int)}.
+     */
+    protected void launch(SftpSubsystem subsystem) throws Exception {
+        SshServer server = SshServer.setUpDefaultServer();
+        configure(server);
+        session = new ServerSession(server, new BogusIoSession());
+        Pipe in = Pipe.open();
+        Pipe out = Pipe.open();
+        sftp = subsystem;
+        sftp.setSession(session);
+        sftp.setFileSystemView(createFileSystemView(Collections.singletonMap("/", folder.getRoot().getAbsolutePath())));
+        sftp.setInputStream(Channels.newInputStream(in.source()));
+        sftp.setOutputStream(Channels.newOutputStream(out.sink()));
+        sftp.setErrorStream(null);
+        sftp.setExitCallback(new ExitCallback() {
+            public void onExit(int exitValue) {
+                exited.countDown();
+            }
+            public void onExit(int exitValue, String exitMessage) {
+                exited.countDown();
+            }
+        });
+        sftp.start(null);
+        requests = new DataOutputStream(Channels.newOutputStream(in.sink()));
+        replies = new DataInputStream(Channels.newInputStream(out.source()));
+    }
+
+    /**
+     * Send SSH_FXP_INIT with the version the client wants.
+     * @return the reply of the subsystem
+     */
+    protected Buffer init(int version) throws IOException {
+        Buffer init = new Buffer();
+        init.putByte((byte) SftpSubsystem.SSH_FXP_INIT);
+        init.putInt(version);
+        send(init);
+        return receive();
+    }
+
+    /**
+     * Set up the server before the session is created, e.g. its properties.
+     */
+    protected void configure(SshServer server) {
+    }
+
+    protected NativeFileSystemView createFileSystemView(Map<String, String> roots) {
+        return new NativeFileSystemView("test", roots, "/", '/', false);
+    }
+
+    @After
+    public void stop() throws Exception {
+        if (requests != null) {
+            requests.close();
+            Assert.assertTrue(exited.await(5, TimeUnit.SECONDS));
+            sftp.destroy();
+        }
+    }
+
+    /**
+     * Start a request, the caller appends its fields and passes it to {@link #send(Buffer)}.
+     */
+    protected Buffer request(int type) {
+        Buffer buffer = new Buffer();
+        buffer.putByte((byte) type);
+        buffer.putInt(++lastId);
+        return buffer;
+    }
+
+    protected int lastId() {
+        return lastId;
+    }
+
+    protected void send(Buffer buffer) throws IOException {
+        requests.writeInt(buffer.available());
+        requests.write(buffer.array(), buffer.rpos(), buffer.available());
+        requests.flush();
+    }
+
+    protected Buffer receive() throws IOException {
+        byte[] data = new byte[replies.readInt()];
+        replies.readFully(data);
+        return new Buffer(data);
+    }
+
+    /**
+     * Send the request and check the reply is a status with the expected code.
+     */
+    protected void assertStatus(int expected, Buffer request) throws IOException {
+        send(request);
+        assertStatus(expected, lastId, receive());
+    }
+
+    protected void assertStatus(int expected, int id, Buffer reply) {
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_STATUS, reply.getByte());
+        Assert.assertEquals(id, reply.getInt());
+        int status = reply.getInt();
+        Assert.assertEquals(reply.getString(), expected, status);
+    }
+
+    /**
+     * Open a file with the flags of v3 and v4, later versions use access and disposition flags.
+     */
+    protected String open(String path, int pflags) throws IOException {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_OPEN);
+        buffer.putString(path);
+        buffer.putInt(pflags);
+        buffer.putInt(0);
+        if (version >= 4) {
+            buffer.putByte((byte) SftpSubsystem.SSH_FILEXFER_TYPE_UNKNOWN);
+        }
+        send(buffer);
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_HANDLE, reply.getByte());
+        Assert.assertEquals(lastId, reply.getInt());
+        return reply.getString();
+    }
+
+    protected void write(String handle, long offset, byte[] data) throws IOException {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_WRITE);
+        buffer.putString(handle);
+        buffer.putLong(offset);
+        buffer.putBytes(data);
+        assertStatus(SftpSubsystem.SSH_FX_OK, buffer);
+    }
+
+    protected void close(String handle) throws IOException {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_CLOSE);
+        buffer.putString(handle);
+        assertStatus(SftpSubsystem.SSH_FX_OK, buffer);
+    }
+
+    protected File file(String name) {
+        return new File(folder.getRoot(), name);
+    }
+
+}
@@ -0,0 +1,193 @@
+package org.apache.sshd.server.sftp;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sshd.common.file.FileAttributes;
+import org.apache.sshd.common.file.SshFile;
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Attributes in ATTRS and NAME replies.
+ */
+public class SftpAttributesTests extends BaseSftpTests {
+
+    private static final long MTIME = 1400000000123L;
+    private static final long ATIME = 1400000100456L;
+
+    @Test
+    public void writeAttrsV3() throws Exception {
+        start(3);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, regularFile());
+
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_SIZE | SftpSubsystem.SSH_FILEXFER_ATTR_UIDGID
+                | SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS | SftpSubsystem.SSH_FILEXFER_ATTR_ACMODTIME, buffer.getInt());
+        Assert.assertEquals(1234, buffer.getLong());
+        Assert.assertEquals(1000, buffer.getInt());
+        Assert.assertEquals(100, buffer.getInt());
+        Assert.assertEquals(SftpSubsystem.S_IFREG | 0640, buffer.getInt());
+        Assert.assertEquals(ATIME / 1000, buffer.getInt());
+        Assert.assertEquals(MTIME / 1000, buffer.getInt());
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void writePartialAttrsV3() throws Exception {
+        start(3);
+        // no size for a directory, the ids and times only go in pairs
+        FileAttributes attributes = new FileAttributes()
+                .setDirectory(true)
+                .setRegularFile(false)
+                .setSymbolicLink(false)
+                .setSize(4096)
+                .setUid(1000)
+                .setPermissions(0755)
+                .setLastModifiedTime(MTIME);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, attributes);
+
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS, buffer.getInt());
+        Assert.assertEquals(SftpSubsystem.S_IFDIR | 0755, buffer.getInt());
+        Assert.assertEquals(0, buffer.available());
+
+        buffer = new Buffer();
+        sftp.writeAttrs(buffer, new FileAttributes());
+        Assert.assertEquals(0, buffer.getInt());
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void readAttrsV3() throws Exception {
+        start(3);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, regularFile());
+
+        Map<SshFile.Attribute, Object> attrs = sftp.readAttrs(buffer);
+        FileAttributes read = FileAttributes.fromMap(attrs);
+        Assert.assertEquals(1234, read.getSize());
+        Assert.assertEquals(1000, read.getUid());
+        Assert.assertEquals(100, read.getGid());
+        Assert.assertEquals(0640, read.getPermissions());
+        Assert.assertTrue(read.isRegularFile());
+        // whole seconds only
+        Assert.assertEquals(ATIME / 1000 * 1000, read.getLastAccessTime());
+        Assert.assertEquals(MTIME / 1000 * 1000, read.getLastModifiedTime());
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void stat() throws Exception {
+        start(3);
+        File f = file("f");
+        Files.write(f.toPath(), "hello".getBytes("UTF-8"));
+        Assert.assertTrue(f.setLastModified(MTIME));
+
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_STAT);
+        buffer.putString("/f");
+        send(buffer);
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_ATTRS, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        int flags = reply.getInt();
+        Assert.assertTrue((flags & SftpSubsystem.SSH_FILEXFER_ATTR_SIZE) != 0);
+        Assert.assertTrue((flags & SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS) != 0);
+        Assert.assertTrue((flags & SftpSubsystem.SSH_FILEXFER_ATTR_ACMODTIME) != 0);
+        Assert.assertEquals(5, reply.getLong());
+        if ((flags & SftpSubsystem.SSH_FILEXFER_ATTR_UIDGID) != 0) {
+            reply.getInt();
+            reply.getInt();
+        }
+        Assert.assertEquals(SftpSubsystem.S_IFREG, reply.getInt() & 0170000);
+        reply.getInt();
+        Assert.assertEquals(MTIME / 1000, reply.getInt());
+
+        buffer = request(SftpSubsystem.SSH_FXP_STAT);
+        buffer.putString("/missing");
+        assertStatus(SftpSubsystem.SSH_FX_NO_SUCH_FILE, buffer);
+    }
+
+    @Test
+    public void readDir() throws Exception {
+        start(3);
+        Files.write(file("f").toPath(), "hello".getBytes("UTF-8"));
+        Assert.assertTrue(file("f").setLastModified(MTIME));
+        Assert.assertTrue(file("d").mkdir());
+
+        Map<String, String> longNames = new HashMap<String, String>();
+        Map<String, Integer> permissions = new HashMap<String, Integer>();
+        String handle = openDir("/");
+        for (;;) {
+            Buffer buffer = request(SftpSubsystem.SSH_FXP_READDIR);
+            buffer.putString(handle);
+            send(buffer);
+            Buffer reply = receive();
+            if (reply.getByte() == SftpSubsystem.SSH_FXP_STATUS) {
+                Assert.assertEquals(lastId(), reply.getInt());
+                Assert.assertEquals(SftpSubsystem.SSH_FX_EOF, reply.getInt());
+                break;
+            }
+            Assert.assertEquals(lastId(), reply.getInt());
+            for (int n = reply.getInt(); n > 0; n--) {
+                String name = reply.getString();
+                longNames.put(name, reply.getString());
+                int flags = reply.getInt();
+                if ((flags & SftpSubsystem.SSH_FILEXFER_ATTR_SIZE) != 0) {
+                    reply.getLong();
+                }
+                if ((flags & SftpSubsystem.SSH_FILEXFER_ATTR_UIDGID) != 0) {
+                    reply.getInt();
+                    reply.getInt();
+                }
+                Assert.assertTrue((flags & SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS) != 0);
+                permissions.put(name, reply.getInt());
+                if ((flags & SftpSubsystem.SSH_FILEXFER_ATTR_ACMODTIME) != 0) {
+                    reply.getInt();
+                    reply.getInt();
+                }
+            }
+            Assert.assertEquals(0, reply.available());
+        }
+        close(handle);
+
+        // e.g. "-rw-r--r--  1 owner    group           5 May 13  2014 f", the date depends on the time zone
+        Assert.assertTrue(longNames.get("f"),
+                longNames.get("f").matches("-[r-][w-][x-][r-][w-][x-][r-][w-][x-]  1 .{8} .{8} {8}5 \\w{3} [ \\d]\\d  2014 f"));
+        Assert.assertTrue(longNames.get("d"), longNames.get("d").startsWith("d"));
+        Assert.assertTrue(longNames.get("d"), longNames.get("d").endsWith(" d"));
+        Assert.assertEquals(SftpSubsystem.S_IFREG, permissions.get("f") & 0170000);
+        Assert.assertEquals(SftpSubsystem.S_IFDIR, permissions.get("d") & 0170000);
+    }
+
+    private String openDir(String path) throws Exception {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_OPENDIR);
+        buffer.putString(path);
+        send(buffer);
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_HANDLE, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        return reply.getString();
+    }
+
+    private static FileAttributes regularFile() {
+        return new FileAttributes()
+                .setRegularFile(true)
+                .setDirectory(false)
+                .setSymbolicLink(false)
+                .setSize(1234)
+                .setUid(1000)
+                .setGid(100)
+                .setOwner("owner")
+                .setGroup("group")
+                .setPermissions(0640)
+                .setCreationTime(MTIME - 1000)
+                .setLastModifiedTime(MTIME)
+                .setLastAccessTime(ATIME)
+                .setNLink(1);
+    }
+
+}
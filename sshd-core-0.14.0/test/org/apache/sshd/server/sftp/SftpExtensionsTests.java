@@ -0,0 +1,236 @@
+package org.apache.sshd.server.sftp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SftpExtensionsTests extends BaseSftpTests {
+
+    private static final int RW = SftpSubsystem.SSH_FXF_READ | SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT;
+
+    @Test
+    public void versionAnnouncesExtensions() throws Exception {
+        start(3);
+        Assert.assertEquals("1", extensions.get(SftpSubsystem.EXT_FSYNC));
+        Assert.assertEquals("2", extensions.get(SftpSubsystem.EXT_STATVFS));
+        Assert.assertEquals("1", extensions.get(SftpSubsystem.EXT_POSIX_RENAME));
+        Assert.assertEquals("1", extensions.get(SftpSubsystem.EXT_COPY_DATA));
+        Assert.assertEquals(SftpSubsystem.CHECK_FILE_ALGORITHMS, extensions.get(SftpSubsystem.EXT_CHECK_FILE_NAME));
+        Assert.assertEquals(SftpSubsystem.CHECK_FILE_ALGORITHMS, extensions.get(SftpSubsystem.EXT_CHECK_FILE_HANDLE));
+    }
+
+    @Test
+    public void fsync() throws Exception {
+        start(3);
+        String handle = open("/f", SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT);
+        write(handle, 0, "synced".getBytes("UTF-8"));
+
+        Buffer buffer = extended(SftpSubsystem.EXT_FSYNC);
+        buffer.putString(handle);
+        assertStatus(SftpSubsystem.SSH_FX_OK, buffer);
+        Assert.assertEquals("synced", new String(Files.readAllBytes(file("f").toPath()), "UTF-8"));
+        close(handle);
+    }
+
+    @Test
+    public void fsyncUnknownHandle() throws Exception {
+        start(3);
+        Buffer buffer = extended(SftpSubsystem.EXT_FSYNC);
+        buffer.putString("nope");
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, buffer);
+    }
+
+    @Test
+    public void statVfs() throws Exception {
+        start(3);
+        Buffer buffer = extended(SftpSubsystem.EXT_STATVFS);
+        buffer.putString("/");
+        send(buffer);
+
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_EXTENDED_REPLY, reply.getByte() & 0xff);
+        Assert.assertEquals(lastId(), reply.getInt());
+        long bsize = reply.getLong();
+        long frsize = reply.getLong();
+        long blocks = reply.getLong();
+        long bfree = reply.getLong();
+        long bavail = reply.getLong();
+        Assert.assertEquals(4096, bsize);
+        Assert.assertEquals(4096, frsize);
+        Assert.assertEquals(folder.getRoot().getTotalSpace() / bsize, blocks);
+        Assert.assertTrue(bfree <= blocks);
+        Assert.assertTrue(bavail <= bfree);
+        for (int i = 0; i < 5; i++) {
+            reply.getLong(); // files and flags are not known
+        }
+        Assert.assertEquals(255, reply.getLong());
+        Assert.assertEquals(0, reply.available());
+    }
+
+    @Test
+    public void unknownExtension() throws Exception {
+        start(3);
+        assertStatus(SftpSubsystem.SSH_FX_OP_UNSUPPORTED, extended("nope@example.com"));
+    }
+
+    @Test
+    public void copyData() throws Exception {
+        start(3);
+        byte[] data = content(100000);
+        Files.write(file("src").toPath(), data);
+        String src = open("/src", SftpSubsystem.SSH_FXF_READ);
+        String dst = open("/dst", RW);
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, copyData(src, 1000, 50000, dst, 10));
+        close(src);
+        close(dst);
+
+        byte[] expected = new byte[10 + 50000];
+        System.arraycopy(data, 1000, expected, 10, 50000);
+        Assert.assertArrayEquals(expected, Files.readAllBytes(file("dst").toPath()));
+    }
+
+    @Test
+    public void copyDataToTheEnd() throws Exception {
+        start(3);
+        byte[] data = content(300000);
+        Files.write(file("src").toPath(), data);
+        String src = open("/src", SftpSubsystem.SSH_FXF_READ);
+        String dst = open("/dst", RW);
+
+        // a length of zero copies up to the end of the file
+        assertStatus(SftpSubsystem.SSH_FX_OK, copyData(src, 5, 0, dst, 0));
+        close(src);
+        close(dst);
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 5, data.length), Files.readAllBytes(file("dst").toPath()));
+    }
+
+    @Test
+    public void copyDataWithinOneFile() throws Exception {
+        start(3);
+        byte[] data = content(4000);
+        Files.write(file("f").toPath(), data);
+        String src = open("/f", SftpSubsystem.SSH_FXF_READ);
+        String dst = open("/f", SftpSubsystem.SSH_FXF_WRITE);
+
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, copyData(src, 0, 2000, dst, 1999));
+        assertStatus(SftpSubsystem.SSH_FX_OK, copyData(src, 0, 2000, dst, 2000));
+        close(src);
+        close(dst);
+
+        byte[] expected = data.clone();
+        System.arraycopy(data, 0, expected, 2000, 2000);
+        Assert.assertArrayEquals(expected, Files.readAllBytes(file("f").toPath()));
+    }
+
+    @Test
+    public void copyDataUnknownHandle() throws Exception {
+        start(3);
+        String dst = open("/dst", RW);
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, copyData("nope", 0, 0, dst, 0));
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, copyData(dst, -1, 0, dst, 0));
+        close(dst);
+    }
+
+    @Test
+    public void checkFileName() throws Exception {
+        start(3);
+        byte[] data = content(200000);
+        Files.write(file("f").toPath(), data);
+
+        byte[] hashes = checkFile(SftpSubsystem.EXT_CHECK_FILE_NAME, "/f", "sha256", 0, 0, 0, "sha256");
+        Assert.assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(data), hashes);
+    }
+
+    @Test
+    public void checkFileHandleInBlocks() throws Exception {
+        start(3);
+        byte[] data = content(2000);
+        Files.write(file("f").toPath(), data);
+        String handle = open("/f", SftpSubsystem.SSH_FXF_READ);
+
+        // the first supported algorithm is used, the last block is shorter
+        byte[] hashes = checkFile(SftpSubsystem.EXT_CHECK_FILE_HANDLE, handle, "nope,md5,sha1", 100, 1000, 256, "md5");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        for (int offset = 100; offset < 1100; offset += 256) {
+            md5.update(data, offset, Math.min(256, 1100 - offset));
+            expected.write(md5.digest());
+        }
+        Assert.assertArrayEquals(expected.toByteArray(), hashes);
+        close(handle);
+    }
+
+    @Test
+    public void checkFileErrors() throws Exception {
+        start(3);
+        Files.write(file("f").toPath(), content(1000));
+        assertStatus(SftpSubsystem.SSH_FX_OP_UNSUPPORTED,
+                checkFileRequest(SftpSubsystem.EXT_CHECK_FILE_NAME, "/f", "crc32", 0, 0, 0));
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE,
+                checkFileRequest(SftpSubsystem.EXT_CHECK_FILE_NAME, "/f", "sha1", 0, 0, 255));
+        assertStatus(SftpSubsystem.SSH_FX_NO_SUCH_FILE,
+                checkFileRequest(SftpSubsystem.EXT_CHECK_FILE_NAME, "/missing", "sha1", 0, 0, 0));
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE,
+                checkFileRequest(SftpSubsystem.EXT_CHECK_FILE_HANDLE, "nope", "sha1", 0, 0, 0));
+        // more hashes than fit in a reply
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE,
+                checkFileRequest(SftpSubsystem.EXT_CHECK_FILE_NAME, "/f", "sha512", 0, 1L << 32, 256));
+    }
+
+    protected Buffer extended(String name) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_EXTENDED);
+        buffer.putString(name);
+        return buffer;
+    }
+
+    private Buffer copyData(String readHandle, long readOffset, long readLength, String writeHandle, long writeOffset) {
+        Buffer buffer = extended(SftpSubsystem.EXT_COPY_DATA);
+        buffer.putString(readHandle);
+        buffer.putLong(readOffset);
+        buffer.putLong(readLength);
+        buffer.putString(writeHandle);
+        buffer.putLong(writeOffset);
+        return buffer;
+    }
+
+    private Buffer checkFileRequest(String extension, String target, String algorithms, long offset, long length, int blockSize) {
+        Buffer buffer = extended(extension);
+        buffer.putString(target);
+        buffer.putString(algorithms);
+        buffer.putLong(offset);
+        buffer.putLong(length);
+        buffer.putInt(blockSize);
+        return buffer;
+    }
+
+    /**
+     * @return the hashes from the reply, which must use the expected algorithm
+     */
+    private byte[] checkFile(String extension, String target, String algorithms, long offset, long length,
+                             int blockSize, String expectedAlgorithm) throws Exception {
+        send(checkFileRequest(extension, target, algorithms, offset, length, blockSize));
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_EXTENDED_REPLY, reply.getByte() & 0xff);
+        Assert.assertEquals(lastId(), reply.getInt());
+        Assert.assertEquals(SftpSubsystem.EXT_CHECK_FILE, reply.getString());
+        Assert.assertEquals(expectedAlgorithm, reply.getString());
+        byte[] hashes = new byte[reply.available()];
+        reply.getRawBytes(hashes);
+        return hashes;
+    }
+
+    private static byte[] content(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 7 + (i >>> 8));
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.apache.sshd.server.sftp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Many requests in flight at once, as sent by clients which do not wait for each reply.
+ */
+public class SftpPipelineTests extends BaseSftpTests {
+
+    private static final int RW = SftpSubsystem.SSH_FXF_READ | SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT;
+    private static final int CHUNK = 8 * 1024;
+    private static final int CHUNKS = 64;
+
+    private int workerThreads = SftpSubsystem.DEFAULT_WORKER_THREADS_PER_SESSION;
+    private int maxPendingRequests = SftpSubsystem.DEFAULT_MAX_PENDING_REQUESTS_PER_SESSION;
+
+    @Override
+    protected void configure(SshServer server) {
+        server.getProperties().put(SftpSubsystem.WORKER_THREADS_PER_SESSION, String.valueOf(workerThreads));
+        server.getProperties().put(SftpSubsystem.MAX_PENDING_REQUESTS_PER_SESSION, String.valueOf(maxPendingRequests));
+    }
+
+    @Test
+    public void pipelinedReads() throws Exception {
+        start(3);
+        readTwoFiles();
+    }
+
+    @Test
+    public void pipelinedReadsWithOnePendingRequest() throws Exception {
+        maxPendingRequests = 1;
+        start(3);
+        readTwoFiles();
+    }
+
+    @Test
+    public void pipelinedReadsWithoutWorkers() throws Exception {
+        workerThreads = 0;
+        start(3);
+        readTwoFiles();
+    }
+
+    @Test
+    public void pipelinedWritesBeforeStat() throws Exception {
+        start(3);
+        String handle = open("/f", RW);
+        byte[] data = content(CHUNK * CHUNKS, 7);
+        // written backwards, each write is independent of the others
+        for (int i = CHUNKS - 1; i >= 0; i--) {
+            send(writeRequest(handle, i * CHUNK, Arrays.copyOfRange(data, i * CHUNK, (i + 1) * CHUNK)));
+        }
+        int firstWrite = lastId() - CHUNKS + 1;
+        // a request on a path waits for the ones in flight
+        Buffer stat = request(SftpSubsystem.SSH_FXP_STAT);
+        stat.putString("/f");
+        send(stat);
+
+        for (int i = 0; i < CHUNKS; i++) {
+            Buffer reply = receive();
+            Assert.assertEquals(SftpSubsystem.SSH_FXP_STATUS, reply.getByte());
+            int id = reply.getInt();
+            Assert.assertEquals(firstWrite + i, id);
+            Assert.assertEquals(SftpSubsystem.SSH_FX_OK, reply.getInt());
+        }
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_ATTRS, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        Assert.assertTrue((reply.getInt() & SftpSubsystem.SSH_FILEXFER_ATTR_SIZE) != 0);
+        Assert.assertEquals(data.length, reply.getLong());
+
+        close(handle);
+        Assert.assertArrayEquals(data, Files.readAllBytes(file("f").toPath()));
+    }
+
+    @Test
+    public void requestsOnOneHandleStayInOrder() throws Exception {
+        start(3);
+        String handle = open("/f", RW);
+        send(writeRequest(handle, 0, "aaaa".getBytes("UTF-8")));
+        send(writeRequest(handle, 0, "bbbb".getBytes("UTF-8")));
+        send(readRequest(handle, 0, 1024));
+        Buffer close = request(SftpSubsystem.SSH_FXP_CLOSE);
+        close.putString(handle);
+        send(close);
+        send(readRequest(handle, 0, 1024));
+        int first = lastId() - 4;
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, first, receive());
+        assertStatus(SftpSubsystem.SSH_FX_OK, first + 1, receive());
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_DATA, reply.getByte());
+        Assert.assertEquals(first + 2, reply.getInt());
+        Assert.assertArrayEquals("bbbb".getBytes("UTF-8"), reply.getBytes());
+        assertStatus(SftpSubsystem.SSH_FX_OK, first + 3, receive());
+        // the handle is gone by then
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, first + 4, receive());
+    }
+
+    @Test
+    public void handlesAreServicedConcurrently() throws Exception {
+        final CountDownLatch otherHandleDone = new CountDownLatch(1);
+        final String[] blocked = new String[1];
+        start(new SftpSubsystem() {
+            @Override
+            protected void process(Buffer buffer) throws IOException {
+                String handle = getRequestHandle(buffer);
+                if (handle != null && handle.equals(blocked[0])) {
+                    try {
+                        // only returns in time if the other handle is not queued behind this one
+                        Assert.assertTrue(otherHandleDone.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                super.process(buffer);
+                if (handle != null && blocked[0] != null && !handle.equals(blocked[0])) {
+                    otherHandleDone.countDown();
+                }
+            }
+        }, 3);
+        Files.write(file("a").toPath(), "slow".getBytes("UTF-8"));
+        Files.write(file("b").toPath(), "fast".getBytes("UTF-8"));
+        String a = open("/a", SftpSubsystem.SSH_FXF_READ);
+        String b = open("/b", SftpSubsystem.SSH_FXF_READ);
+        blocked[0] = a;
+
+        send(readRequest(a, 0, 1024));
+        send(readRequest(b, 0, 1024));
+
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_DATA, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        Assert.assertArrayEquals("fast".getBytes("UTF-8"), reply.getBytes());
+        reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_DATA, reply.getByte());
+        Assert.assertEquals(lastId() - 1, reply.getInt());
+        Assert.assertArrayEquals("slow".getBytes("UTF-8"), reply.getBytes());
+    }
+
+    /**
+     * Reads two files chunk by chunk, with the requests for both interleaved and all of
+     * them sent before the first reply is read.
+     */
+    private void readTwoFiles() throws Exception {
+        byte[][] contents = { content(CHUNK * CHUNKS, 1), content(CHUNK * CHUNKS, 2) };
+        String[] handles = new String[contents.length];
+        for (int f = 0; f < contents.length; f++) {
+            Files.write(file("f" + f).toPath(), contents[f]);
+            handles[f] = open("/f" + f, SftpSubsystem.SSH_FXF_READ);
+        }
+
+        Map<Integer, Integer> fileOf = new HashMap<Integer, Integer>();
+        Map<Integer, Integer> chunkOf = new HashMap<Integer, Integer>();
+        for (int i = 0; i < CHUNKS; i++) {
+            for (int f = 0; f < contents.length; f++) {
+                send(readRequest(handles[f], i * CHUNK, CHUNK));
+                fileOf.put(lastId(), f);
+                chunkOf.put(lastId(), i);
+            }
+        }
+
+        List<List<Integer>> replied = new ArrayList<List<Integer>>();
+        for (int f = 0; f < contents.length; f++) {
+            replied.add(new ArrayList<Integer>());
+        }
+        for (int n = 0; n < CHUNKS * contents.length; n++) {
+            Buffer reply = receive();
+            Assert.assertEquals(SftpSubsystem.SSH_FXP_DATA, reply.getByte());
+            int id = reply.getInt();
+            Integer f = fileOf.remove(id);
+            Assert.assertNotNull("unexpected or repeated reply " + id, f);
+            int i = chunkOf.get(id);
+            Assert.assertArrayEquals(Arrays.copyOfRange(contents[f], i * CHUNK, (i + 1) * CHUNK), reply.getBytes());
+            replied.get(f).add(id);
+        }
+        Assert.assertTrue(fileOf.isEmpty());
+        for (List<Integer> ids : replied) {
+            for (int i = 1; i < ids.size(); i++) {
+                Assert.assertTrue("replies on one handle out of order", ids.get(i - 1) < ids.get(i));
+            }
+        }
+
+        for (String handle : handles) {
+            close(handle);
+        }
+    }
+
+    private Buffer readRequest(String handle, long offset, int len) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_READ);
+        buffer.putString(handle);
+        buffer.putLong(offset);
+        buffer.putInt(len);
+        return buffer;
+    }
+
+    private Buffer writeRequest(String handle, long offset, byte[] data) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_WRITE);
+        buffer.putString(handle);
+        buffer.putLong(offset);
+        buffer.putBytes(data);
+        return buffer;
+    }
+
+    private static byte[] content(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed * 31 + i + (i >>> 8) * 7);
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.apache.sshd.server.sftp;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SftpReadWriteTests extends BaseSftpTests {
+
+    private static final int RW = SftpSubsystem.SSH_FXF_READ | SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT;
+
+    @Test
+    public void writeAndRead() throws Exception {
+        start(3);
+        byte[] data = "hello sftp".getBytes("UTF-8");
+        String handle = open("/f", RW);
+        write(handle, 0, data);
+
+        Assert.assertArrayEquals(data, read(handle, 0, 1024));
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, 6, 10), read(handle, 6, 1024));
+        close(handle);
+
+        Assert.assertArrayEquals(data, Files.readAllBytes(file("f").toPath()));
+    }
+
+    @Test
+    public void writeLongerThanPacket() throws Exception {
+        start(3);
+        String handle = open("/f", RW);
+        // leave recognizable bytes in the pooled buffers
+        byte[] stale = new byte[4000];
+        Arrays.fill(stale, (byte) 'x');
+        write(handle, 0, stale);
+
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_WRITE);
+        buffer.putString(handle);
+        buffer.putLong(0);
+        buffer.putInt(3000);
+        buffer.putRawBytes("short".getBytes("UTF-8"));
+        assertStatus(SftpSubsystem.SSH_FX_BAD_MESSAGE, buffer);
+        close(handle);
+
+        Assert.assertArrayEquals(stale, Files.readAllBytes(file("f").toPath()));
+    }
+
+    @Test
+    public void writeNegativeLength() throws Exception {
+        start(3);
+        String handle = open("/f", RW);
+
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_WRITE);
+        buffer.putString(handle);
+        buffer.putLong(0);
+        buffer.putInt(-1);
+        buffer.putRawBytes("data".getBytes("UTF-8"));
+        assertStatus(SftpSubsystem.SSH_FX_BAD_MESSAGE, buffer);
+
+        // the session is still usable
+        write(handle, 0, "ok".getBytes("UTF-8"));
+        close(handle);
+        Assert.assertEquals(2, file("f").length());
+    }
+
+    @Test
+    public void readNegativeLength() throws Exception {
+        start(3);
+        Files.write(file("f").toPath(), "content".getBytes("UTF-8"));
+        String handle = open("/f", SftpSubsystem.SSH_FXF_READ);
+
+        Assert.assertEquals(0, read(handle, 0, -1).length);
+        close(handle);
+    }
+
+    @Test
+    public void readClampedToMaximum() throws Exception {
+        start(3);
+        byte[] data = new byte[SftpSubsystem.MAX_READ_WRITE_LENGTH + 1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        Files.write(file("f").toPath(), data);
+        String handle = open("/f", SftpSubsystem.SSH_FXF_READ);
+
+        byte[] read = read(handle, 0, Integer.MAX_VALUE);
+        Assert.assertEquals(SftpSubsystem.MAX_READ_WRITE_LENGTH, read.length);
+        Assert.assertArrayEquals(Arrays.copyOf(data, read.length), read);
+        close(handle);
+    }
+
+    @Test
+    public void readPastEnd() throws Exception {
+        start(3);
+        Files.write(file("f").toPath(), "content".getBytes("UTF-8"));
+        String handle = open("/f", SftpSubsystem.SSH_FXF_READ);
+
+        Buffer buffer = readRequest(handle, 100, 10);
+        assertStatus(SftpSubsystem.SSH_FX_EOF, buffer);
+        close(handle);
+    }
+
+    @Test
+    public void readUnknownHandle() throws Exception {
+        start(3);
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, readRequest("nope", 0, 10));
+    }
+
+    private Buffer readRequest(String handle, long offset, int len) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_READ);
+        buffer.putString(handle);
+        buffer.putLong(offset);
+        buffer.putInt(len);
+        return buffer;
+    }
+
+    private byte[] read(String handle, long offset, int len) throws Exception {
+        send(readRequest(handle, offset, len));
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_DATA, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        return reply.getBytes();
+    }
+
+}
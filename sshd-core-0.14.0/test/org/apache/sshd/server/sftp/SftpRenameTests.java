@@ -0,0 +1,177 @@
+package org.apache.sshd.server.sftp;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.sshd.common.file.SshFile;
+import org.apache.sshd.common.file.nativefs.NativeFileSystemView;
+import org.apache.sshd.common.file.nativefs.NativeSshFile;
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SftpRenameTests extends BaseSftpTests {
+
+    /**
+     * Like documents providers, files refuse to be moved onto a file which existed when
+     * they were looked up, even after it has been deleted.
+     */
+    private boolean staleDestinations;
+
+    @Override
+    protected NativeFileSystemView createFileSystemView(Map<String, String> roots) {
+        if (!staleDestinations) {
+            return super.createFileSystemView(roots);
+        }
+        return new NativeFileSystemView("test", roots, "/", '/', false) {
+            @Override
+            public NativeSshFile createNativeSshFile(String name, File file, String userName) {
+                return new DocumentFile(this, name, file, userName);
+            }
+        };
+    }
+
+    private static class DocumentFile extends NativeSshFile {
+        private final boolean existed;
+
+        DocumentFile(NativeFileSystemView view, String name, File file, String userName) {
+            super(view, name, file, userName);
+            existed = file.exists();
+        }
+
+        @Override
+        public boolean doesExist() {
+            return existed;
+        }
+
+        @Override
+        public boolean move(SshFile destination) {
+            return !((DocumentFile) destination).existed && super.move(destination);
+        }
+    }
+
+    @Test
+    public void rename() throws Exception {
+        start(3);
+        createFile("a", "a");
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, rename("/a", "/b", -1));
+        Assert.assertFalse(file("a").exists());
+        Assert.assertEquals("a", content("b"));
+    }
+
+    @Test
+    public void renameKeepsExistingFile() throws Exception {
+        start(3);
+        createFile("a", "a");
+        createFile("b", "b");
+
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, rename("/a", "/b", -1));
+        Assert.assertEquals("a", content("a"));
+        Assert.assertEquals("b", content("b"));
+    }
+
+    @Test
+    public void renameMissingFile() throws Exception {
+        start(3);
+        assertStatus(SftpSubsystem.SSH_FX_NO_SUCH_FILE, rename("/a", "/b", -1));
+    }
+
+    @Test
+    public void renameOverwrite() throws Exception {
+        start(5);
+        createFile("a", "a");
+        createFile("b", "b");
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, rename("/a", "/b", SftpSubsystem.SSH_FXF_RENAME_OVERWRITE));
+        Assert.assertFalse(file("a").exists());
+        Assert.assertEquals("a", content("b"));
+    }
+
+    @Test
+    public void renameWithoutOverwriteFlag() throws Exception {
+        start(5);
+        createFile("a", "a");
+        createFile("b", "b");
+
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, rename("/a", "/b", 0));
+        Assert.assertEquals("b", content("b"));
+    }
+
+    @Test
+    public void posixRenameOverwrites() throws Exception {
+        start(3);
+        createFile("a", "a");
+        createFile("b", "b");
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, posixRename("/a", "/b"));
+        Assert.assertFalse(file("a").exists());
+        Assert.assertEquals("a", content("b"));
+    }
+
+    @Test
+    public void posixRenameOverwritesWhereMoveRefuses() throws Exception {
+        staleDestinations = true;
+        start(3);
+        createFile("a", "a");
+        createFile("b", "b");
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, posixRename("/a", "/b"));
+        Assert.assertFalse(file("a").exists());
+        Assert.assertEquals("a", content("b"));
+    }
+
+    @Test
+    public void renameOverwriteWhereMoveRefuses() throws Exception {
+        staleDestinations = true;
+        start(6);
+        createFile("a", "a");
+        createFile("b", "b");
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, rename("/a", "/b", SftpSubsystem.SSH_FXF_RENAME_OVERWRITE));
+        Assert.assertFalse(file("a").exists());
+        Assert.assertEquals("a", content("b"));
+    }
+
+    @Test
+    public void posixRenameKeepsDirectory() throws Exception {
+        start(3);
+        createFile("a", "a");
+        Assert.assertTrue(file("d").mkdir());
+
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, posixRename("/a", "/d"));
+        Assert.assertEquals("a", content("a"));
+        Assert.assertTrue(file("d").isDirectory());
+    }
+
+    /**
+     * @param flags the rename flags of version 5 and later, -1 to leave them out
+     */
+    private Buffer rename(String oldPath, String newPath, int flags) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_RENAME);
+        buffer.putString(oldPath);
+        buffer.putString(newPath);
+        if (flags >= 0) {
+            buffer.putInt(flags);
+        }
+        return buffer;
+    }
+
+    private Buffer posixRename(String oldPath, String newPath) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_EXTENDED);
+        buffer.putString(SftpSubsystem.EXT_POSIX_RENAME);
+        buffer.putString(oldPath);
+        buffer.putString(newPath);
+        return buffer;
+    }
+
+    private void createFile(String name, String content) throws Exception {
+        Files.write(file(name).toPath(), content.getBytes("UTF-8"));
+    }
+
+    private String content(String name) throws Exception {
+        return new String(Files.readAllBytes(file(name).toPath()), "UTF-8");
+    }
+
+}
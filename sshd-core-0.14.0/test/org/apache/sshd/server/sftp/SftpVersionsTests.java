@@ -0,0 +1,379 @@
+package org.apache.sshd.server.sftp;
+
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sshd.common.file.FileAttributes;
+import org.apache.sshd.common.file.SshFile;
+import org.apache.sshd.common.util.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Protocol versions 4 to 6: negotiation, the attribute encoding and the requests which changed.
+ */
+public class SftpVersionsTests extends BaseSftpTests {
+
+    private static final long ATIME = 1400000100456L;
+    private static final long CTIME = -1500L;
+    private static final long MTIME = 1400000000123L;
+
+    private static final int TIMES = SftpSubsystem.SSH_FILEXFER_ATTR_ACCESSTIME | SftpSubsystem.SSH_FILEXFER_ATTR_CREATETIME
+            | SftpSubsystem.SSH_FILEXFER_ATTR_MODIFYTIME | SftpSubsystem.SSH_FILEXFER_ATTR_SUBSECOND_TIMES;
+
+    @Test
+    public void highestVersionIsNegotiated() throws Exception {
+        launch(new SftpSubsystem());
+        Buffer reply = init(7);
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_VERSION, reply.getByte());
+        Assert.assertEquals(SftpSubsystem.HIGHER_SFTP_IMPL, reply.getInt());
+    }
+
+    @Test
+    public void olderVersionsAreRefused() throws Exception {
+        launch(new SftpSubsystem());
+        // the version takes the place of the request id
+        assertStatus(SftpSubsystem.SSH_FX_OP_UNSUPPORTED, 2, init(2));
+    }
+
+    @Test
+    public void attrsV4() throws Exception {
+        start(4);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, regularFile());
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_SIZE | SftpSubsystem.SSH_FILEXFER_ATTR_OWNERGROUP
+                | SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS | TIMES, buffer.getInt());
+        assertCommonAttrs(buffer);
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void attrsV5() throws Exception {
+        start(5);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, regularFile().setPermissions(0444));
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_SIZE | SftpSubsystem.SSH_FILEXFER_ATTR_OWNERGROUP
+                | SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS | TIMES | SftpSubsystem.SSH_FILEXFER_ATTR_BITS, buffer.getInt());
+        assertCommonAttrs(buffer, 0444);
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_FLAGS_READONLY, buffer.getInt());
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void attrsV6() throws Exception {
+        start(6);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, regularFile());
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_SIZE | SftpSubsystem.SSH_FILEXFER_ATTR_OWNERGROUP
+                | SftpSubsystem.SSH_FILEXFER_ATTR_PERMISSIONS | TIMES | SftpSubsystem.SSH_FILEXFER_ATTR_BITS
+                | SftpSubsystem.SSH_FILEXFER_ATTR_LINK_COUNT, buffer.getInt());
+        assertCommonAttrs(buffer);
+        // attrib-bits and attrib-bits-valid
+        Assert.assertEquals(0, buffer.getInt());
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_ATTR_FLAGS_READONLY, buffer.getInt());
+        Assert.assertEquals(2, buffer.getInt());
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void attrsOfADirectory() throws Exception {
+        start(6);
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, new FileAttributes().setDirectory(true).setRegularFile(false).setSymbolicLink(false).setSize(4096));
+        // no size for a directory, but its type
+        Assert.assertEquals(0, buffer.getInt());
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_TYPE_DIRECTORY, buffer.getByte());
+        Assert.assertEquals(0, buffer.available());
+
+        buffer = new Buffer();
+        sftp.writeAttrs(buffer, new FileAttributes());
+        Assert.assertEquals(0, buffer.getInt());
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_TYPE_UNKNOWN, buffer.getByte());
+        Assert.assertEquals(0, buffer.available());
+    }
+
+    @Test
+    public void attrsRoundTripV4() throws Exception {
+        start(4);
+        assertRoundTrip();
+    }
+
+    @Test
+    public void attrsRoundTripV5() throws Exception {
+        start(5);
+        assertRoundTrip();
+    }
+
+    @Test
+    public void attrsRoundTripV6() throws Exception {
+        start(6);
+        assertRoundTrip();
+    }
+
+    @Test
+    public void readAttrsSkipsWhatCanNotBeSet() throws Exception {
+        start(6);
+        Buffer buffer = new Buffer();
+        buffer.putInt(SftpSubsystem.SSH_FILEXFER_ATTR_SIZE | SftpSubsystem.SSH_FILEXFER_ATTR_ALLOCATION_SIZE
+                | SftpSubsystem.SSH_FILEXFER_ATTR_MODIFYTIME | SftpSubsystem.SSH_FILEXFER_ATTR_CTIME
+                | SftpSubsystem.SSH_FILEXFER_ATTR_ACL | SftpSubsystem.SSH_FILEXFER_ATTR_BITS
+                | SftpSubsystem.SSH_FILEXFER_ATTR_TEXT_HINT | SftpSubsystem.SSH_FILEXFER_ATTR_MIME_TYPE
+                | SftpSubsystem.SSH_FILEXFER_ATTR_LINK_COUNT | SftpSubsystem.SSH_FILEXFER_ATTR_UNTRANSLATED_NAME);
+        buffer.putByte((byte) SftpSubsystem.SSH_FILEXFER_TYPE_REGULAR);
+        buffer.putLong(10);
+        buffer.putLong(4096);
+        buffer.putLong(MTIME / 1000);
+        buffer.putLong(0);
+        buffer.putString("acl");
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putByte((byte) 1);
+        buffer.putString("text/plain");
+        buffer.putInt(1);
+        buffer.putString("name");
+
+        Map<SshFile.Attribute, Object> attrs = sftp.readAttrs(buffer);
+        Assert.assertEquals(0, buffer.available());
+        Map<SshFile.Attribute, Object> expected = new HashMap<SshFile.Attribute, Object>();
+        expected.put(SshFile.Attribute.Size, 10L);
+        expected.put(SshFile.Attribute.LastModifiedTime, MTIME / 1000 * 1000);
+        Assert.assertEquals(expected, attrs);
+    }
+
+    @Test
+    public void openFlags() throws Exception {
+        start(5);
+        int read = SftpSubsystem.ACE4_READ_DATA;
+        int write = SftpSubsystem.ACE4_WRITE_DATA;
+        Assert.assertEquals(SftpSubsystem.SSH_FXF_READ,
+                sftp.getOpenFlags(read, SftpSubsystem.SSH_FXF_OPEN_EXISTING));
+        Assert.assertEquals(SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT | SftpSubsystem.SSH_FXF_EXCL,
+                sftp.getOpenFlags(write, SftpSubsystem.SSH_FXF_CREATE_NEW));
+        Assert.assertEquals(SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT | SftpSubsystem.SSH_FXF_TRUNC,
+                sftp.getOpenFlags(write, SftpSubsystem.SSH_FXF_CREATE_TRUNCATE));
+        Assert.assertEquals(SftpSubsystem.SSH_FXF_READ | SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_CREAT,
+                sftp.getOpenFlags(read | write, SftpSubsystem.SSH_FXF_OPEN_OR_CREATE));
+        Assert.assertEquals(SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_TRUNC,
+                sftp.getOpenFlags(write, SftpSubsystem.SSH_FXF_TRUNCATE_EXISTING));
+        Assert.assertEquals(SftpSubsystem.SSH_FXF_WRITE | SftpSubsystem.SSH_FXF_APPEND,
+                sftp.getOpenFlags(SftpSubsystem.ACE4_APPEND_DATA,
+                        SftpSubsystem.SSH_FXF_OPEN_EXISTING | SftpSubsystem.SSH_FXF_APPEND_DATA));
+        Assert.assertEquals(-1, sftp.getOpenFlags(read, SftpSubsystem.SSH_FXF_OPEN_EXISTING | SftpSubsystem.SSH_FXF_BLOCK_READ));
+    }
+
+    @Test
+    public void openV5() throws Exception {
+        start(5);
+        Buffer buffer = openRequest("/f", SftpSubsystem.ACE4_WRITE_DATA, SftpSubsystem.SSH_FXF_CREATE_NEW);
+        send(buffer);
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_HANDLE, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        String handle = reply.getString();
+        write(handle, 0, "v5".getBytes("UTF-8"));
+        close(handle);
+        Assert.assertEquals("v5", new String(Files.readAllBytes(file("f").toPath()), "UTF-8"));
+
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE,
+                openRequest("/f", SftpSubsystem.ACE4_WRITE_DATA, SftpSubsystem.SSH_FXF_CREATE_NEW));
+        assertStatus(SftpSubsystem.SSH_FX_NO_SUCH_FILE,
+                openRequest("/missing", SftpSubsystem.ACE4_READ_DATA, SftpSubsystem.SSH_FXF_OPEN_EXISTING));
+        assertStatus(SftpSubsystem.SSH_FX_OP_UNSUPPORTED,
+                openRequest("/f", SftpSubsystem.ACE4_READ_DATA, SftpSubsystem.SSH_FXF_OPEN_EXISTING | SftpSubsystem.SSH_FXF_BLOCK_READ));
+    }
+
+    @Test
+    public void renameV5() throws Exception {
+        start(5);
+        Files.write(file("a").toPath(), "a".getBytes("UTF-8"));
+        Files.write(file("b").toPath(), "b".getBytes("UTF-8"));
+
+        assertStatus(SftpSubsystem.SSH_FX_FAILURE, renameRequest("/a", "/b", 0));
+        Assert.assertEquals("b", new String(Files.readAllBytes(file("b").toPath()), "UTF-8"));
+
+        assertStatus(SftpSubsystem.SSH_FX_OK, renameRequest("/a", "/b", SftpSubsystem.SSH_FXF_RENAME_OVERWRITE));
+        Assert.assertFalse(file("a").exists());
+        Assert.assertEquals("a", new String(Files.readAllBytes(file("b").toPath()), "UTF-8"));
+    }
+
+    @Test
+    public void readDirV4() throws Exception {
+        start(4);
+        Files.write(file("f").toPath(), "hello".getBytes("UTF-8"));
+        Assert.assertTrue(file("d").mkdir());
+
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_OPENDIR);
+        buffer.putString("/");
+        send(buffer);
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_HANDLE, reply.getByte());
+        reply.getInt();
+        String handle = reply.getString();
+
+        buffer = request(SftpSubsystem.SSH_FXP_READDIR);
+        buffer.putString(handle);
+        send(buffer);
+        reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_NAME, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        Map<String, Integer> types = new HashMap<String, Integer>();
+        for (int n = reply.getInt(); n > 0; n--) {
+            // no long name, the attributes follow the name
+            String name = reply.getString();
+            Map<SshFile.Attribute, Object> attrs = sftp.readAttrs(peekType(reply, types, name));
+            Assert.assertTrue(attrs.containsKey(SshFile.Attribute.LastModifiedTime));
+        }
+        Assert.assertEquals(0, reply.available());
+        Assert.assertEquals(Integer.valueOf(SftpSubsystem.SSH_FILEXFER_TYPE_REGULAR), types.get("f"));
+        Assert.assertEquals(Integer.valueOf(SftpSubsystem.SSH_FILEXFER_TYPE_DIRECTORY), types.get("d"));
+        close(handle);
+    }
+
+    @Test
+    public void realPathV6() throws Exception {
+        start(6);
+        Files.write(file("f").toPath(), "hello".getBytes("UTF-8"));
+
+        Buffer buffer = realPathRequest("/", SftpSubsystem.SSH_FXP_REALPATH_STAT_ALWAYS, "x", "../f");
+        send(buffer);
+        Buffer reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_NAME, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        Assert.assertEquals(1, reply.getInt());
+        Assert.assertEquals("/f", reply.getString());
+        Map<String, Integer> types = new HashMap<String, Integer>();
+        Map<SshFile.Attribute, Object> attrs = sftp.readAttrs(peekType(reply, types, "f"));
+        Assert.assertEquals(5L, attrs.get(SshFile.Attribute.Size));
+        Assert.assertEquals(Integer.valueOf(SftpSubsystem.SSH_FILEXFER_TYPE_REGULAR), types.get("f"));
+        Assert.assertEquals(0, reply.available());
+
+        assertStatus(SftpSubsystem.SSH_FX_NO_SUCH_FILE,
+                realPathRequest("/", SftpSubsystem.SSH_FXP_REALPATH_STAT_ALWAYS, "missing"));
+
+        // without a control byte the file need not exist
+        send(realPathRequest("/missing", -1));
+        reply = receive();
+        Assert.assertEquals(SftpSubsystem.SSH_FXP_NAME, reply.getByte());
+        Assert.assertEquals(lastId(), reply.getInt());
+        Assert.assertEquals(1, reply.getInt());
+        Assert.assertEquals("/missing", reply.getString());
+        Assert.assertEquals(0, reply.getInt());
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_TYPE_UNKNOWN, reply.getByte());
+        Assert.assertEquals(0, reply.available());
+    }
+
+    @Test
+    public void hardLinksAreUnsupported() throws Exception {
+        start(6);
+        Files.write(file("f").toPath(), "hello".getBytes("UTF-8"));
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_LINK);
+        buffer.putString("/l");
+        buffer.putString("/f");
+        buffer.putBoolean(false);
+        assertStatus(SftpSubsystem.SSH_FX_OP_UNSUPPORTED, buffer);
+        Assert.assertFalse(file("l").exists());
+    }
+
+    private void assertRoundTrip() throws Exception {
+        Buffer buffer = new Buffer();
+        sftp.writeAttrs(buffer, regularFile());
+        FileAttributes read = FileAttributes.fromMap(sftp.readAttrs(buffer));
+        Assert.assertEquals(0, buffer.available());
+
+        Assert.assertEquals(1234, read.getSize());
+        Assert.assertEquals("owner", read.getOwner());
+        Assert.assertEquals("group", read.getGroup());
+        Assert.assertEquals(0640, read.getPermissions());
+        Assert.assertTrue(read.isRegularFile());
+        Assert.assertFalse(read.isDirectory());
+        // milliseconds survive, also before 1970
+        Assert.assertEquals(ATIME, read.getLastAccessTime());
+        Assert.assertEquals(CTIME, read.getCreationTime());
+        Assert.assertEquals(MTIME, read.getLastModifiedTime());
+        // ids and the link count are not sent or can not be set
+        Assert.assertFalse(read.isKnown(SshFile.Attribute.Uid));
+        Assert.assertFalse(read.isKnown(SshFile.Attribute.NLink));
+    }
+
+    private static void assertCommonAttrs(Buffer buffer) {
+        assertCommonAttrs(buffer, 0640);
+    }
+
+    /**
+     * Check the fields from the type to the modification time, which all of v4 to v6 send.
+     */
+    private static void assertCommonAttrs(Buffer buffer, int permissions) {
+        Assert.assertEquals(SftpSubsystem.SSH_FILEXFER_TYPE_REGULAR, buffer.getByte());
+        Assert.assertEquals(1234, buffer.getLong());
+        Assert.assertEquals("owner", buffer.getString());
+        Assert.assertEquals("group", buffer.getString());
+        Assert.assertEquals(SftpSubsystem.S_IFREG | permissions, buffer.getInt());
+        Assert.assertEquals(ATIME / 1000, buffer.getLong());
+        Assert.assertEquals(456000000, buffer.getInt());
+        // seconds round down, the nanoseconds are positive
+        Assert.assertEquals(-2, buffer.getLong());
+        Assert.assertEquals(500000000, buffer.getInt());
+        Assert.assertEquals(MTIME / 1000, buffer.getLong());
+        Assert.assertEquals(123000000, buffer.getInt());
+    }
+
+    /**
+     * Note the file type of the attributes at the read position, which the server does not keep.
+     */
+    private static Buffer peekType(Buffer buffer, Map<String, Integer> types, String name) {
+        types.put(name, (int) buffer.array()[buffer.rpos() + 4]);
+        return buffer;
+    }
+
+    private Buffer openRequest(String path, int access, int flags) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_OPEN);
+        buffer.putString(path);
+        buffer.putInt(access);
+        buffer.putInt(flags);
+        buffer.putInt(0);
+        buffer.putByte((byte) SftpSubsystem.SSH_FILEXFER_TYPE_REGULAR);
+        return buffer;
+    }
+
+    private Buffer renameRequest(String oldPath, String newPath, int flags) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_RENAME);
+        buffer.putString(oldPath);
+        buffer.putString(newPath);
+        buffer.putInt(flags);
+        return buffer;
+    }
+
+    /**
+     * @param control the control byte or -1 to leave it out
+     */
+    private Buffer realPathRequest(String path, int control, String... compose) {
+        Buffer buffer = request(SftpSubsystem.SSH_FXP_REALPATH);
+        buffer.putString(path);
+        if (control >= 0) {
+            buffer.putByte((byte) control);
+            for (String c : compose) {
+                buffer.putString(c);
+            }
+        }
+        return buffer;
+    }
+
+    private static FileAttributes regularFile() {
+        return new FileAttributes()
+                .setRegularFile(true)
+                .setDirectory(false)
+                .setSymbolicLink(false)
+                .setSize(1234)
+                .setUid(1000)
+                .setGid(100)
+                .setOwner("owner")
+                .setGroup("group")
+                .setPermissions(0640)
+                .setCreationTime(CTIME)
+                .setLastModifiedTime(MTIME)
+                .setLastAccessTime(ATIME)
+                .setNLink(2);
+    }
+
+}
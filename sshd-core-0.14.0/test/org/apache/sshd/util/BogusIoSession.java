@@ -0,0 +1,78 @@
+package org.apache.sshd.util;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sshd.common.future.CloseFuture;
+import org.apache.sshd.common.io.IoService;
+import org.apache.sshd.common.io.IoSession;
+import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.util.Buffer;
+
+/**
+ * Session without a connection, keeping what is written to it.
+ */
+public class BogusIoSession implements IoSession {
+
+    private final Map<Object, Object> attributes = new HashMap<Object, Object>();
+    private final List<byte[]> written = new ArrayList<byte[]>();
+
+    /**
+     * @return the data of all writes so far, including the identification
+     */
+    public synchronized List<byte[]> getWritten() {
+        return new ArrayList<byte[]>(written);
+    }
+
+    public long getId() {
+        return 0;
+    }
+
+    public synchronized Object getAttribute(Object key) {
+        return attributes.get(key);
+    }
+
+    public synchronized Object setAttribute(Object key, Object value) {
+        return attributes.put(key, value);
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return new InetSocketAddress("127.0.0.1", 2222);
+    }
+
+    public SocketAddress getLocalAddress() {
+        return new InetSocketAddress("127.0.0.1", 22);
+    }
+
+    public synchronized IoWriteFuture write(Buffer buffer) {
+        byte[] data = new byte[buffer.available()];
+        System.arraycopy(buffer.array(), buffer.rpos(), data, 0, data.length);
+        written.add(data);
+        return null;
+    }
+
+    public int getPendingWrites() {
+        return 0;
+    }
+
+    public CloseFuture close(boolean immediately) {
+        return null;
+    }
+
+    public boolean isClosed() {
+        return false;
+    }
+
+    public boolean isClosing() {
+        return false;
+    }
+
+    public IoService getService() {
+        return null;
+    }
+
+}
@@ -0,0 +1,34 @@
+package org.apache.sshd.util;
+
+/**
+ * Test vectors are given in hex.
+ */
+public final class Hex {
+
+    private Hex() {
+    }
+
+    public static byte[] decode(String hex) {
+        hex = hex.replaceAll("\\s", "");
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return data;
+    }
+
+    public static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] data = new byte[length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, data, pos, part.length);
+            pos += part.length;
+        }
+        return data;
+    }
+
+}